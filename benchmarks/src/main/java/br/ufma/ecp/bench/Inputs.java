@@ -0,0 +1,69 @@
+package br.ufma.ecp.bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import br.ufma.ecp.Scanner;
+import br.ufma.ecp.token.TokenType;
+
+// entradas dos benchmarks: os arquivos do Square e classes sinteticas grandes
+public class Inputs {
+
+    // -Djack.resources=... quando o benchmark nao roda a partir de benchmarks/
+    static final Path RESOURCES = Path.of(System.getProperty("jack.resources", "../src/test/resources"));
+
+    public static byte[] load(String name) {
+        if (name.startsWith("synthetic-")) {
+            return syntheticClass(Integer.parseInt(name.substring("synthetic-".length())));
+        }
+        try {
+            return Files.readAllBytes(RESOURCES.resolve(name));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // classe valida com n metodos, cada um com lacos, ifs, arrays, chamadas e comentarios
+    public static byte[] syntheticClass(int methods) {
+        var sb = new StringBuilder();
+        sb.append("/** classe gerada para benchmark */\n");
+        sb.append("class Synthetic {\n");
+        sb.append("    field int x, y, size;\n");
+        sb.append("    field Array data;\n");
+        sb.append("    static boolean ready;\n\n");
+        for (int i = 0; i < methods; i++) {
+            sb.append("    // metodo ").append(i).append('\n');
+            sb.append("    method int work").append(i).append("(int a, int b, Array buf) {\n");
+            sb.append("        var int i, total;\n");
+            sb.append("        var String msg;\n");
+            sb.append("        let i = 0;\n");
+            sb.append("        let msg = \"iteracao ").append(i).append("\";\n");
+            sb.append("        while (i < (a + ").append(i % 97).append(")) {\n");
+            sb.append("            let buf[i] = (buf[i] * 2) + (b / 3) - (x & y);\n");
+            sb.append("            if ((total > 100) | ~(size = 0)) {\n");
+            sb.append("                let total = total - buf[i];\n");
+            sb.append("            } else {\n");
+            sb.append("                do Output.printInt(total);\n");
+            sb.append("            }\n");
+            sb.append("            let i = i + 1;\n");
+            sb.append("        }\n");
+            sb.append("        do Screen.drawRectangle(x, y, x + size, y + size);\n");
+            sb.append("        return total + work").append(Math.max(0, i - 1)).append("(a, b, buf);\n");
+            sb.append("    }\n\n");
+        }
+        sb.append("}\n");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static int countTokens(byte[] input) {
+        var scanner = new Scanner(input);
+        int n = 0;
+        while (scanner.nextToken().type != TokenType.EOF) {
+            n++;
+        }
+        return n;
+    }
+}
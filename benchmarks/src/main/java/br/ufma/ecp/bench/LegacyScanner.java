@@ -0,0 +1,333 @@
+package br.ufma.ecp.bench;
+
+import br.ufma.ecp.token.NamePool;
+import br.ufma.ecp.token.Token;
+import br.ufma.ecp.token.TokenBuffer;
+import br.ufma.ecp.token.TokenSource;
+import br.ufma.ecp.token.TokenType;
+
+import static br.ufma.ecp.token.TokenType.EOF;
+import static br.ufma.ecp.token.TokenType.IDENT;
+import static br.ufma.ecp.token.TokenType.ILLEGAL;
+import static br.ufma.ecp.token.TokenType.NUMBER;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+
+// copia do Scanner anterior a tabela de classes de bytes, so para comparacao no ScannerBenchmark
+public class LegacyScanner implements TokenSource {
+    
+    private ByteBuffer input;
+    private int length;
+    private int current; 
+    private int line = 1;
+    private int start;
+    private int end;
+
+    private final NamePool names;
+
+    public LegacyScanner (byte[] input) {
+        this(ByteBuffer.wrap(input));
+    }
+
+    // le direto do buffer (heap, direto ou MappedByteBuffer), sem copiar a fonte
+    public LegacyScanner (ByteBuffer input) {
+        this(input, new NamePool());
+    }
+
+    // scanners que compartilham o pool (na mesma thread) compartilham os lexemas dos identificadores
+    public LegacyScanner (ByteBuffer input, NamePool names) {
+        this.names = names;
+        this.input = input.slice();
+        length = this.input.limit();
+        current = 0;
+        start = 0;
+    }
+
+
+    private char peek () {
+        if (current < length)
+           return (char)input.get(current);
+       return '\0';
+    }
+
+    private String text(int from, int to) {
+        if (input.hasArray()) {
+            return new String(input.array(), input.arrayOffset() + from, to - from, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[to - from];
+        input.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void advance()  {
+        char ch = peek();
+        if (ch != '\0') {
+            current++;
+        }
+    }
+
+    public Token nextToken() {
+        TokenType type = scanToken();
+        String lexeme;
+        if (type.value != null) {
+            lexeme = type.value;
+        } else if (type == IDENT) {
+            lexeme = names.intern(input, start, end);
+        } else {
+            lexeme = text(start, end);
+        }
+        return new Token(type, lexeme, line);
+    }
+
+    // modo empacotado: nenhum Token nem String por lexema, so as colunas do buffer
+    public TokenBuffer tokenize() {
+        return tokenize(new TokenBuffer(input, Math.max(16, length / 4), names));
+    }
+
+    public TokenBuffer tokenize(TokenBuffer tokens) {
+        TokenType type;
+        do {
+            type = scanToken();
+            tokens.add(type, start, end, line);
+        } while (type != EOF);
+        return tokens;
+    }
+
+    // reconhece o proximo token; o lexema fica em input[start, end)
+    private TokenType scanToken() {
+
+        skipWhitespace();
+
+        start = current;
+        char ch = peek();
+
+        if (Character.isDigit(ch)) {
+            return number();
+        }
+
+        if (isAlpha(ch)) {
+            return identifier();
+        }
+
+        switch (ch) {
+
+            case '/':
+                if (peekNext() == '/') {
+                    skipLineComments();
+                    return scanToken();
+                } else if (peekNext() == '*') {
+                    if (!skipBlockComments()) {
+                        end = start + 2; // comentario sem fim: o token "/*" ilegal vai para o parser
+                        return ILLEGAL;
+                    }
+                    return scanToken();
+                } else {
+                    return symbol(TokenType.SLASH);
+                }
+
+            case '+':
+                return symbol(TokenType.PLUS);
+            case '-':
+                return symbol(TokenType.MINUS);
+            case '*':
+                return symbol(TokenType.ASTERISK);
+            case '.':
+                return symbol(TokenType.DOT);
+            case '&':
+                return symbol(TokenType.AND);
+            case '|':
+                return symbol(TokenType.OR);
+            case '~':
+                return symbol(TokenType.NOT);
+
+            case '>':
+                return symbol(TokenType.GT);
+            case '<':
+                return symbol(TokenType.LT);
+            case '=':
+                return symbol(TokenType.EQ);
+
+            case '(':
+                return symbol(TokenType.LPAREN);
+            case ')':
+                return symbol(TokenType.RPAREN);
+            case '{':
+                return symbol(TokenType.LBRACE);
+            case '}':
+                return symbol(TokenType.RBRACE);
+            case '[':
+                return symbol(TokenType.LBRACKET);
+            case ']':
+                return symbol(TokenType.RBRACKET);
+            case ';':
+                return symbol(TokenType.SEMICOLON);
+            case ',':
+                return symbol(TokenType.COMMA);
+            case '"':
+                return string();
+            case 0:
+                end = current;
+                return EOF;
+            default:
+                return symbol(ILLEGAL);
+        }
+    }
+
+    private TokenType symbol(TokenType type) {
+        advance();
+        end = current;
+        return type;
+    }
+
+    private TokenType number() {
+        while (Character.isDigit(peek())) {
+            advance();
+        }
+        end = current;
+        return NUMBER;
+    }
+    
+    private TokenType identifier() {
+        while (isAlphaNumeric(peek()))
+            advance();
+
+        end = current;
+        return keyword(start, end);
+    }
+
+    // palavra reservada por tamanho + primeiro byte, conferindo os bytes sem criar String
+    private TokenType keyword(int from, int to) {
+        TokenType candidate = null;
+        byte first = input.get(from);
+        switch (to - from) {
+            case 2:
+                candidate = first == 'd' ? TokenType.DO : first == 'i' ? TokenType.IF : null;
+                break;
+            case 3:
+                candidate = first == 'l' ? TokenType.LET : first == 'i' ? TokenType.INT : first == 'v' ? TokenType.VAR : null;
+                break;
+            case 4:
+                switch (first) {
+                    case 'c': candidate = TokenType.CHAR; break;
+                    case 'v': candidate = TokenType.VOID; break;
+                    case 'n': candidate = TokenType.NULL; break;
+                    case 'e': candidate = TokenType.ELSE; break;
+                    case 't': candidate = input.get(from + 1) == 'r' ? TokenType.TRUE : TokenType.THIS; break;
+                    default: break;
+                }
+                break;
+            case 5:
+                switch (first) {
+                    case 'w': candidate = TokenType.WHILE; break;
+                    case 'c': candidate = TokenType.CLASS; break;
+                    case 'f': candidate = input.get(from + 1) == 'i' ? TokenType.FIELD : TokenType.FALSE; break;
+                    default: break;
+                }
+                break;
+            case 6:
+                candidate = first == 'm' ? TokenType.METHOD : first == 's' ? TokenType.STATIC : first == 'r' ? TokenType.RETURN : null;
+                break;
+            case 7:
+                candidate = first == 'b' ? TokenType.BOOLEAN : null;
+                break;
+            case 8:
+                candidate = first == 'f' ? TokenType.FUNCTION : null;
+                break;
+            case 11:
+                candidate = first == 'c' ? TokenType.CONSTRUCTOR : null;
+                break;
+            default:
+                break;
+        }
+        if (candidate == null) {
+            return IDENT;
+        }
+        String word = candidate.value;
+        for (int i = 1; i < word.length(); i++) {
+            if (input.get(from + i) != word.charAt(i)) {
+                return IDENT;
+            }
+        }
+        return candidate;
+    }
+    
+    private void skipWhitespace() {
+        char ch = peek();
+        while (ch == ' ' || ch == '\r' || ch == '\t' || ch == '\n') {
+            if (ch == '\n')
+            line++;
+            advance();
+            ch = peek();
+        }
+    }
+
+    private boolean isAlpha(char c) {
+        return (c >= 'a' && c <= 'z') ||
+               (c >= 'A' && c <= 'Z') ||
+                c == '_';
+    }
+
+    private boolean isAlphaNumeric(char c) {
+        return isAlpha(c) || Character.isDigit((c));
+    }
+
+    private TokenType string() {
+        advance();
+        start = current;
+        while (peek() != '"' && peek() != 0) {
+            advance();
+        }
+        end = current;
+        advance();
+        return TokenType.STRING;
+    }
+
+    // false quando o arquivo acaba antes do */
+    private boolean skipBlockComments() {
+        boolean endComment = false;
+        advance();
+
+        while (!endComment) {
+            advance();
+            char ch = peek();
+
+            if (ch == '\n')
+                line++;
+
+            if (ch == 0) { // eof, lexical error
+                return false;
+            }
+
+            if (ch == '*') {
+                for (ch = peek(); ch == '*'; advance(), ch = peek())
+                    ;
+                if (ch == '/') {
+                    endComment = true;
+                    advance();
+                }
+            }
+
+        }
+        return true;
+    }
+
+    private void skipLineComments() {
+
+        for (char ch = peek(); ch != '\n' && ch != 0; advance(), ch = peek())
+            if (ch == '\n')
+                line++;
+    }
+
+    private char peekNext () {
+        int next = current + 1;
+        if ( next  < length) {
+            return (char)input.get(next);
+        } else {
+            return 0;
+        }
+   }
+    
+
+}
\ No newline at end of file
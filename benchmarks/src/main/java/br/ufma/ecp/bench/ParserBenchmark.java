@@ -0,0 +1,96 @@
+package br.ufma.ecp.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.ufma.ecp.ClassSkeleton;
+import br.ufma.ecp.IncrementalParser;
+import br.ufma.ecp.Parser;
+
+// Parser.parse() completo, o esqueleto (ClassSkeleton, so assinaturas) que serve ao indice e uma
+// edicao no IncrementalParser; o contador "bytes" da a vazao em bytes de fonte por segundo
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({ "Square/SquareGame.jack", "Square/Square.jack", "synthetic-2000" })
+    public String input;
+
+    byte[] source;
+    IncrementalParser document;
+    int editOffset;
+    boolean edited;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            bytes = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        source = Inputs.load(input);
+        document = new IncrementalParser(source);
+        var text = document.text();
+        editOffset = text.indexOf("return", text.length() / 2);
+    }
+
+    @Benchmark
+    public String parseXml(Counters counters) {
+        var parser = new Parser(source);
+        parser.parse();
+        counters.bytes += source.length;
+        return parser.XMLOutput();
+    }
+
+    @Benchmark
+    public String parseVM(Counters counters) {
+        var parser = new Parser(source);
+        parser.setOutput(null);
+        parser.generateVM();
+        parser.parse();
+        counters.bytes += source.length;
+        return parser.VMOutput();
+    }
+
+    @Benchmark
+    public Object parseSkeleton(Counters counters) {
+        var skeleton = new ClassSkeleton(source);
+        counters.bytes += source.length;
+        return skeleton.signature();
+    }
+
+    // insere e apaga um espaco alternadamente dentro de uma subrotina no meio do arquivo
+    @Benchmark
+    public int editIncremental() {
+        if (edited) {
+            document.edit(editOffset, 1, "");
+        } else {
+            document.edit(editOffset, 0, " ");
+        }
+        edited = !edited;
+        return document.reparsed();
+    }
+}
@@ -0,0 +1,95 @@
+package br.ufma.ecp.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import br.ufma.ecp.Scanner;
+import br.ufma.ecp.token.Token;
+import br.ufma.ecp.token.TokenBuffer;
+import br.ufma.ecp.token.TokenType;
+
+// tokens/s do Scanner; com -prof gc, gc.alloc.rate.norm / tokens = bytes alocados por token.
+// legacy* rodam o scanner anterior (LegacyScanner) sobre a mesma entrada, para comparacao
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScannerBenchmark {
+
+    @Param({ "Square/SquareGame.jack", "Square/Square.jack", "synthetic-2000" })
+    public String input;
+
+    byte[] source;
+    int tokens;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long tokens;
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            tokens = 0;
+            bytes = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        source = Inputs.load(input);
+        tokens = Inputs.countTokens(source);
+    }
+
+    @Benchmark
+    public void nextToken(Counters counters, Blackhole bh) {
+        var scanner = new Scanner(source);
+        for (Token tk = scanner.nextToken(); tk.type != TokenType.EOF; tk = scanner.nextToken()) {
+            bh.consume(tk);
+        }
+        counters.tokens += tokens;
+        counters.bytes += source.length;
+    }
+
+    @Benchmark
+    public TokenBuffer tokenize(Counters counters) {
+        var buffer = new Scanner(source).tokenize();
+        counters.tokens += tokens;
+        counters.bytes += source.length;
+        return buffer;
+    }
+
+    @Benchmark
+    public void legacyNextToken(Counters counters, Blackhole bh) {
+        var scanner = new LegacyScanner(source);
+        for (Token tk = scanner.nextToken(); tk.type != TokenType.EOF; tk = scanner.nextToken()) {
+            bh.consume(tk);
+        }
+        counters.tokens += tokens;
+        counters.bytes += source.length;
+    }
+
+    @Benchmark
+    public TokenBuffer legacyTokenize(Counters counters) {
+        var buffer = new LegacyScanner(source).tokenize();
+        counters.tokens += tokens;
+        counters.bytes += source.length;
+        return buffer;
+    }
+}
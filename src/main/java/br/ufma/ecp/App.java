@@ -4,15 +4,81 @@ import static br.ufma.ecp.token.TokenType.*;
 
 
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
 import br.ufma.ecp.token.Token; 
+import br.ufma.ecp.vm.PeepholeOptimizer;
 
 public class App 
 {
 
     
-    public static void main( String[] args )
+    public static void main( String[] args ) throws IOException
     {
 
+        // java App -server [porta]: sem porta, atende pedidos pela entrada/saida padrao
+        if (args.length > 0 && args[0].equals("-server")) {
+            var server = new CompileServer();
+            server.warmUp(200);
+            if (args.length > 1) {
+                server.listen(Integer.parseInt(args[1]));
+            } else {
+                server.serve(System.in, System.out);
+            }
+            return;
+        }
+
+        // java App [-vm] [-O] [-wpo] [-check] [-metrics arquivo.json] [-cache diretorio] <arquivo.jack | diretorio> [diretorio de saida]
+        if (args.length > 0) {
+            var target = BatchCompiler.Target.XML;
+            Path cacheDir = null;
+            var optimize = false;
+            var check = false;
+            var wholeProgram = false;
+            Path metricsFile = null;
+            while (args.length > 0 && args[0].startsWith("-")) {
+                if (args[0].equals("-vm")) {
+                    target = BatchCompiler.Target.VM;
+                } else if (args[0].equals("-O")) {
+                    optimize = true;
+                } else if (args[0].equals("-wpo")) {
+                    wholeProgram = true;
+                } else if (args[0].equals("-check")) {
+                    check = true;
+                } else if (args[0].equals("-metrics") && args.length > 1) {
+                    metricsFile = Path.of(args[1]);
+                    args = Arrays.copyOfRange(args, 1, args.length);
+                } else if (args[0].equals("-cache") && args.length > 1) {
+                    cacheDir = Path.of(args[1]);
+                    args = Arrays.copyOfRange(args, 1, args.length);
+                }
+                args = Arrays.copyOfRange(args, 1, args.length);
+            }
+            Path out = args.length > 1 ? Path.of(args[1]) : null;
+            var compiler = new BatchCompiler(out, Runtime.getRuntime().availableProcessors(), target);
+            if (cacheDir != null) {
+                compiler.withCache(new CompileCache(cacheDir));
+            }
+            if (optimize) {
+                compiler.withOptimizer(new PeepholeOptimizer());
+            }
+            compiler.withWholeProgram(wholeProgram);
+            compiler.withSemanticChecks(check);
+            compiler.withMetrics(metricsFile != null);
+            var report = compiler.compile(Path.of(args[0]));
+            compiler.shutdown();
+            System.out.print(report.summary());
+            if (metricsFile != null) {
+                Files.writeString(metricsFile, report.metricsJson());
+            }
+            if (report.failed() > 0) {
+                System.exit(1);
+            }
+            return;
+        }
     
         String input = "45  + if - \"ola\" laranja 876";
         Scanner scan = new Scanner (input.getBytes());
@@ -0,0 +1,438 @@
+package br.ufma.ecp;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import br.ufma.ecp.metrics.CompileEvent;
+import br.ufma.ecp.metrics.CompileMetrics;
+import br.ufma.ecp.metrics.MeteredSink;
+import br.ufma.ecp.metrics.MeteredTokenSource;
+import br.ufma.ecp.output.OutputSink;
+import br.ufma.ecp.output.StreamSink;
+import br.ufma.ecp.pipeline.AsyncSink;
+import br.ufma.ecp.pipeline.TokenPipeline;
+import br.ufma.ecp.semantic.ClassSymbols;
+import br.ufma.ecp.semantic.ClassUsages;
+import br.ufma.ecp.semantic.SemanticChecker;
+import br.ufma.ecp.semantic.SymbolIndex;
+import br.ufma.ecp.token.TokenSource;
+import br.ufma.ecp.vm.PeepholeOptimizer;
+import br.ufma.ecp.vm.ProgramOptimizer;
+import br.ufma.ecp.vm.VMInstruction;
+
+// compila todos os .jack de um diretorio (recursivamente), um arquivo por tarefa
+// no ForkJoinPool, cada um com seu proprio Scanner/Parser e seu proprio arquivo de saida
+public class BatchCompiler {
+
+    // cached: saida restaurada do CompileCache, sem scanner nem parser; metrics so com withMetrics
+    // (ou com o evento JFR ligado) e para arquivos que chegaram ao fim do parse
+    public record Result(Path source, Path output, boolean success, String error, long nanos, boolean cached,
+            CompileMetrics metrics) {
+    }
+
+    public record Report(List<Result> results, long elapsedNanos) {
+
+        public long succeeded() {
+            return results.stream().filter(Result::success).count();
+        }
+
+        public long failed() {
+            return results.size() - succeeded();
+        }
+
+        public long cached() {
+            return results.stream().filter(Result::cached).count();
+        }
+
+        public List<CompileMetrics> metrics() {
+            return results.stream().map(Result::metrics).filter(m -> m != null).collect(Collectors.toList());
+        }
+
+        public String metricsJson() {
+            return CompileMetrics.toJson(metrics());
+        }
+
+        public String summary() {
+            var sb = new StringBuilder();
+            for (Result r : results) {
+                if (!r.success()) {
+                    sb.append(String.format("FAIL %s: %s%n", r.source(), r.error()));
+                }
+            }
+            sb.append(String.format("%d files, %d ok (%d cached), %d failed in %.1f ms%n",
+                    results.size(), succeeded(), cached(), failed(), elapsedNanos / 1e6));
+            return sb.toString();
+        }
+    }
+
+    public enum Target {
+        XML(".xml"), VM(".vm");
+
+        final String extension;
+
+        Target(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    private final Path outputDir;
+    private final ForkJoinPool pool;
+    private final Target target;
+    private CompileCache cache;
+    private PeepholeOptimizer optimizer;
+    private long pipelineThreshold = PIPELINE_THRESHOLD;
+    private boolean semanticChecks;
+    private boolean collectMetrics;
+    private boolean wholeProgram;
+
+    public BatchCompiler() {
+        this(null, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchCompiler(Path outputDir, int parallelism) {
+        this(outputDir, parallelism, Target.XML);
+    }
+
+    // outputDir == null grava a saida ao lado do .jack, como as ferramentas do nand2tetris
+    public BatchCompiler(Path outputDir, int parallelism, Target target) {
+        this.outputDir = outputDir;
+        this.pool = new ForkJoinPool(parallelism);
+        this.target = target;
+    }
+
+    // so recompila o que mudou desde a ultima execucao com o mesmo cache
+    public BatchCompiler withCache(CompileCache cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    // otimiza o codigo VM gerado (so para Target.VM): constant folding no parser e peephole na saida
+    public BatchCompiler withOptimizer(PeepholeOptimizer optimizer) {
+        this.optimizer = optimizer;
+        return this;
+    }
+
+    // arquivos a partir deste tamanho compilam em pipeline: scanner, parser e escrita em threads separadas
+    public static final long PIPELINE_THRESHOLD = 1 << 20;
+
+    public BatchCompiler withPipelineThreshold(long bytes) {
+        this.pipelineThreshold = bytes;
+        return this;
+    }
+
+    // tempos por fase, tokens, nos, erros, bytes e alocacao por arquivo (ver Report.metricsJson)
+    public BatchCompiler withMetrics(boolean enabled) {
+        this.collectMetrics = enabled;
+        return this;
+    }
+
+    // confere chamadas entre classes (existencia, aridade, tipos) depois que todas foram parseadas
+    public BatchCompiler withSemanticChecks(boolean enabled) {
+        this.semanticChecks = enabled;
+        return this;
+    }
+
+    // Target.VM: depois de compilar tudo, remove funcoes inalcancaveis a partir de Main.main/Sys.init
+    // e expande subrotinas folha pequenas (ProgramOptimizer); .vm que ficam vazios sao apagados
+    public BatchCompiler withWholeProgram(boolean enabled) {
+        this.wholeProgram = enabled;
+        return this;
+    }
+
+    public static List<Path> findSources(Path root) throws IOException {
+        if (Files.isRegularFile(root)) {
+            return List.of(root);
+        }
+        try (Stream<Path> files = Files.walk(root)) {
+            return files.filter(p -> p.toString().endsWith(".jack") && Files.isRegularFile(p))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    public Report compile(Path root) throws IOException {
+        var sources = findSources(root);
+        var base = Files.isDirectory(root) ? root : root.getParent();
+        long start = System.nanoTime();
+        List<Result> results;
+        try {
+            if (cache == null) {
+                results = pool.submit(() -> results(sources.parallelStream()
+                        .map(src -> compileFile(base, src))
+                        .collect(Collectors.toList()), List.of())).get();
+            } else {
+                results = pool.submit(() -> compileIncremental(base, sources)).get();
+                cache.save();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("batch compilation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        if (wholeProgram && target == Target.VM && results.stream().allMatch(Result::success)) {
+            link(results);
+        }
+        return new Report(results, System.nanoTime() - start);
+    }
+
+    // o cache guarda a saida de cada arquivo antes desta fase, entao ela roda de novo a cada compile
+    private void link(List<Result> results) throws IOException {
+        var program = new ProgramOptimizer();
+        var outputs = new LinkedHashMap<String, Path>();
+        for (var r : results) {
+            var name = r.output().getFileName().toString();
+            outputs.put(name.substring(0, name.length() - target.extension.length()), r.output());
+            program.load(Files.readString(r.output()));
+        }
+        if (!program.hasEntry()) {
+            return;
+        }
+        var classes = program.optimize();
+        for (var e : outputs.entrySet()) {
+            var code = classes.get(e.getKey());
+            if (code == null) {
+                Files.deleteIfExists(e.getValue());
+            } else {
+                Files.writeString(e.getValue(),
+                        code.stream().map(VMInstruction::toString).collect(Collectors.joining("\n", "", "\n")));
+            }
+        }
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    // symbols e usages so com withSemanticChecks
+    private record Compiled(Result result, ClassSignature signature, Set<String> dependencies,
+            ClassSymbols symbols, ClassUsages usages) {
+    }
+
+    private List<Result> results(List<Compiled> compiled, List<ClassSignature> cached) {
+        if (!semanticChecks) {
+            return compiled.stream().map(Compiled::result).collect(Collectors.toList());
+        }
+        // fase 1: o parse de cada arquivo ja rodou em paralelo; as classes entram juntas no indice
+        var index = new SymbolIndex();
+        compiled.parallelStream().filter(c -> c.symbols() != null).forEach(c -> index.add(c.symbols()));
+        cached.forEach(signature -> index.add(ClassSymbols.of(signature)));
+        // fase 2: cada classe conferida contra o indice, tambem em paralelo
+        var checker = new SemanticChecker(index);
+        return compiled.parallelStream().map(c -> check(c, checker)).collect(Collectors.toList());
+    }
+
+    private Result check(Compiled compiled, SemanticChecker checker) {
+        var result = compiled.result();
+        if (compiled.usages() == null) {
+            return result;
+        }
+        long start = System.nanoTime();
+        var diagnostics = checker.check(compiled.usages());
+        if (diagnostics.isEmpty()) {
+            return result;
+        }
+        deleteQuietly(result.output());
+        var errors = diagnostics.stream().map(Diagnostic::toString).collect(Collectors.joining("; "));
+        return new Result(result.source(), result.output(), false, errors,
+                result.nanos() + System.nanoTime() - start, false, result.metrics());
+    }
+
+    private List<Result> compileIncremental(Path base, List<Path> sources) {
+        var hashes = new ConcurrentHashMap<Path, String>();
+        // codigo otimizado e outro artefato: nao pode reaproveitar a saida sem -O; e uma saida gravada
+        // sem -check nunca passou pelo SemanticChecker
+        var flavor = target.name() + (optimizer != null ? "-O" : "") + (semanticChecks ? "-check" : "");
+        sources.parallelStream().forEach(src -> {
+            try {
+                hashes.put(src, CompileCache.hash(flavor, Sources.map(src)));
+            } catch (IOException e) {
+                hashes.put(src, "");
+            }
+        });
+
+        var hits = new ArrayList<Path>();
+        var misses = new ArrayList<Path>();
+        for (var src : sources) {
+            var entry = cache.lookup(src);
+            var hash = hashes.get(src);
+            if (entry != null && entry.hash().equals(hash) && cache.contains(hash)) {
+                hits.add(src);
+            } else {
+                misses.add(src);
+            }
+        }
+
+        // classes cuja assinatura mudou (ou que sumiram) invalidam quem as chama
+        var changed = new HashSet<String>();
+        var known = sources.stream().map(CompileCache::key).collect(Collectors.toSet());
+        for (var entry : List.copyOf(cache.entries())) {
+            if (!known.contains(entry.source())) {
+                changed.add(entry.signature().name());
+                cache.remove(entry.source());
+            }
+        }
+
+        var compiled = new ArrayList<Compiled>();
+        compiled.addAll(compileAndStore(base, misses, hashes, changed));
+
+        var stale = new ArrayList<Path>();
+        for (var src : hits) {
+            var deps = new HashSet<>(cache.lookup(src).dependencies());
+            deps.retainAll(changed);
+            if (!deps.isEmpty()) {
+                stale.add(src);
+            }
+        }
+        hits.removeAll(stale);
+        compiled.addAll(compileAndStore(base, stale, hashes, changed));
+
+        var signatures = hits.stream().map(src -> cache.lookup(src).signature()).collect(Collectors.toList());
+        var results = new ArrayList<>(results(compiled, signatures));
+        for (var r : results) {
+            if (!r.success()) {
+                // erro semantico: a saida ja estava no cache, mas nao pode ser reaproveitada
+                cache.remove(CompileCache.key(r.source()));
+            }
+        }
+
+        hits.parallelStream().map(src -> restore(base, src, hashes.get(src))).forEachOrdered(results::add);
+        results.sort(Comparator.comparing(Result::source));
+        return results;
+    }
+
+    private List<Compiled> compileAndStore(Path base, List<Path> sources, Map<Path, String> hashes, Set<String> changed) {
+        var compiled = sources.parallelStream()
+                .map(src -> compileFile(base, src))
+                .collect(Collectors.toList());
+        for (var c : compiled) {
+            var src = c.result().source();
+            var previous = cache.lookup(src);
+            if (c.result().success()) {
+                if (previous != null && !previous.signature().equals(c.signature())) {
+                    changed.add(previous.signature().name());
+                }
+                try {
+                    cache.store(src, hashes.get(src), c.result().output(), c.signature(), c.dependencies());
+                } catch (IOException e) {
+                    // sem cache para este arquivo; a saida ja foi gerada
+                }
+            } else if (previous != null) {
+                changed.add(previous.signature().name());
+                cache.remove(previous.source());
+            }
+        }
+        return compiled;
+    }
+
+    private Result restore(Path base, Path source, String hash) {
+        long start = System.nanoTime();
+        Path output = outputFor(base, source, target.extension);
+        try {
+            cache.restore(hash, output);
+            return new Result(source, output, true, null, System.nanoTime() - start, true, null);
+        } catch (IOException e) {
+            return compileFile(base, source).result();
+        }
+    }
+
+    Compiled compileFile(Path base, Path source) {
+        long start = System.nanoTime();
+        Path output = outputFor(base, source, target.extension);
+        // desligado (sem withMetrics e sem gravacao JFR) o custo e este teste por arquivo
+        var event = new CompileEvent();
+        var metrics = collectMetrics || event.isEnabled() ? new CompileMetrics(source.toString()) : null;
+        long allocated = metrics != null ? CompileMetrics.allocatedByCurrentThread() : 0;
+        event.begin();
+        try {
+            if (output.getParent() != null) {
+                Files.createDirectories(output.getParent());
+            }
+            Parser parser;
+            var usages = semanticChecks ? new ClassUsages() : null;
+            var input = Sources.map(source);
+            var pipelined = input.limit() >= pipelineThreshold;
+            try (var channel = FileChannel.open(output, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                    var tokens = pipelined ? new TokenPipeline(input) : null;
+                    var writer = pipelined ? new AsyncSink(new StreamSink(channel)) : null) {
+                TokenSource scanner = pipelined ? tokens : new Scanner(input);
+                OutputSink sink = pipelined ? writer : new StreamSink(channel);
+                if (metrics != null) {
+                    scanner = new MeteredTokenSource(scanner, metrics);
+                    sink = new MeteredSink(sink, metrics);
+                }
+                parser = new Parser(scanner);
+                parser.collectUsages(usages);
+                parser.setMetrics(metrics);
+                if (target == Target.VM) {
+                    parser.setOutput(null);
+                    parser.setVMOutput(sink);
+                    parser.setOptimizer(optimizer);
+                    parser.setConstantFolding(optimizer != null);
+                } else {
+                    parser.setOutput(sink);
+                }
+                parser.parse();
+            }
+            if (metrics != null) {
+                metrics.finish(System.nanoTime() - start, parser.diagnostics().size(), Files.size(output),
+                        allocated < 0 ? 0 : CompileMetrics.allocatedByCurrentThread() - allocated);
+                if (event.shouldCommit()) {
+                    event.fill(metrics);
+                    event.target = target.name();
+                    event.success = !parser.hasErrors();
+                    event.commit();
+                }
+            }
+            if (parser.hasErrors()) {
+                deleteQuietly(output);
+                var errors = parser.diagnostics().stream().map(Diagnostic::toString).collect(Collectors.joining("; "));
+                return new Compiled(new Result(source, output, false, errors, System.nanoTime() - start, false,
+                        metrics), null, Set.of(), null, null);
+            }
+            var result = new Result(source, output, true, null, System.nanoTime() - start, false, metrics);
+            var symbols = usages != null ? ClassSymbols.of(parser.signature(), parser.classVariables()) : null;
+            return new Compiled(result, parser.signature(), parser.dependencies(), symbols, usages);
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(output);
+            var result = new Result(source, output, false, String.valueOf(e.getMessage()), System.nanoTime() - start,
+                    false, null);
+            return new Compiled(result, null, Set.of(), null, null);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // a saida parcial fica para tras; o erro original e o que interessa
+        }
+    }
+
+    Path outputFor(Path base, Path source, String extension) {
+        var name = source.getFileName().toString();
+        name = name.substring(0, name.length() - ".jack".length()) + extension;
+        if (outputDir == null) {
+            return source.resolveSibling(name);
+        }
+        var relative = base == null ? source.getFileName() : base.relativize(source);
+        var parent = relative.getParent();
+        return parent == null ? outputDir.resolve(name) : outputDir.resolve(parent).resolve(name);
+    }
+}
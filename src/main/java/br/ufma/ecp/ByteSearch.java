@@ -0,0 +1,82 @@
+package br.ufma.ecp;
+
+// buscas em bloco do Scanner. O array sempre termina em 0 (sentinela), entao toda busca para.
+// A versao com Vector API (VectorByteSearch) so e usada quando o modulo jdk.incubator.vector
+// foi carregado (java --add-modules jdk.incubator.vector) e -Djack.scanner.vector nao e false.
+interface ByteSearch {
+
+    // primeiro '\n' ou 0 a partir de from
+    int lineEnd(byte[] buf, int from);
+
+    // primeiro '"' ou 0
+    int quoteOrEnd(byte[] buf, int from);
+
+    // primeiro byte que nao e espaco, tab, \r ou \n
+    int skipSpaces(byte[] buf, int from);
+
+    // inicio do "*/" que fecha o comentario, ou -1 se a entrada acaba antes
+    int commentEnd(byte[] buf, int from);
+
+    int countNewlines(byte[] buf, int from, int to);
+
+    ByteSearch SCALAR = new ByteSearch() {
+        public int lineEnd(byte[] buf, int i) {
+            while (buf[i] != '\n' && buf[i] != 0) {
+                i++;
+            }
+            return i;
+        }
+
+        public int quoteOrEnd(byte[] buf, int i) {
+            while (buf[i] != '"' && buf[i] != 0) {
+                i++;
+            }
+            return i;
+        }
+
+        public int skipSpaces(byte[] buf, int i) {
+            for (byte c = buf[i]; c == ' ' || c == '\n' || c == '\t' || c == '\r'; c = buf[++i])
+                ;
+            return i;
+        }
+
+        public int commentEnd(byte[] buf, int i) {
+            for (byte c = buf[i]; c != 0; c = buf[++i]) {
+                if (c == '*' && buf[i + 1] == '/') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        public int countNewlines(byte[] buf, int from, int to) {
+            int n = 0;
+            for (int i = from; i < to; i++) {
+                if (buf[i] == '\n') {
+                    n++;
+                }
+            }
+            return n;
+        }
+    };
+
+    static ByteSearch select() {
+        if (Boolean.parseBoolean(System.getProperty("jack.scanner.vector", "true")) && vectorAvailable()) {
+            return vector();
+        }
+        return SCALAR;
+    }
+
+    static boolean vectorAvailable() {
+        return ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+    }
+
+    // carregada por nome para que nenhuma classe do incubator seja resolvida sem o modulo
+    static ByteSearch vector() {
+        try {
+            return (ByteSearch) Class.forName("br.ufma.ecp.VectorByteSearch").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return SCALAR;
+        }
+    }
+}
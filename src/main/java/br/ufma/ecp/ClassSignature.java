@@ -0,0 +1,55 @@
+package br.ufma.ecp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// interface publica de uma classe: o que os chamadores dependem dela
+public record ClassSignature(String name, List<SubroutineSignature> subroutines) {
+
+    // kind: constructor, function ou method
+    public record SubroutineSignature(String kind, String returnType, String name, List<String> parameterTypes) {
+
+        @Override
+        public String toString() {
+            return kind + " " + returnType + " " + name + "(" + String.join(",", parameterTypes) + ")";
+        }
+
+        public static SubroutineSignature parse(String text) {
+            var head = text.substring(0, text.indexOf('(')).split(" ");
+            var params = text.substring(text.indexOf('(') + 1, text.length() - 1);
+            return new SubroutineSignature(head[0], head[1], head[2],
+                    params.isEmpty() ? List.of() : List.of(params.split(",")));
+        }
+    }
+
+    public SubroutineSignature find(String subroutine) {
+        for (var s : subroutines) {
+            if (s.name().equals(subroutine)) {
+                return s;
+            }
+        }
+        return null;
+    }
+
+    // uma linha: Nome|sub1;sub2;...
+    @Override
+    public String toString() {
+        var parts = new ArrayList<String>();
+        for (var s : subroutines) {
+            parts.add(s.toString());
+        }
+        return name + "|" + String.join(";", parts);
+    }
+
+    public static ClassSignature parse(String text) {
+        int bar = text.indexOf('|');
+        var subroutines = new ArrayList<SubroutineSignature>();
+        var body = text.substring(bar + 1);
+        if (!body.isEmpty()) {
+            for (var s : body.split(";")) {
+                subroutines.add(SubroutineSignature.parse(s));
+            }
+        }
+        return new ClassSignature(text.substring(0, bar), List.copyOf(subroutines));
+    }
+}
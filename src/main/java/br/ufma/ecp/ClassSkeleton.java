@@ -0,0 +1,86 @@
+package br.ufma.ecp;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import br.ufma.ecp.token.TokenBuffer;
+
+// parse "esqueleto" para indice de simbolos, assinaturas e outline: classVarDec e a assinatura de
+// cada subrotina sao parseados, mas os corpos so tem as chaves contadas e ficam guardados como
+// faixas de tokens e de bytes. Um corpo so e parseado de verdade (XML, VM e diagnosticos iguais aos
+// do Parser) quando alguem pede, e uma vez so.
+public class ClassSkeleton {
+
+    // [start, end) na fonte, do '{' ao '}' do corpo
+    public record Body(ClassSignature.SubroutineSignature signature, int start, int end) {
+    }
+
+    private final TokenBuffer tokens;
+    private final Parser skeleton;
+    private final List<Parser.SkippedBody> skipped = new ArrayList<>();
+    private final List<Body> bodies = new ArrayList<>();
+    private final Parser[] parsed;
+
+    public ClassSkeleton(byte[] input) {
+        this(ByteBuffer.wrap(input));
+    }
+
+    public ClassSkeleton(ByteBuffer input) {
+        tokens = new Scanner(input).tokenize();
+        skeleton = new Parser(tokens);
+        skeleton.setOutput(null);
+        skeleton.skipBodies(skipped);
+        skeleton.parse();
+        for (var body : skipped) {
+            bodies.add(new Body(body.signature(), tokens.start(body.open()), tokens.end(body.close())));
+        }
+        parsed = new Parser[skipped.size()];
+    }
+
+    public ClassSignature signature() {
+        return skeleton.signature();
+    }
+
+    public List<SymbolTable.Symbol> classVariables() {
+        return skeleton.classVariables();
+    }
+
+    public List<Body> bodies() {
+        return bodies;
+    }
+
+    // erros fora dos corpos (e corpos sem o '}' final)
+    public List<Diagnostic> diagnostics() {
+        return skeleton.diagnostics();
+    }
+
+    // parser que ja passou pela subrotina i inteira: XMLOutput e VMOutput so dela
+    public Parser body(int i) {
+        if (parsed[i] == null) {
+            var parser = new Parser(tokens, skipped.get(i).declaration());
+            parser.generateVM();
+            parser.parseDeclaration(signature().name(), classVariables());
+            parsed[i] = parser;
+        }
+        return parsed[i];
+    }
+
+    // codigo VM da classe, o mesmo do parse completo; parseia os corpos que faltarem
+    public String vm() {
+        var sb = new StringBuilder();
+        for (int i = 0; i < parsed.length; i++) {
+            sb.append(body(i).VMOutput());
+        }
+        return sb.toString();
+    }
+
+    // diagnosticos do esqueleto mais os de todos os corpos
+    public List<Diagnostic> allDiagnostics() {
+        var all = new ArrayList<>(diagnostics());
+        for (int i = 0; i < parsed.length; i++) {
+            all.addAll(body(i).diagnostics());
+        }
+        return all;
+    }
+}
@@ -0,0 +1,115 @@
+package br.ufma.ecp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// cache em disco da saida de cada classe, indexado pelo hash do conteudo + versao do compilador.
+// o indice guarda tambem a assinatura e as dependencias de cada classe, para invalidar
+// quem chama uma classe cuja assinatura mudou.
+public class CompileCache {
+
+    // sobe a cada mudanca no codigo gerado (XML ou VM), para o cache nao servir saida antiga
+    public static final String COMPILER_VERSION = "jackcompiler-1.0-SNAPSHOT/4";
+
+    public record Entry(String source, String hash, ClassSignature signature, Set<String> dependencies) {
+    }
+
+    private final Path dir;
+    private final Path objects;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public CompileCache(Path dir) throws IOException {
+        this.dir = dir;
+        this.objects = dir.resolve("objects");
+        Files.createDirectories(objects);
+        load();
+    }
+
+    public static String hash(String target, ByteBuffer content) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            digest.update((COMPILER_VERSION + "\0" + target + "\0").getBytes());
+            digest.update(content.duplicate());
+            var sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Entry lookup(Path source) {
+        return entries.get(key(source));
+    }
+
+    public Collection<Entry> entries() {
+        return entries.values();
+    }
+
+    public boolean contains(String hash) {
+        return Files.exists(objects.resolve(hash));
+    }
+
+    public void restore(String hash, Path output) throws IOException {
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        Files.copy(objects.resolve(hash), output, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public void store(Path source, String hash, Path output, ClassSignature signature, Set<String> dependencies)
+            throws IOException {
+        var tmp = Files.createTempFile(objects, hash, ".tmp");
+        Files.copy(output, tmp, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(tmp, objects.resolve(hash), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        entries.put(key(source), new Entry(key(source), hash, signature, Set.copyOf(dependencies)));
+    }
+
+    public void remove(String source) {
+        entries.remove(source);
+    }
+
+    public static String key(Path source) {
+        return source.toAbsolutePath().normalize().toString();
+    }
+
+    // uma linha por classe: fonte, hash, assinatura, dependencias (separados por tab)
+    public void save() throws IOException {
+        var lines = new ArrayList<String>();
+        lines.add(COMPILER_VERSION);
+        for (var e : entries.values()) {
+            lines.add(e.source() + "\t" + e.hash() + "\t" + e.signature() + "\t" + String.join(",", e.dependencies()));
+        }
+        Files.write(dir.resolve("index"), lines);
+    }
+
+    private void load() throws IOException {
+        var index = dir.resolve("index");
+        if (!Files.exists(index)) {
+            return;
+        }
+        var lines = Files.readAllLines(index);
+        if (lines.isEmpty() || !lines.get(0).equals(COMPILER_VERSION)) {
+            return; // outra versao do compilador: comeca do zero
+        }
+        for (var line : lines.subList(1, lines.size())) {
+            var fields = line.split("\t", -1);
+            var deps = fields[3].isEmpty() ? Set.<String>of() : new LinkedHashSet<>(Arrays.asList(fields[3].split(",")));
+            entries.put(fields[0], new Entry(fields[0], fields[1], ClassSignature.parse(fields[2]), deps));
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package br.ufma.ecp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// processo que fica no ar recebendo pedidos de compilacao, com a JIT ja aquecida.
+//
+// protocolo (por stdin/stdout ou por socket local), uma requisicao por vez:
+//   compile <xml|vm> <nome> <tamanho>\n<tamanho bytes de fonte>
+//   signature <Classe>\n
+//   outline <nome> <tamanho>\n<tamanho bytes de fonte>   (so assinaturas; corpos nao sao parseados)
+//   quit\n
+// respostas:
+//   ok <tamanho>\n<tamanho bytes>   (outline: a assinatura da classe e uma linha "subrotina inicio fim" por corpo)
+//   error <n>\n<n linhas de diagnostico>
+public class CompileServer {
+
+    // saidas guardadas, das usadas mais recentemente; o servidor fica no ar por muito tempo
+    public static final int MAX_OUTPUTS = 256;
+
+    private record Output(boolean ok, String text, List<Diagnostic> diagnostics, ClassSignature signature) {
+    }
+
+    private final Map<String, ClassSignature> signatures = new ConcurrentHashMap<>();
+    private final Map<String, Output> outputs = Collections.synchronizedMap(
+            new LinkedHashMap<String, Output>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Output> eldest) {
+                    return size() > MAX_OUTPUTS;
+                }
+            });
+
+    public ClassSignature signature(String className) {
+        return signatures.get(className);
+    }
+
+    // compila algumas vezes uma classe de exemplo para a JIT chegar quente no primeiro pedido
+    public void warmUp(int rounds) {
+        var sample = ("class WarmUp { field int x; method int f(int a) { var int i; let i = 0; "
+                + "while (i < a) { if (i = 3) { do Output.printString(\"ok\"); } let i = i + 1; } "
+                + "return x * i; } }").getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < rounds; i++) {
+            compile("xml", ByteBuffer.wrap(sample), false);
+            compile("vm", ByteBuffer.wrap(sample), false);
+        }
+        signatures.remove("WarmUp");
+    }
+
+    private Output compile(String target, ByteBuffer source, boolean remember) {
+        var key = CompileCache.hash(target, source);
+        var cached = outputs.get(key);
+        if (cached != null) {
+            // a mesma fonte pode voltar depois de outra versao da classe
+            remember(cached.signature());
+            return cached;
+        }
+        var parser = new Parser(source);
+        if (target.equals("vm")) {
+            parser.setOutput(null);
+            parser.generateVM();
+        }
+        parser.parse();
+        Output output;
+        if (parser.hasErrors()) {
+            output = new Output(false, null, List.copyOf(parser.diagnostics()), null);
+        } else {
+            output = new Output(true, target.equals("vm") ? parser.VMOutput() : parser.XMLOutput(), List.of(),
+                    parser.signature());
+            remember(output.signature());
+        }
+        if (remember) {
+            outputs.put(key, output);
+        }
+        return output;
+    }
+
+    private void remember(ClassSignature signature) {
+        if (signature != null && signature.name() != null) {
+            signatures.put(signature.name(), signature);
+        }
+    }
+
+    // atende uma conexao ate "quit" ou fim da entrada
+    public void serve(InputStream input, OutputStream output) throws IOException {
+        var in = new BufferedInputStream(input);
+        var out = new BufferedOutputStream(output);
+        String line;
+        while ((line = readLine(in)) != null) {
+            var fields = line.trim().split(" ");
+            if (fields[0].isEmpty()) {
+                continue;
+            }
+            try {
+                switch (fields[0]) {
+                    case "quit":
+                        out.flush();
+                        return;
+                    case "compile": {
+                        if (fields.length != 4 || !(fields[1].equals("xml") || fields[1].equals("vm"))) {
+                            writeError(out, "usage: compile <xml|vm> <name> <length>");
+                            break;
+                        }
+                        int length = length(fields[3]);
+                        if (length < 0) {
+                            writeError(out, "invalid length " + fields[3]);
+                            break;
+                        }
+                        var source = in.readNBytes(length);
+                        var result = compile(fields[1], ByteBuffer.wrap(source), true);
+                        if (result.ok()) {
+                            writeOk(out, result.text());
+                        } else {
+                            writeDiagnostics(out, fields[2], result.diagnostics());
+                        }
+                        break;
+                    }
+                    case "outline": {
+                        if (fields.length != 3) {
+                            writeError(out, "usage: outline <name> <length>");
+                            break;
+                        }
+                        int length = length(fields[2]);
+                        if (length < 0) {
+                            writeError(out, "invalid length " + fields[2]);
+                            break;
+                        }
+                        var skeleton = new ClassSkeleton(in.readNBytes(length));
+                        if (!skeleton.diagnostics().isEmpty()) {
+                            writeDiagnostics(out, fields[1], skeleton.diagnostics());
+                            break;
+                        }
+                        var signature = skeleton.signature();
+                        remember(signature);
+                        var outline = new StringBuilder(signature.toString()).append('\n');
+                        for (var body : skeleton.bodies()) {
+                            outline.append(body.signature()).append(' ').append(body.start()).append(' ')
+                                    .append(body.end()).append('\n');
+                        }
+                        writeOk(out, outline.toString());
+                        break;
+                    }
+                    case "signature": {
+                        var signature = fields.length > 1 ? signatures.get(fields[1]) : null;
+                        if (signature == null) {
+                            writeError(out, "unknown class");
+                        } else {
+                            writeOk(out, signature.toString());
+                        }
+                        break;
+                    }
+                    default:
+                        writeError(out, "unknown command " + fields[0]);
+                }
+            } catch (RuntimeException e) {
+                // um pedido com problema nao derruba o servidor nem a conexao
+                writeError(out, "internal error: " + e);
+            }
+            out.flush();
+        }
+        out.flush();
+    }
+
+    // uma thread por conexao, so na interface local
+    public void listen(int port) throws IOException {
+        ExecutorService workers = Executors.newCachedThreadPool();
+        try (var server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            while (true) {
+                Socket socket = server.accept();
+                workers.execute(() -> {
+                    try (socket) {
+                        serve(socket.getInputStream(), socket.getOutputStream());
+                    } catch (IOException e) {
+                        // conexao perdida; o servidor continua
+                    }
+                });
+            }
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    private static void writeOk(OutputStream out, String text) throws IOException {
+        var bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.write(("ok " + bytes.length + "\n").getBytes(StandardCharsets.UTF_8));
+        out.write(bytes);
+    }
+
+    private static void writeDiagnostics(OutputStream out, String name, List<Diagnostic> diagnostics)
+            throws IOException {
+        out.write(("error " + diagnostics.size() + "\n").getBytes(StandardCharsets.UTF_8));
+        for (var d : diagnostics) {
+            out.write((name + ": " + d + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void writeError(OutputStream out, String message) throws IOException {
+        out.write(("error 1\n" + message + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    // -1 se nao for um numero de bytes valido
+    private static int length(String field) {
+        try {
+            return Math.max(Integer.parseInt(field), -1);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        var line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+}
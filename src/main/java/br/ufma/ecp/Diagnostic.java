@@ -0,0 +1,10 @@
+package br.ufma.ecp;
+
+// erro encontrado na compilacao; where e o lexema do token (null no fim do arquivo)
+public record Diagnostic(int line, String where, String message) {
+
+    @Override
+    public String toString() {
+        return "[line " + line + "] Error" + (where == null ? " at end" : " at '" + where + "'") + ": " + message;
+    }
+}
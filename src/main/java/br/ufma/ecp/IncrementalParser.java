@@ -0,0 +1,317 @@
+package br.ufma.ecp;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import br.ufma.ecp.output.StringSink;
+import br.ufma.ecp.token.TokenBuffer;
+import br.ufma.ecp.token.TokenType;
+
+// parse incremental para o editor: a fonte fica dividida em pedacos (o cabecalho "class X {", uma
+// declaracao por pedaco junto com os espacos e comentarios antes dela, e o "}" final). Uma edicao
+// dentro de uma declaracao re-lexa aquele pedaco inteiro (ele comeca logo depois do ';' ou '}'
+// anterior, fora de comentario e string, entao o Scanner comeca do zero ali) e re-parseia so aquela
+// declaracao; os outros pedacos guardam XML, VM e diagnosticos (com as linhas relativas ao pedaco). Mudar os static/field re-parseia as subrotinas,
+// que dependem dos indices. Edicoes que mexem na estrutura da classe (cabecalho, chaves, uma
+// declaracao virando duas) caem no parse completo, que tambem e o modo quando a estrutura nao fecha.
+public class IncrementalParser {
+
+    private static final class Piece {
+        final byte[] bytes;
+        final int newlines;
+        // primeiro token da declaracao; null no cabecalho, no "}" final e no modo de parse completo
+        final TokenType kind;
+        Parser parser;
+
+        Piece(byte[] bytes, TokenType kind) {
+            this.bytes = bytes;
+            this.kind = kind;
+            int n = 0;
+            for (byte b : bytes) {
+                n += b == '\n' ? 1 : 0;
+            }
+            newlines = n;
+        }
+
+        boolean isVariable() {
+            return kind == TokenType.STATIC || kind == TokenType.FIELD;
+        }
+    }
+
+    private static final String FOOTER = "<symbol> } </symbol>\r\n</class>\r\n";
+
+    private List<Piece> pieces;
+    private boolean structured;
+    private String className;
+    private String header;
+    private List<SymbolTable.Symbol> classVariables;
+    private int reparsed;
+
+    public IncrementalParser(byte[] source) {
+        reset(source);
+    }
+
+    // substitui length bytes a partir de offset pelo texto dado
+    public void edit(int offset, int length, String replacement) {
+        var inserted = replacement.getBytes(StandardCharsets.UTF_8);
+        if (structured) {
+            int start = 0;
+            for (int p = 0; p < pieces.size(); p++) {
+                var piece = pieces.get(p);
+                int end = start + piece.bytes.length;
+                // na fronteira entre dois pedacos a edicao fica com o seguinte (espacos antes dele)
+                if (offset < end) {
+                    if (piece.kind != null && offset + length <= end
+                            && reparse(p, splice(piece.bytes, offset - start, length, inserted))) {
+                        return;
+                    }
+                    break;
+                }
+                start = end;
+            }
+        }
+        reset(splice(source(), offset, length, inserted));
+    }
+
+    // declaracoes parseadas de novo na ultima edicao; -1 quando foi o arquivo todo
+    public int reparsed() {
+        return reparsed;
+    }
+
+    public String text() {
+        return new String(source(), StandardCharsets.UTF_8);
+    }
+
+    public String XMLOutput() {
+        if (!structured) {
+            return pieces.get(0).parser.XMLOutput();
+        }
+        var sb = new StringBuilder(header);
+        for (var piece : declarations()) {
+            sb.append(piece.parser.XMLOutput());
+        }
+        return sb.append(FOOTER).toString();
+    }
+
+    public String VMOutput() {
+        if (!structured) {
+            return pieces.get(0).parser.VMOutput();
+        }
+        var sb = new StringBuilder();
+        for (var piece : declarations()) {
+            sb.append(piece.parser.VMOutput());
+        }
+        return sb.toString();
+    }
+
+    // com as linhas de cada pedaco deslocadas para a posicao atual dele no arquivo
+    public List<Diagnostic> diagnostics() {
+        if (!structured) {
+            return pieces.get(0).parser.diagnostics();
+        }
+        var all = new ArrayList<Diagnostic>();
+        int line = 0;
+        for (var piece : pieces) {
+            if (piece.parser != null) {
+                for (var d : piece.parser.diagnostics()) {
+                    all.add(new Diagnostic(d.line() + line, d.where(), d.message()));
+                }
+            }
+            line += piece.newlines;
+        }
+        return all;
+    }
+
+    public ClassSignature signature() {
+        if (!structured) {
+            return pieces.get(0).parser.signature();
+        }
+        var subroutines = new ArrayList<ClassSignature.SubroutineSignature>();
+        for (var piece : declarations()) {
+            subroutines.addAll(piece.parser.signature().subroutines());
+        }
+        return new ClassSignature(className, List.copyOf(subroutines));
+    }
+
+    private List<Piece> declarations() {
+        return pieces.subList(1, pieces.size() - 1);
+    }
+
+    private byte[] source() {
+        if (pieces.size() == 1) {
+            return pieces.get(0).bytes;
+        }
+        var out = new ByteArrayOutputStream();
+        for (var piece : pieces) {
+            out.writeBytes(piece.bytes);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] splice(byte[] bytes, int offset, int length, byte[] inserted) {
+        if (offset < 0 || length < 0 || offset + length > bytes.length) {
+            throw new IndexOutOfBoundsException("edit [" + offset + ", " + (offset + length) + ") outside the text");
+        }
+        var result = Arrays.copyOf(bytes, bytes.length - length + inserted.length);
+        System.arraycopy(inserted, 0, result, offset, inserted.length);
+        System.arraycopy(bytes, offset + length, result, offset + inserted.length, bytes.length - offset - length);
+        return result;
+    }
+
+    private void reset(byte[] source) {
+        reparsed = -1;
+        pieces = split(source);
+        structured = pieces != null;
+        if (!structured) {
+            var whole = new Piece(source, null);
+            whole.parser = new Parser(source);
+            whole.parser.generateVM();
+            whole.parser.parse();
+            pieces = List.of(whole);
+            return;
+        }
+        for (var piece : declarations()) {
+            if (piece.isVariable()) {
+                parse(piece);
+            }
+        }
+        classVariables = classVariables();
+        for (var piece : declarations()) {
+            if (!piece.isVariable()) {
+                parse(piece);
+            }
+        }
+    }
+
+    // a edicao ficou dentro da declaracao p: so ela (ou, com static/field diferentes, as subrotinas) muda
+    private boolean reparse(int p, byte[] bytes) {
+        var old = pieces.get(p);
+        var tokens = new Scanner(bytes).tokenize();
+        if (!isDeclarationStart(tokens.type(0)) || declarationEnd(tokens, 0) != tokens.size() - 2) {
+            return false;
+        }
+        var piece = new Piece(bytes, tokens.type(0));
+        if (piece.isVariable() != old.isVariable()) {
+            return false;
+        }
+        parse(piece);
+        pieces.set(p, piece);
+        reparsed = 1;
+        if (piece.isVariable() && !variables(piece).equals(variables(old))) {
+            classVariables = classVariables();
+            for (var other : declarations()) {
+                if (!other.isVariable()) {
+                    parse(other);
+                    reparsed++;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void parse(Piece piece) {
+        var parser = new Parser(piece.bytes);
+        parser.generateVM();
+        parser.parseDeclaration(className, piece.isVariable() ? List.of() : classVariables);
+        piece.parser = parser;
+    }
+
+    private static List<SymbolTable.Symbol> variables(Piece piece) {
+        return piece.parser.classVariables().stream()
+                .sorted(Comparator.comparingInt(SymbolTable.Symbol::index)).toList();
+    }
+
+    // static e field de todas as declaracoes, com os indices da classe inteira
+    private List<SymbolTable.Symbol> classVariables() {
+        var table = new SymbolTable();
+        for (var piece : declarations()) {
+            if (piece.isVariable()) {
+                for (var v : variables(piece)) {
+                    table.define(v.name(), v.type(), v.kind());
+                }
+            }
+        }
+        return table.classVariables();
+    }
+
+    // null quando a fonte nao tem a forma "class X { declaracoes }" que os pedacos supoem
+    private List<Piece> split(byte[] source) {
+        var tokens = new Scanner(source).tokenize();
+        if (tokens.size() < 4 || tokens.type(0) != TokenType.CLASS || tokens.type(1) != TokenType.IDENT
+                || tokens.type(2) != TokenType.LBRACE) {
+            return null;
+        }
+        className = tokens.lexeme(1);
+        var xml = new StringSink();
+        xml.write("<class>\r\n");
+        for (int i = 0; i < 3; i++) {
+            tokens.token(i).writeXml(xml);
+            xml.write("\r\n");
+        }
+        header = xml.toString();
+
+        var result = new ArrayList<Piece>();
+        int from = tokens.end(2);
+        result.add(new Piece(Arrays.copyOfRange(source, 0, from), null));
+        var seenSubroutine = false;
+        int i = 3;
+        while (isDeclarationStart(tokens.type(i))) {
+            var variable = tokens.type(i) == TokenType.STATIC || tokens.type(i) == TokenType.FIELD;
+            int last = declarationEnd(tokens, i);
+            // static/field depois de subroutine e erro do parseClass, que o parse completo relata
+            if (last < 0 || variable && seenSubroutine) {
+                return null;
+            }
+            seenSubroutine |= !variable;
+            int end = tokens.end(last);
+            result.add(new Piece(Arrays.copyOfRange(source, from, end), tokens.type(i)));
+            from = end;
+            i = last + 1;
+        }
+        if (tokens.type(i) != TokenType.RBRACE) {
+            return null;
+        }
+        result.add(new Piece(Arrays.copyOfRange(source, from, source.length), null));
+        return result;
+    }
+
+    private static boolean isDeclarationStart(TokenType type) {
+        return type == TokenType.STATIC || type == TokenType.FIELD || type == TokenType.CONSTRUCTOR
+                || type == TokenType.FUNCTION || type == TokenType.METHOD;
+    }
+
+    // indice do ';' ou do '}' que fecha a declaracao que comeca em i; -1 se ela nao fecha antes
+    // de outra declaracao (que o parse completo sincronizaria de outro jeito) ou do fim
+    private static int declarationEnd(TokenBuffer tokens, int i) {
+        var variable = tokens.type(i) == TokenType.STATIC || tokens.type(i) == TokenType.FIELD;
+        int depth = 0;
+        for (int j = i + 1; j < tokens.size(); j++) {
+            var type = tokens.type(j);
+            if (type == TokenType.EOF || isDeclarationStart(type)) {
+                return -1;
+            }
+            if (variable) {
+                if (type == TokenType.SEMICOLON) {
+                    return j;
+                }
+                if (type == TokenType.LBRACE || type == TokenType.RBRACE) {
+                    return -1;
+                }
+            } else if (type == TokenType.LBRACE) {
+                depth++;
+            } else if (type == TokenType.RBRACE) {
+                if (--depth == 0) {
+                    return j;
+                }
+                if (depth < 0) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+}
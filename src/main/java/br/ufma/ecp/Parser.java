@@ -1,32 +1,260 @@
 package br.ufma.ecp;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import br.ufma.ecp.VMWriter.Command;
+import br.ufma.ecp.VMWriter.Segment;
+import br.ufma.ecp.ast.Ast;
+import br.ufma.ecp.ast.NodeKind;
+import br.ufma.ecp.metrics.CompileMetrics;
+import br.ufma.ecp.output.OutputSink;
+import br.ufma.ecp.output.StringSink;
+import br.ufma.ecp.semantic.ClassUsages;
 import br.ufma.ecp.token.Token;
+import br.ufma.ecp.token.TokenBuffer;
+import br.ufma.ecp.token.TokenSource;
 import br.ufma.ecp.token.TokenType;
+import br.ufma.ecp.vm.PeepholeOptimizer;
 
 public class Parser {
     private static class ParseError extends RuntimeException {
+        ParseError(String message) {
+            super(message);
+        }
+    }
+
+    // resultado de um termo/expressao ja compilado: start e onde seu codigo comeca no VMWriter,
+    // value so vale se constant; pure indica que o codigo pode ser descartado sem efeito colateral
+    private record Operand(int start, boolean constant, int value, boolean pure) {
+        static Operand constant(int start, int value) {
+            return new Operand(start, true, value, true);
+        }
+
+        static Operand code(int start, boolean pure) {
+            return new Operand(start, false, 0, pure);
+        }
     }
 
-    private Scanner scan;
+    // maior k para o qual x * 2^k vira somas em vez de chamar Math.multiply
+    private static final int MAX_SHIFT = 6;
+
+    private TokenSource scan;
+    // com um TokenBuffer os Tokens so sao criados quando alguem pede (current/peek): tipo, linha e
+    // lexema vem direto das colunas do buffer
     private Token currentToken;
     private Token peekToken;
-    private StringBuilder xmlOutput = new StringBuilder();
+    private TokenType currentType;
+    private TokenType peekType;
+    private TokenBuffer buffer;
+    private int currentIndex;
+    private int peekIndex;
+    // tokens lidos da fonte: o peekToken e o de indice tokensRead - 1
+    private int tokensRead;
+    private List<Diagnostic> diagnostics = new ArrayList<>();
+    private StringSink xmlOutput = new StringSink();
+    private OutputSink out = xmlOutput;
 
     private String className;
 
+    private SymbolTable symbolTable = new SymbolTable();
+    private VMWriter vmWriter;
+    private StringSink vmOutput;
+    private PeepholeOptimizer optimizer;
+    private int ifLabelNum;
+    private int whileLabelNum;
+    private boolean folding;
+    private boolean precedence;
+    private Operand operand;
+
+    // analise do programa inteiro (ver collectUsages): tipo estatico da ultima expressao,
+    // null quando so se sabe em tempo de execucao
+    private ClassUsages usages;
+    private TokenType subroutineKind;
+    private String type;
+    private List<String> argumentTypes;
+    private CompileMetrics metrics;
+
+    private Ast ast;
+
+    // modo esqueleto (ver ClassSkeleton): indices dos tokens da declaracao, do '{' e do '}' de cada corpo pulado
+    record SkippedBody(ClassSignature.SubroutineSignature signature, int declaration, int open, int close) {
+    }
+
+    private List<SkippedBody> skipped;
+
+    private List<ClassSignature.SubroutineSignature> subroutines = new ArrayList<>();
+    private List<String> parameterTypes = new ArrayList<>();
+    private Set<String> dependencies = new TreeSet<>();
+
 
     public Parser(byte[] input) {
-        scan = new Scanner(input);
+        this(new Scanner(input).tokenize());
+    }
+
+    public Parser(ByteBuffer input) {
+        this(new Scanner(input).tokenize());
+    }
+
+    // consome os tokens ja empacotados pelo Scanner.tokenize(), por indice
+    public Parser(TokenBuffer tokens) {
+        this(tokens, 0);
+    }
+
+    // a partir do token de indice from (o buffer termina no EOF, que se repete depois do fim)
+    Parser(TokenBuffer tokens, int from) {
+        buffer = tokens;
+        peekIndex = from - 1;
+        nextToken();
+    }
+
+    public Parser(TokenSource tokens) {
+        scan = tokens;
         nextToken();
     }
 
     private void nextToken() {
         currentToken = peekToken;
-        peekToken = scan.nextToken();
+        currentType = peekType;
+        if (buffer != null) {
+            currentIndex = peekIndex;
+            peekIndex = Math.min(peekIndex + 1, buffer.size() - 1);
+            peekToken = null;
+            peekType = buffer.type(peekIndex);
+        } else {
+            peekToken = scan.nextToken();
+            peekType = peekToken.type;
+        }
+        tokensRead++;
+    }
+
+    private Token current() {
+        if (currentToken == null) {
+            currentToken = buffer.token(currentIndex);
+        }
+        return currentToken;
+    }
+
+    private Token peek() {
+        if (peekToken == null) {
+            peekToken = buffer.token(peekIndex);
+        }
+        return peekToken;
+    }
+
+    // lexema do token atual; do buffer, sem criar o Token (palavras reservadas e simbolos nem criam String)
+    private String currentLexeme() {
+        return currentToken == null ? buffer.lexeme(currentIndex) : currentToken.lexeme;
     }
 
+    private String peekLexeme() {
+        return peekToken == null ? buffer.lexeme(peekIndex) : peekToken.lexeme;
+    }
+
+    private int currentLine() {
+        return currentToken == null ? buffer.line(currentIndex) : currentToken.line;
+    }
+
+    // grava o XML direto no destino em vez de acumular em memoria; null desliga o XML
+    public void setOutput(OutputSink sink) {
+        out = sink;
+        xmlOutput = null;
+    }
+
+    // liga a geracao de codigo VM, acumulando em memoria (ver VMOutput)
+    public void generateVM() {
+        vmOutput = new StringSink();
+        vmWriter = new VMWriter(vmOutput);
+        vmWriter.setOptimizer(optimizer);
+    }
+
+    public void setVMOutput(OutputSink sink) {
+        vmOutput = null;
+        vmWriter = new VMWriter(sink);
+        vmWriter.setOptimizer(optimizer);
+    }
+
+    // passa o codigo VM de cada subrotina pelo otimizador peephole antes de escrever
+    public void setOptimizer(PeepholeOptimizer optimizer) {
+        this.optimizer = optimizer;
+        if (vmWriter != null) {
+            vmWriter.setOptimizer(optimizer);
+        }
+    }
+
+    // dobra constantes, simplifica x+0, x*1, x*2^k... e descarta if (false) / while (false)
+    public void setConstantFolding(boolean enabled) {
+        folding = enabled;
+    }
+
+    private boolean folding() {
+        return folding && vmWriter != null;
+    }
+
+    private int vmMark() {
+        return vmWriter != null ? vmWriter.mark() : 0;
+    }
+
+    // monta a arvore na arena dada (que pode ser reaproveitada entre compilacoes)
+    public void buildAst(Ast ast) {
+        this.ast = ast;
+    }
+
+    // conta os nos da arvore por tipo (os tokens sao contados na TokenSource, ver MeteredTokenSource)
+    public void setMetrics(CompileMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // registra chamadas, tipos e variaveis que so o SemanticChecker, com todas as classes, confere
+    public void collectUsages(ClassUsages usages) {
+        this.usages = usages;
+    }
+
+    // erros nao interrompem a compilacao: ficam em diagnostics()
     public void parse() {
-        parseClass();
+        try {
+            parseClass();
+        } catch (ParseError e) {
+            // ja registrado em diagnostics
+        }
+        flush();
+    }
+
+    // corpos das subrotinas so tem as chaves contadas; cada um entra na lista sem XML nem VM
+    void skipBodies(List<SkippedBody> bodies) {
+        skipped = bodies;
+    }
+
+    // so uma declaracao (classVarDec ou subroutineDec), a partir do seu primeiro token, com a classe
+    // e suas variaveis vindas de um parse anterior (ver ClassSkeleton e IncrementalParser)
+    public void parseDeclaration(String className, List<SymbolTable.Symbol> classVariables) {
+        this.className = className;
+        // static e field na ordem dos indices, para define repetir os mesmos
+        classVariables.stream().sorted(Comparator.comparingInt(SymbolTable.Symbol::index))
+                .forEach(v -> symbolTable.define(v.name(), v.type(), v.kind()));
+        try {
+            if (peekTokenIs(TokenType.STATIC) || peekTokenIs(TokenType.FIELD)) {
+                parseClassVarDec();
+            } else {
+                parseSubroutineDec();
+            }
+        } catch (ParseError e) {
+            // ja registrado em diagnostics
+        }
+        flush();
+    }
+
+    private void flush() {
+        if (out != null) {
+            out.flush();
+        }
+        if (vmWriter != null) {
+            vmWriter.flush();
+        }
     }
 
     public void expr() {
@@ -35,148 +263,711 @@ public class Parser {
     }
 
     public void number() {
-        xmlOutput.append(String.format("<number> %s </number>\r\n", currentToken.lexeme));
+        out.write("<number> ");
+        out.write(currentLexeme());
+        out.write(" </number>\r\n");
         match(TokenType.NUMBER);
     }
 
     private void match(TokenType t) {
-        if (currentToken.type == t) {
+        if (currentType == t) {
             nextToken();
         } else {
-            throw error(currentToken, "Syntax error: expected " + t.name());
+            throw error(current(), "Syntax error: expected " + t.name());
         }
     }
 
     public void oper() {
-        if (currentToken.type == TokenType.PLUS) {
-            xmlOutput.append("<operator> + </operator>\r\n");
+        if (currentType == TokenType.PLUS) {
+            out.write("<operator> + </operator>\r\n");
             match(TokenType.PLUS);
             number();
-            xmlOutput.append("<operation> add </operation>\r\n");
+            out.write("<operation> add </operation>\r\n");
             oper();
-        } else if (currentToken.type == TokenType.MINUS) {
-            xmlOutput.append("<operator> - </operator>\r\n");
+        } else if (currentType == TokenType.MINUS) {
+            out.write("<operator> - </operator>\r\n");
             match(TokenType.MINUS);
             number();
-            xmlOutput.append("<operation> sub </operation>\r\n");
+            out.write("<operation> sub </operation>\r\n");
             oper();
-        } else if (currentToken.type == TokenType.EOF) {
-            xmlOutput.append("<end> </end>\r\n");
+        } else if (currentType == TokenType.EOF) {
+            out.write("<end> </end>\r\n");
         } else {
-            throw error(currentToken, "Unexpected token: " + currentToken.lexeme);
+            throw error(current(), "Unexpected token: " + current().lexeme);
         }
     }
 
+    // vazio quando a saida foi redirecionada com setOutput
     public String XMLOutput() {
-        return xmlOutput.toString();
+        return xmlOutput == null ? "" : xmlOutput.toString();
+    }
+
+    public String VMOutput() {
+        return vmOutput == null ? "" : vmOutput.toString();
+    }
+
+    // assinaturas das subrotinas declaradas ate aqui
+    public ClassSignature signature() {
+        return new ClassSignature(className, List.copyOf(subroutines));
+    }
+
+    // static e field declarados na classe
+    public List<SymbolTable.Symbol> classVariables() {
+        return symbolTable.classVariables();
+    }
+
+    // classes cujas subrotinas esta classe chama
+    public Set<String> dependencies() {
+        return dependencies;
+    }
+
+    private void printNonTerminal(NodeKind kind) {
+        if (ast != null) {
+            ast.open(kind);
+        }
+        if (metrics != null) {
+            metrics.node(kind);
+        }
+        if (out == null) {
+            return;
+        }
+        out.write('<');
+        out.write(kind.tag);
+        out.write(">\r\n");
     }
 
-    private void printNonTerminal(String nterminal) {
-        xmlOutput.append(String.format("<%s>\r\n", nterminal));
+    private void closeNonTerminal(NodeKind kind) {
+        if (ast != null) {
+            ast.close();
+        }
+        if (out == null) {
+            return;
+        }
+        out.write("</");
+        out.write(kind.tag);
+        out.write(">\r\n");
     }
 
     boolean peekTokenIs(TokenType type) {
-        return peekToken.type == type;
+        return peekType == type;
     }
 
     boolean currentTokenIs(TokenType type) {
-        return currentToken.type == type;
+        return currentType == type;
     }
 
     private void expectPeek(TokenType... types) {
         for (TokenType type : types) {
-            if (peekToken.type == type) {
+            if (peekType == type) {
                 expectPeek(type);
                 return;
             }
         }
-        throw error(peekToken, "Expected one of the specified tokens");
+        throw error(peek(), "Expected one of the specified tokens");
     }
 
     private void expectPeek(TokenType type) {
-        if (peekToken.type == type) {
+        if (peekType == type) {
             nextToken();
-            xmlOutput.append(String.format("%s\r\n", currentToken.toString()));
+            if (ast != null) {
+                ast.leaf(current());
+            }
+            if (out != null) {
+                Token.writeXml(out, currentType, currentLexeme());
+                out.write("\r\n");
+            }
         } else {
-            throw error(peekToken, "Expected " + type.name());
+            throw error(peek(), "Expected " + type.name());
         }
     }
 
-    private static void report(int line, String where, String message) {
-        System.err.println("[line " + line + "] Error" + where + ": " + message);
+    private Diagnostic report(int line, String where, String message) {
+        var diagnostic = new Diagnostic(line, where, message);
+        diagnostics.add(diagnostic);
+        return diagnostic;
     }
 
     private ParseError error(Token token, String message) {
         if (token.type == TokenType.EOF) {
-            report(token.line, " at end", message);
+            return new ParseError(report(token.line, null, message).toString());
+        } else if (token.type == TokenType.ILLEGAL) {
+            var lexical = token.lexeme.equals("/*") ? "unterminated comment" : "illegal character";
+            return new ParseError(report(token.line, token.lexeme, lexical).toString());
         } else {
-            report(token.line, " at '" + token.lexeme + "'", message);
+            return new ParseError(report(token.line, token.lexeme, message).toString());
+        }
+    }
+
+    // constantes inteiras do Jack vao de 0 a 32767; fora disso fica o diagnostico e o valor 0
+    private int intConstant(String digits, int line) {
+        int value = 0;
+        for (int i = 0; i < digits.length(); i++) {
+            value = value * 10 + digits.charAt(i) - '0';
+            if (value > 32767) {
+                report(line, digits, "integer constant out of range 0..32767");
+                return 0;
+            }
+        }
+        return value;
+    }
+
+    public List<Diagnostic> diagnostics() {
+        return diagnostics;
+    }
+
+    public boolean hasErrors() {
+        return !diagnostics.isEmpty();
+    }
+
+    // modo panico dentro de uma subrotina: descarta tokens ate o fim do comando (;)
+    // ou ate o inicio de outro comando, de uma declaracao ou um }
+    private void synchronize() {
+        while (!peekTokenIs(TokenType.EOF)) {
+            if (currentTokenIs(TokenType.SEMICOLON)) {
+                return;
+            }
+            switch (peekType) {
+                case LET:
+                case IF:
+                case WHILE:
+                case DO:
+                case RETURN:
+                case RBRACE:
+                case STATIC:
+                case FIELD:
+                case CONSTRUCTOR:
+                case FUNCTION:
+                case METHOD:
+                    return;
+                default:
+                    nextToken();
+            }
         }
-        return new ParseError();
     }
 
+    // modo panico no nivel da classe: pula ate a proxima declaracao
+    private void synchronizeDeclaration() {
+        while (!peekTokenIs(TokenType.EOF) && !isDeclarationStart(peekType)) {
+            nextToken();
+        }
+    }
+
+    private static boolean isDeclarationStart(TokenType type) {
+        return type == TokenType.STATIC || type == TokenType.FIELD || type == TokenType.CONSTRUCTOR
+                || type == TokenType.FUNCTION || type == TokenType.METHOD;
+    }
+
+    private long astMark() {
+        return ast != null ? ast.mark() : 0;
+    }
+
+    private void astRestore(long mark) {
+        if (ast != null) {
+            ast.restore(mark);
+        }
+    }
+
+    // construcao aberta no motor de expressoes, esperando o que esta dentro dela terminar:
+    // EXPRESSION e NEGATE esperam um termo; PARENS, INDEX e ARGUMENTS esperam uma expressao
+    private static final class Pending {
+        enum Kind { EXPRESSION, NEGATE, PARENS, INDEX, ARGUMENTS }
+
+        final Kind kind;
+        final int start;
+        TokenType op;
+        Call call;
+        // EXPRESSION: pilhas do shunting-yard (operandos com seus tipos e operadores ainda nao reduzidos)
+        List<Operand> operands;
+        List<String> types;
+        List<TokenType> ops;
+
+        Pending(Kind kind, int start) {
+            this.kind = kind;
+            this.start = start;
+        }
+    }
+
+    // chamada entre o '(' e o ')': os argumentos podem ter outras chamadas dentro
+    private static final class Call {
+        String functionName;
+        int nArgs;
+        int line;
+        ClassUsages.Via via;
+        List<String> types;
+    }
+
+    // term e expression sem recursao: uma pilha explicita de construcoes abertas no lugar da pilha
+    // do Java, entao parenteses aninhados, cadeias de - e ~, indices e argumentos de chamadas so
+    // crescem o heap. O XML e o codigo VM saem na mesma ordem da descida recursiva da gramatica.
     public void parseTerm() {
-        printNonTerminal("term");
-        switch (peekToken.type) {
+        evaluate(false);
+    }
+
+    public void parseExpression() {
+        evaluate(true);
+    }
+
+    // com precedencia, * e / ligam mais que + e -, que ligam mais que < > =, depois & e |;
+    // o padrao e o do Jack: tudo da esquerda para a direita. O XML e o mesmo nos dois modos
+    public void setOperatorPrecedence(boolean enabled) {
+        precedence = enabled;
+    }
+
+    private int precedence(TokenType op) {
+        if (!precedence) {
+            return 0;
+        }
+        switch (op) {
+            case ASTERISK:
+            case SLASH:
+                return 4;
+            case PLUS:
+            case MINUS:
+                return 3;
+            case LT:
+            case GT:
+            case EQ:
+                return 2;
+            case AND:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    private void evaluate(boolean expression) {
+        var stack = new ArrayList<Pending>();
+        if (expression) {
+            stack.add(openExpression());
+        }
+        while (true) {
+            var inner = beginTerm();
+            if (inner != null) {
+                stack.add(inner);
+                if (inner.kind != Pending.Kind.NEGATE) {
+                    stack.add(openExpression());
+                }
+                continue;
+            }
+            // um termo terminou: fecha construcoes ate alguma pedir o proximo termo
+            while (!stack.isEmpty() && !resume(stack)) {
+                stack.remove(stack.size() - 1);
+            }
+            if (stack.isEmpty()) {
+                return;
+            }
+        }
+    }
+
+    private Pending openExpression() {
+        printNonTerminal(NodeKind.EXPRESSION);
+        var expression = new Pending(Pending.Kind.EXPRESSION, vmMark());
+        expression.operands = new ArrayList<>();
+        expression.types = new ArrayList<>();
+        expression.ops = new ArrayList<>();
+        return expression;
+    }
+
+    // o que o topo esperava terminou; true se ele continua aberto esperando outro termo
+    private boolean resume(List<Pending> stack) {
+        var top = stack.get(stack.size() - 1);
+        switch (top.kind) {
+            case EXPRESSION:
+                top.operands.add(operand);
+                top.types.add(type);
+                if (isOperator(peekLexeme())) {
+                    var op = peekType;
+                    while (!top.ops.isEmpty() && precedence(top.ops.get(top.ops.size() - 1)) >= precedence(op)) {
+                        reduce(top);
+                    }
+                    expectPeek(peekType);
+                    top.ops.add(op);
+                    return true;
+                }
+                while (!top.ops.isEmpty()) {
+                    reduce(top);
+                }
+                operand = top.operands.get(0);
+                type = top.types.get(0);
+                closeNonTerminal(NodeKind.EXPRESSION);
+                return false;
+            case NEGATE:
+                if (top.op == TokenType.MINUS) {
+                    type = "int";
+                }
+                if (folding() && operand.constant()) {
+                    var value = top.op == TokenType.MINUS ? (short) -operand.value() : ~operand.value();
+                    vmWriter.truncate(top.start);
+                    pushConstant(value);
+                    operand = Operand.constant(top.start, value);
+                } else if (vmWriter != null) {
+                    vmWriter.writeArithmetic(top.op == TokenType.MINUS ? Command.NEG : Command.NOT);
+                    operand = Operand.code(top.start, operand.pure());
+                }
+                break;
+            case PARENS:
+                expectPeek(TokenType.RPAREN);
+                break;
+            case INDEX:
+                if (vmWriter != null) {
+                    vmWriter.writeArithmetic(Command.ADD);
+                }
+                expectPeek(TokenType.RBRACKET);
+                if (vmWriter != null) {
+                    vmWriter.writePop(Segment.POINTER, 1);
+                    vmWriter.writePush(Segment.THAT, 0);
+                    operand = Operand.code(top.start, operand.pure());
+                }
+                type = null;
+                break;
+            case ARGUMENTS:
+                top.call.nArgs++;
+                if (top.call.types != null) {
+                    top.call.types.add(type);
+                }
+                if (peekTokenIs(TokenType.COMMA)) {
+                    expectPeek(TokenType.COMMA);
+                    stack.add(openExpression());
+                    return true;
+                }
+                closeNonTerminal(NodeKind.EXPRESSION_LIST);
+                argumentTypes = top.call.types;
+                endCall(top.call);
+                operand = Operand.code(top.start, false);
+                type = null;
+                break;
+        }
+        closeNonTerminal(NodeKind.TERM);
+        return false;
+    }
+
+    // aplica o operador do topo aos dois ultimos operandos, cujo codigo ja esta em sequencia no VMWriter
+    private void reduce(Pending expression) {
+        var op = expression.ops.remove(expression.ops.size() - 1);
+        var right = expression.operands.remove(expression.operands.size() - 1);
+        var rightType = expression.types.remove(expression.types.size() - 1);
+        var last = expression.operands.size() - 1;
+        if (folding()) {
+            expression.operands.set(last, foldOperator(op, expression.operands.get(last), right));
+        } else {
+            compileOperator(op);
+            expression.operands.set(last, right);
+        }
+        expression.types.set(last, resultType(op, expression.types.get(last), rightType));
+    }
+
+    // termo simples: escreve tudo e devolve null; termo com algo dentro: devolve a construcao aberta
+    private Pending beginTerm() {
+        printNonTerminal(NodeKind.TERM);
+        var start = vmMark();
+        switch (peekType) {
             case INT:
                 expectPeek(TokenType.INT);
+                operand = Operand.code(start, false);
+                type = null;
                 break;
             case NUMBER:
                 expectPeek(TokenType.NUMBER);
+                type = "int";
+                var value = intConstant(currentLexeme(), currentLine());
+                if (vmWriter != null) {
+                    vmWriter.writePush(Segment.CONST, value);
+                    operand = Operand.constant(start, value);
+                }
                 break;
             case STRING:
                 expectPeek(TokenType.STRING);
+                type = "String";
+                if (vmWriter != null) {
+                    var string = currentLexeme();
+                    vmWriter.writePush(Segment.CONST, string.length());
+                    vmWriter.writeCall("String.new", 1);
+                    for (int i = 0; i < string.length(); i++) {
+                        vmWriter.writePush(Segment.CONST, string.charAt(i));
+                        vmWriter.writeCall("String.appendChar", 2);
+                    }
+                    operand = Operand.code(start, false);
+                }
                 break;
             case FALSE:
             case NULL:
             case TRUE:
                 expectPeek(TokenType.FALSE, TokenType.NULL, TokenType.TRUE);
+                type = currentType == TokenType.NULL ? "null" : "boolean";
+                if (vmWriter != null) {
+                    vmWriter.writePush(Segment.CONST, 0);
+                    if (currentType == TokenType.TRUE) {
+                        vmWriter.writeArithmetic(Command.NOT);
+                    }
+                    operand = Operand.constant(start, currentType == TokenType.TRUE ? -1 : 0);
+                }
                 break;
             case THIS:
                 expectPeek(TokenType.THIS);
+                if (usages != null && inFunction()) {
+                    usages.variable(currentLine(), "this", true);
+                }
+                type = className;
+                if (vmWriter != null) {
+                    vmWriter.writePush(Segment.POINTER, 0);
+                    operand = Operand.code(start, true);
+                }
                 break;
             case IDENT:
                 expectPeek(TokenType.IDENT);
                 if (peekTokenIs(TokenType.LPAREN) || peekTokenIs(TokenType.DOT)) {
-                    parseSubroutineCall();
+                    var call = beginCall();
+                    printNonTerminal(NodeKind.EXPRESSION_LIST);
+                    call.types = usages != null ? new ArrayList<>() : null;
+                    if (!peekTokenIs(TokenType.RPAREN)) {
+                        var arguments = new Pending(Pending.Kind.ARGUMENTS, start);
+                        arguments.call = call;
+                        return arguments;
+                    }
+                    closeNonTerminal(NodeKind.EXPRESSION_LIST);
+                    argumentTypes = call.types;
+                    endCall(call);
+                    operand = Operand.code(start, false);
+                    type = null;
                 } else { // variavel comum ou array
+                    var varName = currentLexeme();
+                    var varLine = currentLine();
+                    useVariable(varName, varLine);
                     if (peekTokenIs(TokenType.LBRACKET)) { // array
                         expectPeek(TokenType.LBRACKET);
-                        parseExpression();
-                        expectPeek(TokenType.RBRACKET);
-
+                        if (vmWriter != null) {
+                            pushVariable(varName, varLine);
+                        }
+                        return new Pending(Pending.Kind.INDEX, start);
+                    } else if (vmWriter != null) {
+                        pushVariable(varName, varLine);
+                        operand = Operand.code(start, true);
                     }
                 }
                 break;
             case LPAREN:
                 expectPeek(TokenType.LPAREN);
-                parseExpression();
-                expectPeek(TokenType.RPAREN);
-                break;
+                return new Pending(Pending.Kind.PARENS, start);
             case MINUS:
             case NOT:
                 expectPeek(TokenType.MINUS, TokenType.NOT);
-                parseTerm();
-                break;
+                var negate = new Pending(Pending.Kind.NEGATE, start);
+                negate.op = currentType;
+                return negate;
             default:
-                System.err.println(peekToken.type);
-                throw error(peekToken, "term expected");
+                throw error(peek(), "term expected");
         }
-        printNonTerminal("/term");
+        closeNonTerminal(NodeKind.TERM);
+        return null;
     }
 
     static public boolean isOperator(String op) {
         return op != "" && "+-*/<>=~&|".contains(op);
     }
 
-    public void parseExpression() {
-        printNonTerminal("expression");
-        parseTerm();
-        while (isOperator(peekToken.lexeme)) {
-            expectPeek(peekToken.type);
-            parseTerm();
+    private static String resultType(TokenType op, String left, String right) {
+        switch (op) {
+            case LT:
+            case GT:
+            case EQ:
+                return "boolean";
+            case AND:
+            case OR:
+                return left != null && left.equals(right) ? left : null;
+            default:
+                return "int";
+        }
+    }
+
+    private void compileOperator(TokenType type) {
+        if (vmWriter == null) {
+            return;
+        }
+        switch (type) {
+            case PLUS:
+                vmWriter.writeArithmetic(Command.ADD);
+                break;
+            case MINUS:
+                vmWriter.writeArithmetic(Command.SUB);
+                break;
+            case ASTERISK:
+                vmWriter.writeCall("Math.multiply", 2);
+                break;
+            case SLASH:
+                vmWriter.writeCall("Math.divide", 2);
+                break;
+            case LT:
+                vmWriter.writeArithmetic(Command.LT);
+                break;
+            case GT:
+                vmWriter.writeArithmetic(Command.GT);
+                break;
+            case EQ:
+                vmWriter.writeArithmetic(Command.EQ);
+                break;
+            case AND:
+                vmWriter.writeArithmetic(Command.AND);
+                break;
+            case OR:
+                vmWriter.writeArithmetic(Command.OR);
+                break;
+            default:
+                throw error(current(), "binary operator expected");
+        }
+    }
+
+    // o codigo de left e right ja esta no VMWriter; dobra ou simplifica quando possivel
+    private Operand foldOperator(TokenType op, Operand left, Operand right) {
+        if (left.constant() && right.constant()) {
+            var value = evaluate(op, left.value(), right.value());
+            if (value != null) {
+                vmWriter.truncate(left.start());
+                pushConstant(value);
+                return Operand.constant(left.start(), value);
+            }
+        }
+        if (right.constant() && simplifies(op, right.value(), true)) {
+            vmWriter.truncate(right.start());
+            return simplify(op, left, right.value());
+        }
+        if (left.constant() && simplifies(op, left.value(), false)) {
+            // 0 + x, 1 * x, 4 * x...: tira a constante da frente e trata como x + 0, x * 1, x * 4
+            vmWriter.remove(left.start(), right.start());
+            var moved = new Operand(left.start(), right.constant(), right.value(), right.pure());
+            return simplify(op, moved, left.value());
+        }
+        compileOperator(op);
+        return Operand.code(left.start(), left.pure() && right.pure());
+    }
+
+    // aritmetica de 16 bits do Hack; null quando nao da para dobrar (divisao por zero)
+    private static Integer evaluate(TokenType op, int a, int b) {
+        switch (op) {
+            case PLUS:
+                return (int) (short) (a + b);
+            case MINUS:
+                return (int) (short) (a - b);
+            case ASTERISK:
+                return (int) (short) (a * b);
+            case SLASH:
+                return b == 0 ? null : (int) (short) (a / b);
+            case LT:
+                return a < b ? -1 : 0;
+            case GT:
+                return a > b ? -1 : 0;
+            case EQ:
+                return a == b ? -1 : 0;
+            case AND:
+                return a & b;
+            case OR:
+                return a | b;
+            default:
+                return null;
+        }
+    }
+
+    // right indica se a constante esta a direita (x - 0 e x / 1 nao comutam)
+    private static boolean simplifies(TokenType op, int value, boolean right) {
+        switch (op) {
+            case PLUS:
+            case OR:
+                return value == 0;
+            case MINUS:
+                return right && value == 0;
+            case SLASH:
+                return right && value == 1;
+            case AND:
+                return value == 0;
+            case ASTERISK:
+                return value == 0
+                        || Integer.bitCount(value) == 1 && Integer.numberOfTrailingZeros(value) <= MAX_SHIFT;
+            default:
+                return false;
+        }
+    }
+
+    // x op constante, com o codigo da constante ja descartado
+    private Operand simplify(TokenType op, Operand x, int value) {
+        if (value == 0 && (op == TokenType.ASTERISK || op == TokenType.AND)) {
+            if (x.pure()) {
+                vmWriter.truncate(x.start());
+                pushConstant(0);
+                return Operand.constant(x.start(), 0);
+            }
+            vmWriter.writePop(Segment.TEMP, 0);
+            pushConstant(0);
+            return Operand.code(x.start(), false);
+        }
+        if (op == TokenType.ASTERISK) {
+            // x * 2^k: k vezes x + x
+            for (int k = Integer.numberOfTrailingZeros(value); k > 0; k--) {
+                vmWriter.writePop(Segment.TEMP, 0);
+                vmWriter.writePush(Segment.TEMP, 0);
+                vmWriter.writePush(Segment.TEMP, 0);
+                vmWriter.writeArithmetic(Command.ADD);
+            }
+            return value == 1 ? x : Operand.code(x.start(), x.pure());
+        }
+        return x;
+    }
+
+    // negativos como ~n, que e o que o compilador de referencia faz para true
+    private void pushConstant(int value) {
+        if (value >= 0) {
+            vmWriter.writePush(Segment.CONST, value);
+        } else {
+            vmWriter.writePush(Segment.CONST, ~value);
+            vmWriter.writeArithmetic(Command.NOT);
+        }
+    }
+
+    private SymbolTable.Symbol resolve(String name, int line) {
+        var symbol = symbolTable.resolve(name);
+        if (symbol == null) {
+            throw error(new Token(TokenType.IDENT, name, line), "undefined variable " + name);
+        }
+        return symbol;
+    }
+
+    private static Segment segment(SymbolTable.Kind kind) {
+        switch (kind) {
+            case STATIC:
+                return Segment.STATIC;
+            case FIELD:
+                return Segment.THIS;
+            case ARG:
+                return Segment.ARG;
+            default:
+                return Segment.LOCAL;
+        }
+    }
+
+    private void pushVariable(String name, int line) {
+        var symbol = resolve(name, line);
+        vmWriter.writePush(segment(symbol.kind()), symbol.index());
+    }
+
+    private boolean inFunction() {
+        return subroutineKind == TokenType.FUNCTION;
+    }
+
+    // guarda so os usos que a fase 2 precisa ver: nome fora do escopo, campo ou this numa function
+    private void useVariable(String name, int line) {
+        if (usages == null) {
+            return;
+        }
+        var symbol = symbolTable.resolve(name);
+        if (symbol == null || symbol.kind() == SymbolTable.Kind.FIELD && inFunction()) {
+            usages.variable(line, name, inFunction());
+        }
+        type = symbol == null ? null : symbol.type();
+    }
+
+    // tipo de classe numa declaracao: se ela existe so se sabe com todas as classes
+    private void useType() {
+        if (usages != null && currentType == TokenType.IDENT) {
+            usages.type(currentLine(), currentLexeme());
         }
-        printNonTerminal("/expression");
     }
 
     // letStatement -> 'let' identifier( '[' expression ']' )? '=' expression ';'
@@ -184,13 +975,23 @@ public class Parser {
 
         var isArray = false;
 
-        printNonTerminal("letStatement");
+        printNonTerminal(NodeKind.LET_STATEMENT);
         expectPeek(TokenType.LET);
         expectPeek(TokenType.IDENT);
 
+        var varName = currentLexeme();
+        var varLine = currentLine();
+        useVariable(varName, varLine);
+
         if (peekTokenIs(TokenType.LBRACKET)) { // array
             expectPeek(TokenType.LBRACKET);
+            if (vmWriter != null) {
+                pushVariable(varName, varLine);
+            }
             parseExpression();
+            if (vmWriter != null) {
+                vmWriter.writeArithmetic(Command.ADD);
+            }
             expectPeek(TokenType.RBRACKET);
             isArray = true;
         }
@@ -198,240 +999,514 @@ public class Parser {
         expectPeek(TokenType.EQ);
         parseExpression();
 
+        if (vmWriter != null) {
+            if (isArray) {
+                vmWriter.writePop(Segment.TEMP, 0);
+                vmWriter.writePop(Segment.POINTER, 1);
+                vmWriter.writePush(Segment.TEMP, 0);
+                vmWriter.writePop(Segment.THAT, 0);
+            } else {
+                var symbol = resolve(varName, varLine);
+                vmWriter.writePop(segment(symbol.kind()), symbol.index());
+            }
+        }
+
         expectPeek(TokenType.SEMICOLON);
-        printNonTerminal("/letStatement");
+        closeNonTerminal(NodeKind.LET_STATEMENT);
     }
 
     public int parseExpressionList() {
-        printNonTerminal("expressionList");
+        printNonTerminal(NodeKind.EXPRESSION_LIST);
 
         var nArgs = 0;
+        // a lista de quem chama: chamadas aninhadas nos argumentos trocam o campo
+        var types = usages != null ? new ArrayList<String>() : null;
 
         if (!peekTokenIs(TokenType.RPAREN))
         {
             parseExpression();
             nArgs = 1;
+            if (types != null) {
+                types.add(type);
+            }
         }
 
         while (peekTokenIs(TokenType.COMMA)) {
             expectPeek(TokenType.COMMA);
             parseExpression();
             nArgs++;
+            if (types != null) {
+                types.add(type);
+            }
         }
 
-        printNonTerminal("/expressionList");
+        closeNonTerminal(NodeKind.EXPRESSION_LIST);
+        argumentTypes = types;
         return nArgs;
     }
 
     // subroutineCall -> subroutineName '(' expressionList ')' |
     // (className|varName)'.'subroutineName '('expressionList ')
     public void parseSubroutineCall() {
-        var nArgs = 0;
+        var call = beginCall();
+        call.nArgs += parseExpressionList();
+        endCall(call);
+    }
 
-        var ident = currentToken.value();
-        var functionName = ident + ".";
+    // tudo ate o '(' inclusive: o objeto (ou this) ja empilhado e o nome da funcao resolvido
+    private Call beginCall() {
+        var call = new Call();
 
-        if (peekTokenIs(TokenType.LPAREN)) {
+        var ident = currentLexeme();
+        call.line = currentLine();
+        call.functionName = ident + ".";
+        call.via = ClassUsages.Via.SELF;
 
+        if (peekTokenIs(TokenType.LPAREN)) { // metodo da propria classe
+
+            if (vmWriter != null) {
+                vmWriter.writePush(Segment.POINTER, 0);
+            }
             expectPeek(TokenType.LPAREN);
-            nArgs = parseExpressionList() + 1;
-            expectPeek(TokenType.RPAREN);
-            functionName = className + "." + ident;
+            call.nArgs = 1;
+            call.functionName = className + "." + ident;
 
         } else {
+            // objeto.metodo() empilha o objeto; Classe.funcao() nao
+            var symbol = symbolTable.resolve(ident);
+            call.via = ClassUsages.Via.CLASS;
+            if (symbol != null) {
+                if (vmWriter != null) {
+                    vmWriter.writePush(segment(symbol.kind()), symbol.index());
+                }
+                call.functionName = symbol.type() + ".";
+                call.nArgs = 1;
+                call.via = ClassUsages.Via.OBJECT;
+                if (symbol.kind() == SymbolTable.Kind.FIELD && inFunction() && usages != null) {
+                    usages.variable(call.line, ident, true);
+                }
+            }
+            if (!call.functionName.equals(className + ".")) {
+                dependencies.add(call.functionName.substring(0, call.functionName.length() - 1));
+            }
             expectPeek(TokenType.DOT);
             expectPeek(TokenType.IDENT);
+            call.functionName += currentLexeme();
             expectPeek(TokenType.LPAREN);
-            nArgs += parseExpressionList();
-            expectPeek(TokenType.RPAREN);
+        }
+        return call;
+    }
+
+    // depois da lista de argumentos (argumentTypes ja e a desta chamada)
+    private void endCall(Call call) {
+        expectPeek(TokenType.RPAREN);
+        if (vmWriter != null) {
+            vmWriter.writeCall(call.functionName, call.nArgs);
+        }
+        if (usages != null) {
+            var functionName = call.functionName;
+            var dot = functionName.indexOf('.');
+            usages.call(new ClassUsages.CallSite(call.line, inFunction(), call.via, functionName.substring(0, dot),
+                    functionName.substring(dot + 1), argumentTypes.size(), argumentTypes));
         }
     }
 
     // 'do' subroutineCall ';'
     public void parseDo() {
-        printNonTerminal("doStatement");
+        printNonTerminal(NodeKind.DO_STATEMENT);
         expectPeek(TokenType.DO);
         expectPeek(TokenType.IDENT);
         parseSubroutineCall();
         expectPeek(TokenType.SEMICOLON);
-        printNonTerminal("/doStatement");
+        if (vmWriter != null) {
+            vmWriter.writePop(Segment.TEMP, 0);
+        }
+        closeNonTerminal(NodeKind.DO_STATEMENT);
     }
 
      public void parseClass() {
-        printNonTerminal("class");
+        printNonTerminal(NodeKind.CLASS);
         expectPeek(TokenType.CLASS);
         expectPeek(TokenType.IDENT);
-        className = currentToken.value();
+        className = currentLexeme();
+        if (usages != null) {
+            usages.setClassName(className);
+        }
         expectPeek(TokenType.LBRACE);
 
-        while (peekTokenIs(TokenType.STATIC) || peekTokenIs(TokenType.FIELD)) {
-            parseClassVarDec();
+        var seenSubroutine = false;
+        while (isDeclarationStart(peekType)) {
+            long mark = astMark();
+            try {
+                if (peekTokenIs(TokenType.STATIC) || peekTokenIs(TokenType.FIELD)) {
+                    if (seenSubroutine) {
+                        report(peek().line, peek().lexeme, "class variables must be declared before subroutines");
+                    }
+                    parseClassVarDec();
+                } else {
+                    seenSubroutine = true;
+                    parseSubroutineDec();
+                }
+            } catch (ParseError e) {
+                astRestore(mark);
+                synchronizeDeclaration();
+            }
         }
 
-        while (peekTokenIs(TokenType.FUNCTION) || peekTokenIs(TokenType.CONSTRUCTOR) || peekTokenIs(TokenType.METHOD)) {
-            parseSubroutineDec();
+        // depois de uma recuperacao o } final pode ter sido descartado
+        if (!(hasErrors() && peekTokenIs(TokenType.EOF))) {
+            expectPeek(TokenType.RBRACE);
         }
 
-        expectPeek(TokenType.RBRACE);
-
-        printNonTerminal("/class");
+        closeNonTerminal(NodeKind.CLASS);
     }
 
     // classVarDec → ( 'static' | 'field' ) type varName ( ',' varName)* ';'
     public void parseClassVarDec() {
-        printNonTerminal("classVarDec");
+        printNonTerminal(NodeKind.CLASS_VAR_DEC);
         expectPeek(TokenType.FIELD, TokenType.STATIC);
 
+        var kind = currentType == TokenType.STATIC ? SymbolTable.Kind.STATIC : SymbolTable.Kind.FIELD;
+
         // 'int' | 'char' | 'boolean' | className
         expectPeek(TokenType.INT, TokenType.CHAR, TokenType.BOOLEAN, TokenType.IDENT);
+        useType();
+        var type = currentLexeme();
         expectPeek(TokenType.IDENT);
+        symbolTable.define(currentLexeme(), type, kind);
 
         while (peekTokenIs(TokenType.COMMA)) {
             expectPeek(TokenType.COMMA);
             expectPeek(TokenType.IDENT);
+            symbolTable.define(currentLexeme(), type, kind);
         }
 
         expectPeek(TokenType.SEMICOLON);
-        printNonTerminal("/classVarDec");
+        closeNonTerminal(NodeKind.CLASS_VAR_DEC);
     }
     
     public void parseSubroutineDec() {
-        printNonTerminal("subroutineDec");     
+        printNonTerminal(NodeKind.SUBROUTINE_DEC);     
+        var declaration = tokensRead - 1;
+
+        ifLabelNum = 0;
+        whileLabelNum = 0;
+        symbolTable.startSubroutine();
 
         expectPeek(TokenType.CONSTRUCTOR, TokenType.FUNCTION, TokenType.METHOD);
 
-        var subroutineType = currentToken.type;
+        var subroutineType = currentType;
+        subroutineKind = subroutineType;
+
+        if (subroutineType == TokenType.METHOD) {
+            symbolTable.define("this", className, SymbolTable.Kind.ARG);
+        }
 
         // 'int' | 'char' | 'boolean' | className
         expectPeek(TokenType.VOID, TokenType.INT, TokenType.CHAR, TokenType.BOOLEAN, TokenType.IDENT);
+        useType();
+        var returnType = currentLexeme();
         expectPeek(TokenType.IDENT);
 
-        var functionName = className + "." + currentToken.value();
+        var subroutineName = currentLexeme();
+        var functionName = className + "." + subroutineName;
 
         expectPeek(TokenType.LPAREN);
         parseParameterList();
         expectPeek(TokenType.RPAREN);
-        parseSubroutineBody(functionName, subroutineType);
+        var signature = new ClassSignature.SubroutineSignature(subroutineType.value, returnType,
+                subroutineName, List.copyOf(parameterTypes));
+        subroutines.add(signature);
+        if (skipped != null) {
+            skipSubroutineBody(signature, declaration);
+        } else {
+            parseSubroutineBody(functionName, subroutineType);
+        }
 
-        printNonTerminal("/subroutineDec");
+        closeNonTerminal(NodeKind.SUBROUTINE_DEC);
     }
 
     public void parseParameterList() {
-        printNonTerminal("parameterList");
+        printNonTerminal(NodeKind.PARAMETER_LIST);
+        parameterTypes.clear();
 
         if (!peekTokenIs(TokenType.RPAREN)) // verifica se tem pelo menos uma expressao
         {
             expectPeek(TokenType.INT, TokenType.CHAR, TokenType.BOOLEAN, TokenType.IDENT);
+            useType();
+            var type = currentLexeme();
             expectPeek(TokenType.IDENT);
+            symbolTable.define(currentLexeme(), type, SymbolTable.Kind.ARG);
+            parameterTypes.add(type);
 
             while (peekTokenIs(TokenType.COMMA)) {
                 expectPeek(TokenType.COMMA);
                 expectPeek(TokenType.INT, TokenType.CHAR, TokenType.BOOLEAN, TokenType.IDENT);
+                useType();
+                type = currentLexeme();
                 expectPeek(TokenType.IDENT);
+                symbolTable.define(currentLexeme(), type, SymbolTable.Kind.ARG);
+                parameterTypes.add(type);
             }
 
         }
 
-        printNonTerminal("/parameterList");
+        closeNonTerminal(NodeKind.PARAMETER_LIST);
     }
 
 
     public void parseSubroutineBody(String functionName, TokenType subroutineType) {
-        printNonTerminal("subroutineBody");
+        printNonTerminal(NodeKind.SUBROUTINE_BODY);
         expectPeek(TokenType.LBRACE);
         while (peekTokenIs(TokenType.VAR)) {
             parseVarDec();
         }
+
+        if (vmWriter != null) {
+            vmWriter.writeFunction(functionName, symbolTable.varCount(SymbolTable.Kind.VAR));
+            if (subroutineType == TokenType.CONSTRUCTOR) {
+                vmWriter.writePush(Segment.CONST, symbolTable.varCount(SymbolTable.Kind.FIELD));
+                vmWriter.writeCall("Memory.alloc", 1);
+                vmWriter.writePop(Segment.POINTER, 0);
+            } else if (subroutineType == TokenType.METHOD) {
+                vmWriter.writePush(Segment.ARG, 0);
+                vmWriter.writePop(Segment.POINTER, 0);
+            }
+        }
+
         parseStatements();
         expectPeek(TokenType.RBRACE);
-        printNonTerminal("/subroutineBody");
+        closeNonTerminal(NodeKind.SUBROUTINE_BODY);
+    }
+
+    private void skipSubroutineBody(ClassSignature.SubroutineSignature signature, int declaration) {
+        expectPeek(TokenType.LBRACE);
+        var open = tokensRead - 2;
+        if (buffer != null) {
+            skipBufferedBody(signature, declaration, open);
+            return;
+        }
+        var depth = 1;
+        while (depth > 0) {
+            if (peekTokenIs(TokenType.EOF)) {
+                throw error(peek(), "Expected RBRACE");
+            }
+            nextToken();
+            if (currentTokenIs(TokenType.LBRACE)) {
+                depth++;
+            } else if (currentTokenIs(TokenType.RBRACE)) {
+                depth--;
+            }
+        }
+        skipped.add(new SkippedBody(signature, declaration, open, tokensRead - 2));
+    }
+
+    // com o TokenBuffer as chaves sao contadas direto na coluna de tipos, sem passar token a token
+    // pelo parser, que depois recomeca no '}' (ou no EOF, para o erro)
+    private void skipBufferedBody(ClassSignature.SubroutineSignature signature, int declaration, int open) {
+        final int lbrace = TokenType.LBRACE.ordinal();
+        final int rbrace = TokenType.RBRACE.ordinal();
+        final int eof = TokenType.EOF.ordinal();
+        int j = currentIndex;
+        int depth = 1;
+        while (depth > 0) {
+            int type = buffer.typeOrdinal(++j);
+            if (type == lbrace) {
+                depth++;
+            } else if (type == rbrace) {
+                depth--;
+            } else if (type == eof) {
+                jumpTo(j - 1);
+                throw error(peek(), "Expected RBRACE");
+            }
+        }
+        jumpTo(j);
+        skipped.add(new SkippedBody(signature, declaration, open, tokensRead - 2));
+    }
+
+    // o token de indice index vira o currentToken, como se os anteriores tivessem sido lidos
+    private void jumpTo(int index) {
+        tokensRead += index - currentIndex - 1;
+        peekIndex = index;
+        peekToken = null;
+        peekType = buffer.type(index);
+        nextToken();
     }
 
     public void parseVarDec(){
-        printNonTerminal("varDec");
+        printNonTerminal(NodeKind.VAR_DEC);
         expectPeek(TokenType.VAR);
 
         // 'int' | 'char' | 'boolean' | className
         expectPeek(TokenType.INT, TokenType.CHAR, TokenType.BOOLEAN, TokenType.IDENT);
+        useType();
+        var type = currentLexeme();
 
         expectPeek(TokenType.IDENT);
+        symbolTable.define(currentLexeme(), type, SymbolTable.Kind.VAR);
 
         while (peekTokenIs(TokenType.COMMA)) {
             expectPeek(TokenType.COMMA);
             expectPeek(TokenType.IDENT);
+            symbolTable.define(currentLexeme(), type, SymbolTable.Kind.VAR);
         }
 
         expectPeek(TokenType.SEMICOLON);
-        printNonTerminal("/varDec");
+        closeNonTerminal(NodeKind.VAR_DEC);
 
     }
 
     public void parseIf() {
-        printNonTerminal("ifStatement");
+        printNonTerminal(NodeKind.IF_STATEMENT);
+
+        var labelTrue = "IF_TRUE" + ifLabelNum;
+        var labelFalse = "IF_FALSE" + ifLabelNum;
+        var labelEnd = "IF_END" + ifLabelNum;
+        ifLabelNum++;
 
         expectPeek(TokenType.IF);
         expectPeek(TokenType.LPAREN);
 
         parseExpression();
         expectPeek(TokenType.RPAREN);
+
+        // if (true) / if (false): so o ramo que executa gera codigo, sem teste nem labels
+        var known = folding() && operand.constant();
+        var taken = known && operand.value() != 0;
+        var branches = vmWriter != null && !known;
+
+        if (known) {
+            vmWriter.truncate(operand.start());
+        } else if (vmWriter != null) {
+            vmWriter.writeIf(labelTrue);
+            vmWriter.writeGoto(labelFalse);
+            vmWriter.writeLabel(labelTrue);
+        }
+
         expectPeek(TokenType.LBRACE);
 
+        var thenStart = vmMark();
         parseStatements();
+        if (known && !taken) {
+            vmWriter.truncate(thenStart);
+        }
         expectPeek(TokenType.RBRACE);
 
         if (peekTokenIs(TokenType.ELSE))
         {
+            if (branches) {
+                vmWriter.writeGoto(labelEnd);
+                vmWriter.writeLabel(labelFalse);
+            }
+
             expectPeek(TokenType.ELSE);
             expectPeek(TokenType.LBRACE);
 
+            var elseStart = vmMark();
             parseStatements();
+            if (taken) {
+                vmWriter.truncate(elseStart);
+            }
             expectPeek(TokenType.RBRACE);
+
+            if (branches) {
+                vmWriter.writeLabel(labelEnd);
+            }
+        } else if (branches) {
+            vmWriter.writeLabel(labelFalse);
         }
 
-        printNonTerminal("/ifStatement");
+        closeNonTerminal(NodeKind.IF_STATEMENT);
     }
 
     public void parseWhile() {
-        printNonTerminal("whileStatement");
+        printNonTerminal(NodeKind.WHILE_STATEMENT);
+
+        var labelExp = "WHILE_EXP" + whileLabelNum;
+        var labelEnd = "WHILE_END" + whileLabelNum;
+        whileLabelNum++;
+
+        var loopStart = vmMark();
+        if (vmWriter != null) {
+            vmWriter.writeLabel(labelExp);
+        }
 
         expectPeek(TokenType.WHILE);
         expectPeek(TokenType.LPAREN);
         parseExpression();
 
+        // while (true) dispensa o teste; while (false) some inteiro no fim
+        var known = folding() && operand.constant();
+        var never = known && operand.value() == 0;
+        if (known) {
+            vmWriter.truncate(operand.start());
+        } else if (vmWriter != null) {
+            vmWriter.writeArithmetic(Command.NOT);
+            vmWriter.writeIf(labelEnd);
+        }
+
         expectPeek(TokenType.RPAREN);
         expectPeek(TokenType.LBRACE);
         parseStatements();
 
+        if (vmWriter != null) {
+            vmWriter.writeGoto(labelExp);
+            vmWriter.writeLabel(labelEnd);
+        }
+        if (never) {
+            vmWriter.truncate(loopStart);
+        }
+
         expectPeek(TokenType.RBRACE);
-        printNonTerminal("/whileStatement");
+        closeNonTerminal(NodeKind.WHILE_STATEMENT);
     }
 
     // ReturnStatement -> 'return' expression? ';'
     public void parseReturn() {
-        printNonTerminal("returnStatement");
+        printNonTerminal(NodeKind.RETURN_STATEMENT);
         expectPeek(TokenType.RETURN);
         if (!peekTokenIs(TokenType.SEMICOLON)) {
             parseExpression();
+        } else if (vmWriter != null) {
+            vmWriter.writePush(Segment.CONST, 0);
         }
         expectPeek(TokenType.SEMICOLON);
-        printNonTerminal("/returnStatement");
+        if (vmWriter != null) {
+            vmWriter.writeReturn();
+        }
+        closeNonTerminal(NodeKind.RETURN_STATEMENT);
     }
 
     public void parseStatements() {
-        printNonTerminal("statements");
-        while (peekToken.type == TokenType.WHILE ||
-                peekToken.type == TokenType.IF ||
-                peekToken.type == TokenType.LET ||
-                peekToken.type == TokenType.DO ||
-                peekToken.type == TokenType.RETURN) {
-            parseStatement();
+        printNonTerminal(NodeKind.STATEMENTS);
+        while (true) {
+            if (peekType == TokenType.WHILE ||
+                    peekType == TokenType.IF ||
+                    peekType == TokenType.LET ||
+                    peekType == TokenType.DO ||
+                    peekType == TokenType.RETURN) {
+                long mark = astMark();
+                try {
+                    parseStatement();
+                } catch (ParseError e) {
+                    astRestore(mark);
+                    synchronize();
+                }
+            } else if (peekTokenIs(TokenType.RBRACE) || peekTokenIs(TokenType.EOF)
+                    || isDeclarationStart(peekType)) {
+                break;
+            } else { // lixo no lugar de um comando
+                error(peek(), "Expected a statement");
+                nextToken();
+                synchronize();
+            }
         }
 
-        printNonTerminal("/statements");
+        closeNonTerminal(NodeKind.STATEMENTS);
     }
 
     public void parseStatement() {
-        switch (peekToken.type) {
+        switch (peekType) {
             case LET:
                 parseLet();
                 break;
@@ -448,7 +1523,7 @@ public class Parser {
                 parseDo();
                 break;
             default:
-                throw error(peekToken, "Expected a statement");
+                throw error(peek(), "Expected a statement");
         }
     }
-}
\ No newline at end of file
+}
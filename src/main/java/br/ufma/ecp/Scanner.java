@@ -1,7 +1,9 @@
 package br.ufma.ecp;
-import java.util.Map;
 
+import br.ufma.ecp.token.NamePool;
 import br.ufma.ecp.token.Token;
+import br.ufma.ecp.token.TokenBuffer;
+import br.ufma.ecp.token.TokenSource;
 import br.ufma.ecp.token.TokenType;
 
 import static br.ufma.ecp.token.TokenType.EOF;
@@ -9,254 +11,320 @@ import static br.ufma.ecp.token.TokenType.IDENT;
 import static br.ufma.ecp.token.TokenType.ILLEGAL;
 import static br.ufma.ecp.token.TokenType.NUMBER;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
+import java.util.Arrays;
 
 
-public class Scanner {
-    
-    private byte[] input;
-    private int current; 
-    private int line = 1;
-    private int start;
+public class Scanner implements TokenSource {
 
-    private static final Map<String, TokenType> keywords;
+    // classe de cada byte: um acesso a tabela decide o que fazer com o proximo caractere
+    private static final byte OTHER = 0, SPACE = 1, NEWLINE = 2, DIGIT = 3, ALPHA = 4,
+            SYMBOL = 5, SLASH = 6, QUOTE = 7, END = 8;
+
+    private static final byte[] CLASSES = new byte[256];
+    private static final TokenType[] SYMBOLS = new TokenType[256];
 
     static {
-        keywords = new HashMap<>();
-        keywords.put("let", TokenType.LET);
-        keywords.put("while", TokenType.WHILE);
-        keywords.put("int", TokenType.INT);
-        keywords.put("class", TokenType.CLASS);
-        keywords.put("constructor", TokenType.CONSTRUCTOR);
-        keywords.put("function", TokenType.FUNCTION);
-        keywords.put("method", TokenType.METHOD);
-        keywords.put("field", TokenType.FIELD);
-        keywords.put("static", TokenType.STATIC);
-        keywords.put("var", TokenType.VAR);
-        keywords.put("char", TokenType.CHAR);
-        keywords.put("boolean", TokenType.BOOLEAN);
-        keywords.put("void", TokenType.VOID);
-        keywords.put("true", TokenType.TRUE);
-        keywords.put("false", TokenType.FALSE);
-        keywords.put("null", TokenType.NULL);
-        keywords.put("this", TokenType.THIS);        
-        keywords.put("do", TokenType.DO);
-        keywords.put("if", TokenType.IF);
-        keywords.put("else", TokenType.ELSE);
-        keywords.put("return", TokenType.RETURN);
+        CLASSES[' '] = SPACE;
+        CLASSES['\t'] = SPACE;
+        CLASSES['\r'] = SPACE;
+        CLASSES['\n'] = NEWLINE;
+        for (int c = '0'; c <= '9'; c++) {
+            CLASSES[c] = DIGIT;
+        }
+        for (int c = 'a'; c <= 'z'; c++) {
+            CLASSES[c] = ALPHA;
+            CLASSES[c - 'a' + 'A'] = ALPHA;
+        }
+        CLASSES['_'] = ALPHA;
+        for (TokenType type : TokenType.values()) {
+            if (type.value != null && type.value.length() == 1) {
+                CLASSES[type.value.charAt(0)] = SYMBOL;
+                SYMBOLS[type.value.charAt(0)] = type;
+            }
+        }
+        CLASSES['/'] = SLASH;
+        CLASSES['"'] = QUOTE;
+        CLASSES[0] = END;
     }
 
-    public Scanner (byte[] input) {
-        this.input = input;
-        current = 0;
-        start = 0;
-    }
+    // busca escalar ou SIMD, escolhida uma vez por JVM (ver ByteSearch.select)
+    private static final ByteSearch SEARCH = ByteSearch.select();
+
+    // zeros depois do fim: o primeiro e a sentinela, o resto deixa as buscas vetoriais ler blocos inteiros
+    private static final int PADDING = 64;
+
+    // tamanho inicial da janela; a entrada nunca e copiada inteira para o heap
+    static final int WINDOW = 1 << 16;
+
+    private ByteBuffer input;
+    // janela sobre a entrada com zeros no fim: o 0 para todos os lacos, que entao nao testam o tamanho.
+    // Posicoes como start, end e current sao relativas a janela, que comeca em base
+    private byte[] bytes;
+    private int base;
+    private int limit;
+    private int capacity;
+    private final ByteSearch search;
+    private int length;
+    private int current;
+    private int line = 1;
+    private int start;
+    private int end;
 
+    private final NamePool names;
 
-    private char peek () {
-        if (current < input.length)
-           return (char)input[current];
-       return '\0';
+    public Scanner (byte[] input) {
+        this(ByteBuffer.wrap(input));
     }
 
-    private void advance()  {
-        char ch = peek();
-        if (ch != '\0') {
-            current++;
-        }
+    // aceita buffer de heap, direto ou MappedByteBuffer; o conteudo passa por uma janela de tamanho
+    // fixo (copias em bloco), entao um arquivo mapeado nao vira um array do tamanho dele
+    public Scanner (ByteBuffer input) {
+        this(input, new NamePool());
     }
 
-    public Token nextToken() {
-
-        skipWhitespace();
-
-        start = current;
-        char ch = peek();
-
-        if (Character.isDigit(ch)) {
-            return number();
-        }
-
-        if (isAlpha(ch)) {
-            return identifier();
-        }
-
-        switch (ch) {
-
-            case '/':
-                if (peekNext() == '/') {
-                    skipLineComments();
-                    return nextToken();
-                } else if (peekNext() == '*') {
-                    skipBlockComments();
-                    return nextToken();
-                } else {
-                    advance();
-                    return new Token(TokenType.SLASH, "/", line);
-                }
-
-            case '+':
-                advance();
-                return new Token(TokenType.PLUS, "+", line);
-            case '-':
-                advance();
-                return new Token(TokenType.MINUS, "-", line);
-            case '*':
-                advance();
-                return new Token(TokenType.ASTERISK, "*", line);
-            case '.':
-                advance();
-                return new Token(TokenType.DOT, ".", line);
-            case '&':
-                advance();
-                return new Token(TokenType.AND, "&", line);
-            case '|':
-                advance();
-                return new Token(TokenType.OR, "|", line);
-            case '~':
-                advance();
-                return new Token(TokenType.NOT, "~", line);
+    // scanners que compartilham o pool (na mesma thread) compartilham os lexemas dos identificadores
+    public Scanner (ByteBuffer input, NamePool names) {
+        this(input, names, SEARCH);
+    }
 
-            case '>':
-                advance();
-                return new Token(TokenType.GT, ">", line);
-            case '<':
-                advance();
-                return new Token(TokenType.LT, "<", line);
-            case '=':
-                advance();
-                return new Token(TokenType.EQ, "=", line);
+    Scanner (ByteBuffer input, NamePool names, ByteSearch search) {
+        this(input, names, search, WINDOW);
+    }
 
-            case '(':
-                advance();
-                return new Token(TokenType.LPAREN, "(", line);
-            case ')':
-                advance();
-                return new Token(TokenType.RPAREN, ")", line);
-            case '{':
-                advance();
-                return new Token(TokenType.LBRACE, "{", line);
-            case '}':
-                advance();
-                return new Token(TokenType.RBRACE, "}", line);
-            case '[':
-                advance();
-                return new Token(TokenType.LBRACKET, "[", line);
-            case ']':
-                advance();
-                return new Token(TokenType.RBRACKET, "]", line);
-            case ';':
-                advance();
-                return new Token(TokenType.SEMICOLON, ";", line);
-            case ',':
-                advance();
-                return new Token(TokenType.COMMA, ",", line);
-            case '"':
-                return string();
-            case 0:
-                return new Token(EOF, "EOF", line);
-            default:
-                advance();
-                return new Token(ILLEGAL, Character.toString(ch), line);
-        }
+    Scanner (ByteBuffer input, NamePool names, ByteSearch search, int window) {
+        this.names = names;
+        this.search = search;
+        this.input = input.slice();
+        length = this.input.limit();
+        capacity = window;
+        slide(0);
+        current = 0;
+        start = 0;
     }
-    
 
-    private Token number() {
-        while (Character.isDigit(peek())) {
-            advance();
+    // recarrega a janela a partir da posicao from da entrada
+    private void slide(int from) {
+        int n = Math.min(length - from, capacity);
+        if (bytes == null || bytes.length < n + PADDING) {
+            bytes = new byte[n + PADDING];
         }
-
-        String num = new String(input, start, current - start, StandardCharsets.UTF_8);
-        return new Token(NUMBER, num, line);
+        input.get(from, bytes, 0, n);
+        Arrays.fill(bytes, n, n + PADDING, (byte) 0);
+        base = from;
+        limit = n;
     }
-    
-    private Token identifier() {
-        while (isAlphaNumeric(peek()))
-            advance();
 
-        String id = new String(input, start, current - start, StandardCharsets.UTF_8);
-        TokenType type = keywords.get(id);
-        if (type == null)
-            type = IDENT;
-        return new Token(type, id, line);
+    private String text(int from, int to) {
+        return new String(bytes, from, to - from, StandardCharsets.UTF_8);
     }
-    
-    private void skipWhitespace() {
-        char ch = peek();
-        while (ch == ' ' || ch == '\r' || ch == '\t' || ch == '\n') {
-            if (ch == '\n')
-            line++;
-            advance();
-            ch = peek();
+
+    public Token nextToken() {
+        TokenType type = scanToken();
+        String lexeme;
+        if (type.value != null) {
+            lexeme = type.value;
+        } else if (type == IDENT) {
+            lexeme = names.intern(bytes, start, end);
+        } else {
+            lexeme = text(start, end);
         }
+        return new Token(type, lexeme, line);
     }
 
-    private boolean isAlpha(char c) {
-        return (c >= 'a' && c <= 'z') ||
-               (c >= 'A' && c <= 'Z') ||
-                c == '_';
+    // modo empacotado: nenhum Token nem String por lexema, so as colunas do buffer. Codigo Jack tem
+    // perto de um token a cada 4 bytes; com folga, as colunas quase nunca precisam crescer
+    public TokenBuffer tokenize() {
+        return tokenize(new TokenBuffer(input, Math.max(16, length / 3), names));
     }
 
-    private boolean isAlphaNumeric(char c) {
-        return isAlpha(c) || Character.isDigit((c));
+    public TokenBuffer tokenize(TokenBuffer tokens) {
+        TokenType type;
+        do {
+            type = scanToken();
+            tokens.add(type, base + start, base + end, line);
+        } while (type != EOF);
+        return tokens;
     }
 
-    private Token string() {
-        advance();
-        start = current;
-        while (peek() != '"' && peek() != 0) {
-            advance();
+    // lote de ate max tokens (pipeline); false quando o EOF ja foi para o buffer
+    public boolean fill(TokenBuffer tokens, int max) {
+        for (int n = 0; n < max; n++) {
+            TokenType type = scanToken();
+            tokens.add(type, base + start, base + end, line);
+            if (type == EOF) {
+                return false;
+            }
         }
-        String s = new String(input, start, current - start, StandardCharsets.UTF_8);
-        Token token = new Token(TokenType.STRING, s, line);
-        advance();
-        return token;
+        return true;
     }
 
-    private void skipBlockComments() {
-        boolean endComment = false;
-        advance();
-
-        while (!endComment) {
-            advance();
-            char ch = peek();
+    // reconhece o proximo token; o lexema fica em bytes[start, end)
+    private TokenType scanToken() {
+        while (true) {
+            int from = current;
+            int fromLine = line;
+            TokenType type = scanWindow();
+            // toda busca para no primeiro byte depois do que consumiu: se foi o 0 do fim da janela e
+            // ainda ha entrada, o token (ou o espaco antes dele) pode continuar e e lido de novo
+            if (current < limit || base + limit == length) {
+                return type;
+            }
+            line = fromLine;
+            if (from == 0) {
+                capacity *= 2;
+            }
+            slide(base + from);
+            current = 0;
+        }
+    }
 
-            if (ch == '\n')
-                line++;
+    private TokenType scanWindow() {
+        final byte[] buf = bytes;
+        int i = skipWhitespace(buf, current);
+        if (i < 0) {
+            return ILLEGAL; // comentario sem fim, ver skipBlockComment
+        }
+        start = i;
+        byte c = buf[i];
+        switch (CLASSES[c & 0xFF]) {
+            case DIGIT:
+                do {
+                    i++;
+                } while (CLASSES[buf[i] & 0xFF] == DIGIT);
+                end = current = i;
+                return NUMBER;
+            case ALPHA:
+                do {
+                    i++;
+                } while (isIdentifierPart(buf[i]));
+                end = current = i;
+                return keyword(start, end);
+            case SYMBOL:
+            case SLASH:
+                end = current = i + 1;
+                return SYMBOLS[c & 0xFF];
+            case QUOTE:
+                start = ++i;
+                i = search.quoteOrEnd(buf, i);
+                end = i;
+                current = buf[i] == '"' ? i + 1 : i;
+                return TokenType.STRING;
+            case END:
+                // fim da entrada (ou um byte 0 no meio dela)
+                end = current = i;
+                return EOF;
+            default:
+                end = current = i + 1;
+                return ILLEGAL;
+        }
+    }
 
-            if (ch == 0) { // eof, lexical error
-                System.exit(1);
-            }
+    private static boolean isIdentifierPart(byte c) {
+        int cls = CLASSES[c & 0xFF];
+        return cls == ALPHA || cls == DIGIT;
+    }
 
-            if (ch == '*') {
-                for (ch = peek(); ch == '*'; advance(), ch = peek())
-                    ;
-                if (ch == '/') {
-                    endComment = true;
-                    advance();
+    // pula espacos, quebras de linha e comentarios de uma vez; devolve o inicio do proximo token
+    // ou -1 para um comentario de bloco sem fim
+    private int skipWhitespace(byte[] buf, int i) {
+        while (true) {
+            switch (CLASSES[buf[i] & 0xFF]) {
+                case SPACE:
+                case NEWLINE: {
+                    int next = search.skipSpaces(buf, i);
+                    line += search.countNewlines(buf, i, next);
+                    i = next;
+                    break;
                 }
+                case SLASH:
+                    if (buf[i + 1] == '/') {
+                        i = search.lineEnd(buf, i + 2);
+                    } else if (buf[i + 1] == '*') {
+                        int after = skipBlockComment(buf, i + 2);
+                        if (after < 0) {
+                            // o token "/*" ilegal vai para o parser; o resto da entrada e consumido
+                            start = i;
+                            end = i + 2;
+                            current = limit;
+                            return -1;
+                        }
+                        i = after;
+                    } else {
+                        return i;
+                    }
+                    break;
+                default:
+                    return i;
             }
-
         }
     }
 
-    private void skipLineComments() {
-
-        for (char ch = peek(); ch != '\n' && ch != 0; advance(), ch = peek())
-            if (ch == '\n')
-                line++;
+    private int skipBlockComment(byte[] buf, int from) {
+        int close = search.commentEnd(buf, from);
+        if (close < 0) {
+            // sem fim: a linha fica a do "/*", que e onde o erro aparece (o resto e todo comentario)
+            return -1;
+        }
+        line += search.countNewlines(buf, from, close);
+        return close + 2;
     }
 
-    private char peekNext () {
-        int next = current + 1;
-        if ( next  < input.length) {
-            return (char)input[next];
-        } else {
-            return 0;
+    // palavra reservada por tamanho + primeiro byte, conferindo os bytes sem criar String
+    private TokenType keyword(int from, int to) {
+        TokenType candidate = null;
+        byte first = bytes[from];
+        switch (to - from) {
+            case 2:
+                candidate = first == 'd' ? TokenType.DO : first == 'i' ? TokenType.IF : null;
+                break;
+            case 3:
+                candidate = first == 'l' ? TokenType.LET : first == 'i' ? TokenType.INT : first == 'v' ? TokenType.VAR : null;
+                break;
+            case 4:
+                switch (first) {
+                    case 'c': candidate = TokenType.CHAR; break;
+                    case 'v': candidate = TokenType.VOID; break;
+                    case 'n': candidate = TokenType.NULL; break;
+                    case 'e': candidate = TokenType.ELSE; break;
+                    case 't': candidate = bytes[from + 1] == 'r' ? TokenType.TRUE : TokenType.THIS; break;
+                    default: break;
+                }
+                break;
+            case 5:
+                switch (first) {
+                    case 'w': candidate = TokenType.WHILE; break;
+                    case 'c': candidate = TokenType.CLASS; break;
+                    case 'f': candidate = bytes[from + 1] == 'i' ? TokenType.FIELD : TokenType.FALSE; break;
+                    default: break;
+                }
+                break;
+            case 6:
+                candidate = first == 'm' ? TokenType.METHOD : first == 's' ? TokenType.STATIC : first == 'r' ? TokenType.RETURN : null;
+                break;
+            case 7:
+                candidate = first == 'b' ? TokenType.BOOLEAN : null;
+                break;
+            case 8:
+                candidate = first == 'f' ? TokenType.FUNCTION : null;
+                break;
+            case 11:
+                candidate = first == 'c' ? TokenType.CONSTRUCTOR : null;
+                break;
+            default:
+                break;
+        }
+        if (candidate == null) {
+            return IDENT;
         }
-   }
-    
+        String word = candidate.value;
+        for (int i = 1; i < word.length(); i++) {
+            if (bytes[from + i] != word.charAt(i)) {
+                return IDENT;
+            }
+        }
+        return candidate;
+    }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,20 @@
+package br.ufma.ecp;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class Sources {
+
+    private Sources() {
+    }
+
+    // mapeia o arquivo em memoria; o mapeamento continua valido depois de fechar o canal
+    public static MappedByteBuffer map(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package br.ufma.ecp;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// escopo da classe (static, field) e escopo da subrotina (argument, var)
+public class SymbolTable {
+
+    public enum Kind {
+        STATIC, FIELD, ARG, VAR
+    }
+
+    public record Symbol(String name, String type, Kind kind, int index) {
+    }
+
+    private final Map<String, Symbol> classScope = new HashMap<>();
+    private Map<String, Symbol> subroutineScope = new HashMap<>();
+    private final int[] counts = new int[Kind.values().length];
+
+    public void startSubroutine() {
+        subroutineScope = new HashMap<>();
+        counts[Kind.ARG.ordinal()] = 0;
+        counts[Kind.VAR.ordinal()] = 0;
+    }
+
+    public Symbol define(String name, String type, Kind kind) {
+        var symbol = new Symbol(name, type, kind, counts[kind.ordinal()]++);
+        if (kind == Kind.STATIC || kind == Kind.FIELD) {
+            classScope.put(name, symbol);
+        } else {
+            subroutineScope.put(name, symbol);
+        }
+        return symbol;
+    }
+
+    public Symbol resolve(String name) {
+        var symbol = subroutineScope.get(name);
+        return symbol != null ? symbol : classScope.get(name);
+    }
+
+    public int varCount(Kind kind) {
+        return counts[kind.ordinal()];
+    }
+
+    public List<Symbol> classVariables() {
+        return List.copyOf(classScope.values());
+    }
+}
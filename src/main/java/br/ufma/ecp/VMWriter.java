@@ -0,0 +1,137 @@
+package br.ufma.ecp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import br.ufma.ecp.output.OutputSink;
+import br.ufma.ecp.vm.PeepholeOptimizer;
+import br.ufma.ecp.vm.VMInstruction;
+import br.ufma.ecp.vm.VMInstruction.Op;
+
+public class VMWriter {
+
+    public enum Segment {
+        CONST("constant"), ARG("argument"), LOCAL("local"), STATIC("static"),
+        THIS("this"), THAT("that"), POINTER("pointer"), TEMP("temp");
+
+        public final String value;
+
+        Segment(String value) {
+            this.value = value;
+        }
+    }
+
+    public enum Command {
+        ADD, SUB, NEG, EQ, GT, LT, AND, OR, NOT;
+
+        public final String value = name().toLowerCase();
+    }
+
+    private final OutputSink out;
+    private PeepholeOptimizer optimizer;
+    private final List<VMInstruction> pending = new ArrayList<>();
+
+    public VMWriter(OutputSink out) {
+        this.out = out;
+    }
+
+    // com otimizador, o codigo de cada funcao passa pelas regras antes de ser escrito
+    public void setOptimizer(PeepholeOptimizer optimizer) {
+        drain();
+        this.optimizer = optimizer;
+    }
+
+    public void writePush(Segment segment, int index) {
+        emit(new VMInstruction(Op.PUSH, segment.value, index));
+    }
+
+    public void writePop(Segment segment, int index) {
+        emit(new VMInstruction(Op.POP, segment.value, index));
+    }
+
+    public void writeArithmetic(Command command) {
+        emit(VMInstruction.of(Op.valueOf(command.name())));
+    }
+
+    public void writeLabel(String label) {
+        emit(new VMInstruction(Op.LABEL, label, 0));
+    }
+
+    public void writeGoto(String label) {
+        emit(new VMInstruction(Op.GOTO, label, 0));
+    }
+
+    public void writeIf(String label) {
+        emit(new VMInstruction(Op.IF_GOTO, label, 0));
+    }
+
+    public void writeCall(String name, int nArgs) {
+        emit(new VMInstruction(Op.CALL, name, nArgs));
+    }
+
+    public void writeFunction(String name, int nLocals) {
+        drain();
+        emit(new VMInstruction(Op.FUNCTION, name, nLocals));
+    }
+
+    public void writeReturn() {
+        emit(VMInstruction.of(Op.RETURN));
+    }
+
+    public void flush() {
+        drain();
+        out.flush();
+    }
+
+    // o codigo da funcao corrente fica retido ate a proxima function (ou flush), para que o
+    // parser possa desfazer o que ja emitiu (mark/truncate/remove) ao dobrar constantes
+    public int mark() {
+        return pending.size();
+    }
+
+    public void truncate(int mark) {
+        pending.subList(mark, pending.size()).clear();
+    }
+
+    public void remove(int from, int to) {
+        pending.subList(from, to).clear();
+    }
+
+    private void emit(VMInstruction instruction) {
+        pending.add(instruction);
+    }
+
+    private void drain() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        for (var instruction : optimizer != null ? optimizer.optimize(pending) : pending) {
+            write(instruction);
+        }
+        pending.clear();
+    }
+
+    private void write(VMInstruction instruction) {
+        out.write(instruction.op().value);
+        switch (instruction.op()) {
+            case PUSH:
+            case POP:
+            case FUNCTION:
+            case CALL:
+                out.write(' ');
+                out.write(instruction.arg());
+                out.write(' ');
+                out.write(Integer.toString(instruction.index()));
+                break;
+            case LABEL:
+            case GOTO:
+            case IF_GOTO:
+                out.write(' ');
+                out.write(instruction.arg());
+                break;
+            default:
+                break;
+        }
+        out.write('\n');
+    }
+}
@@ -0,0 +1,76 @@
+package br.ufma.ecp;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+// ByteSearch com SIMD: compara SPECIES_PREFERRED.length() bytes (16, 32 ou 64) por vez.
+// Os restos menores que um vetor caem no laco escalar.
+final class VectorByteSearch implements ByteSearch {
+
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    public int lineEnd(byte[] buf, int i) {
+        for (; i + LANES <= buf.length; i += LANES) {
+            var v = ByteVector.fromArray(SPECIES, buf, i);
+            var found = v.eq((byte) '\n').or(v.eq((byte) 0));
+            if (found.anyTrue()) {
+                return i + found.firstTrue();
+            }
+        }
+        return SCALAR.lineEnd(buf, i);
+    }
+
+    public int quoteOrEnd(byte[] buf, int i) {
+        for (; i + LANES <= buf.length; i += LANES) {
+            var v = ByteVector.fromArray(SPECIES, buf, i);
+            var found = v.eq((byte) '"').or(v.eq((byte) 0));
+            if (found.anyTrue()) {
+                return i + found.firstTrue();
+            }
+        }
+        return SCALAR.quoteOrEnd(buf, i);
+    }
+
+    public int skipSpaces(byte[] buf, int i) {
+        for (; i + LANES <= buf.length; i += LANES) {
+            var v = ByteVector.fromArray(SPECIES, buf, i);
+            VectorMask<Byte> space = v.eq((byte) ' ').or(v.eq((byte) '\n')).or(v.eq((byte) '\t')).or(v.eq((byte) '\r'));
+            var other = space.not();
+            if (other.anyTrue()) {
+                return i + other.firstTrue();
+            }
+        }
+        return SCALAR.skipSpaces(buf, i);
+    }
+
+    public int commentEnd(byte[] buf, int i) {
+        while (i + LANES <= buf.length) {
+            var v = ByteVector.fromArray(SPECIES, buf, i);
+            var found = v.eq((byte) '*').or(v.eq((byte) 0));
+            if (!found.anyTrue()) {
+                i += LANES;
+                continue;
+            }
+            int at = i + found.firstTrue();
+            if (buf[at] == 0) {
+                return -1;
+            }
+            if (buf[at + 1] == '/') {
+                return at;
+            }
+            i = at + 1;
+        }
+        return SCALAR.commentEnd(buf, i);
+    }
+
+    public int countNewlines(byte[] buf, int from, int to) {
+        int n = 0;
+        int i = from;
+        for (; i + LANES <= to; i += LANES) {
+            n += ByteVector.fromArray(SPECIES, buf, i).eq((byte) '\n').trueCount();
+        }
+        return n + SCALAR.countNewlines(buf, i, to);
+    }
+}
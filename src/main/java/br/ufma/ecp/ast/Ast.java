@@ -0,0 +1,183 @@
+package br.ufma.ecp.ast;
+
+import java.util.Arrays;
+
+import br.ufma.ecp.token.Token;
+import br.ufma.ecp.token.TokenType;
+
+// arvore sintatica em arena: cada no e um indice nos arrays paralelos abaixo.
+// reset() reaproveita os arrays na proxima compilacao.
+// E uma arvore de parse concreta, nao tipada: um no por nao-terminal do XML e uma folha por token.
+// Hoje so o AstXmlPrinter a percorre; o codigo VM continua saindo direto do Parser, durante o parse.
+public class Ast {
+
+    public static final int NONE = -1;
+
+    private static final NodeKind[] KINDS = NodeKind.values();
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    private int[] kinds;
+    private int[] parents;
+    private int[] firstChildren;
+    private int[] lastChildren;
+    private int[] nextSiblings;
+    private int[] tokenTypes;
+    private int[] lines;
+    private String[] texts;
+    private int size;
+    private int open = NONE;
+
+    public Ast() {
+        this(1024);
+    }
+
+    public Ast(int capacity) {
+        capacity = Math.max(capacity, 16);
+        kinds = new int[capacity];
+        parents = new int[capacity];
+        firstChildren = new int[capacity];
+        lastChildren = new int[capacity];
+        nextSiblings = new int[capacity];
+        tokenTypes = new int[capacity];
+        lines = new int[capacity];
+        texts = new String[capacity];
+    }
+
+    public void reset() {
+        Arrays.fill(texts, 0, size, null);
+        size = 0;
+        open = NONE;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // primeiro no criado (normalmente o CLASS)
+    public int root() {
+        return size > 0 ? 0 : NONE;
+    }
+
+    public int open(NodeKind kind) {
+        int node = add(kind.ordinal(), -1, 0, null);
+        open = node;
+        return node;
+    }
+
+    public void close() {
+        open = parents[open];
+    }
+
+    // no aberto no momento
+    public int current() {
+        return open;
+    }
+
+    // ponto de volta para restore: tamanho da arena e no aberto
+    public long mark() {
+        return (long) size << 32 | (open & 0xffffffffL);
+    }
+
+    // desfaz o que foi criado depois do mark (um comando ou declaracao pela metade por um erro de
+    // sintaxe): os nos sao descartados e o no aberto volta a terminar no ultimo filho de antes
+    public void restore(long mark) {
+        int oldSize = (int) (mark >>> 32);
+        open = (int) mark;
+        Arrays.fill(texts, oldSize, size, null);
+        size = oldSize;
+        if (open == NONE) {
+            return;
+        }
+        int last = NONE;
+        for (int child = firstChildren[open]; child != NONE && child < size; child = nextSiblings[child]) {
+            last = child;
+        }
+        if (last == NONE) {
+            firstChildren[open] = NONE;
+        } else {
+            nextSiblings[last] = NONE;
+        }
+        lastChildren[open] = last;
+    }
+
+    public int leaf(Token token) {
+        return add(NodeKind.TOKEN.ordinal(), token.type.ordinal(), token.line, token.lexeme);
+    }
+
+    private int add(int kind, int tokenType, int line, String text) {
+        if (size == kinds.length) {
+            grow();
+        }
+        int node = size++;
+        kinds[node] = kind;
+        parents[node] = open;
+        firstChildren[node] = NONE;
+        lastChildren[node] = NONE;
+        nextSiblings[node] = NONE;
+        tokenTypes[node] = tokenType;
+        lines[node] = line;
+        texts[node] = text;
+        if (open != NONE) {
+            if (firstChildren[open] == NONE) {
+                firstChildren[open] = node;
+            } else {
+                nextSiblings[lastChildren[open]] = node;
+            }
+            lastChildren[open] = node;
+        }
+        return node;
+    }
+
+    private void grow() {
+        int capacity = kinds.length * 2;
+        kinds = Arrays.copyOf(kinds, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        firstChildren = Arrays.copyOf(firstChildren, capacity);
+        lastChildren = Arrays.copyOf(lastChildren, capacity);
+        nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+        tokenTypes = Arrays.copyOf(tokenTypes, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        texts = Arrays.copyOf(texts, capacity);
+    }
+
+    public NodeKind kind(int node) {
+        return KINDS[kinds[node]];
+    }
+
+    public boolean isToken(int node) {
+        return kinds[node] == NodeKind.TOKEN.ordinal();
+    }
+
+    public int parent(int node) {
+        return parents[node];
+    }
+
+    public int firstChild(int node) {
+        return firstChildren[node];
+    }
+
+    public int nextSibling(int node) {
+        return nextSiblings[node];
+    }
+
+    // so para folhas (TOKEN)
+    public TokenType tokenType(int node) {
+        return TOKEN_TYPES[tokenTypes[node]];
+    }
+
+    public String text(int node) {
+        return texts[node];
+    }
+
+    public int line(int node) {
+        return lines[node];
+    }
+
+    public int childCount(int node) {
+        int count = 0;
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            count++;
+        }
+        return count;
+    }
+}
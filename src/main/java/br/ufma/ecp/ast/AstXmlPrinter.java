@@ -0,0 +1,41 @@
+package br.ufma.ecp.ast;
+
+import br.ufma.ecp.output.OutputSink;
+import br.ufma.ecp.token.Token;
+
+// gera o mesmo XML do Parser percorrendo a arvore (o unico consumidor da Ast por enquanto)
+public class AstXmlPrinter {
+
+    private final Ast ast;
+    private final OutputSink out;
+
+    public AstXmlPrinter(Ast ast, OutputSink out) {
+        this.ast = ast;
+        this.out = out;
+    }
+
+    public void print() {
+        if (ast.root() != Ast.NONE) {
+            print(ast.root());
+        }
+        out.flush();
+    }
+
+    public void print(int node) {
+        if (ast.isToken(node)) {
+            Token.writeXml(out, ast.tokenType(node), ast.text(node));
+            out.write("\r\n");
+            return;
+        }
+        var tag = ast.kind(node).tag;
+        out.write('<');
+        out.write(tag);
+        out.write(">\r\n");
+        for (int child = ast.firstChild(node); child != Ast.NONE; child = ast.nextSibling(child)) {
+            print(child);
+        }
+        out.write("</");
+        out.write(tag);
+        out.write(">\r\n");
+    }
+}
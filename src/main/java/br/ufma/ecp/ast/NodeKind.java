@@ -0,0 +1,27 @@
+package br.ufma.ecp.ast;
+
+// nao-terminais da gramatica de Jack, com o nome do elemento no XML de saida
+public enum NodeKind {
+    CLASS("class"),
+    CLASS_VAR_DEC("classVarDec"),
+    SUBROUTINE_DEC("subroutineDec"),
+    PARAMETER_LIST("parameterList"),
+    SUBROUTINE_BODY("subroutineBody"),
+    VAR_DEC("varDec"),
+    STATEMENTS("statements"),
+    LET_STATEMENT("letStatement"),
+    IF_STATEMENT("ifStatement"),
+    WHILE_STATEMENT("whileStatement"),
+    DO_STATEMENT("doStatement"),
+    RETURN_STATEMENT("returnStatement"),
+    EXPRESSION("expression"),
+    TERM("term"),
+    EXPRESSION_LIST("expressionList"),
+    TOKEN(null);
+
+    public final String tag;
+
+    NodeKind(String tag) {
+        this.tag = tag;
+    }
+}
@@ -0,0 +1,68 @@
+package br.ufma.ecp.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// um evento por arquivo compilado; so custa algo com uma gravacao JFR ativa, por exemplo
+// java -XX:StartFlightRecording:filename=jack.jfr ... e depois jfr print --events br.ufma.ecp.Compile jack.jfr
+@Name("br.ufma.ecp.Compile")
+@Label("Jack Compile")
+@Category({ "Jack", "Compiler" })
+@Description("Compilation of one .jack file")
+public class CompileEvent extends Event {
+
+    @Label("Source")
+    public String source;
+
+    @Label("Target")
+    public String target;
+
+    @Label("Success")
+    public boolean success;
+
+    @Label("Scan Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long scanTime;
+
+    @Label("Parse Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long parseTime;
+
+    @Label("Emit Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long emitTime;
+
+    @Label("Tokens")
+    public long tokens;
+
+    @Label("AST Nodes")
+    public long astNodes;
+
+    @Label("Parse Errors")
+    public long parseErrors;
+
+    @Label("Bytes Emitted")
+    @DataAmount
+    public long bytesEmitted;
+
+    @Label("Allocated")
+    @DataAmount
+    public long allocated;
+
+    public void fill(CompileMetrics metrics) {
+        source = metrics.source();
+        scanTime = metrics.scanNanos();
+        parseTime = metrics.parseNanos();
+        emitTime = metrics.emitNanos();
+        tokens = metrics.tokenCount();
+        astNodes = metrics.nodeCount();
+        parseErrors = metrics.parseErrors();
+        bytesEmitted = metrics.bytesEmitted();
+        allocated = metrics.allocatedBytes();
+    }
+}
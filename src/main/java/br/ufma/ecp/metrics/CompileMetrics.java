@@ -0,0 +1,204 @@
+package br.ufma.ecp.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import br.ufma.ecp.ast.NodeKind;
+import br.ufma.ecp.token.TokenType;
+
+// medidas da compilacao de um arquivo (ou a soma de varios, ver add). Cada instancia e
+// preenchida por uma thread so; quem nao liga as metricas nao cria nenhuma
+public class CompileMetrics {
+
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+    private static final NodeKind[] NODE_KINDS = NodeKind.values();
+
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private final String source;
+    final long[] tokens = new long[TOKEN_TYPES.length];
+    final long[] nodes = new long[NODE_KINDS.length];
+    long scanNanos;
+    long emitNanos;
+    private long totalNanos;
+    private long parseErrors;
+    private long bytesEmitted;
+    private long allocatedBytes;
+    private long files;
+
+    public CompileMetrics(String source) {
+        this.source = source;
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        var bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean threads && threads.isThreadAllocatedMemorySupported()) {
+            threads.setThreadAllocatedMemoryEnabled(true);
+            return threads;
+        }
+        return null;
+    }
+
+    // bytes alocados pela thread atual desde que ela nasceu; -1 se a JVM nao mede
+    public static long allocatedByCurrentThread() {
+        return THREADS == null ? -1 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    public void node(NodeKind kind) {
+        nodes[kind.ordinal()]++;
+    }
+
+    // fecha a medida do arquivo: o tempo de parse e o total menos o que foi para scanner e saida
+    public void finish(long totalNanos, long parseErrors, long bytesEmitted, long allocatedBytes) {
+        this.totalNanos = totalNanos;
+        this.parseErrors = parseErrors;
+        this.bytesEmitted = bytesEmitted;
+        this.allocatedBytes = allocatedBytes;
+        this.files = 1;
+    }
+
+    public void add(CompileMetrics other) {
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] += other.tokens[i];
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] += other.nodes[i];
+        }
+        scanNanos += other.scanNanos;
+        emitNanos += other.emitNanos;
+        totalNanos += other.totalNanos;
+        parseErrors += other.parseErrors;
+        bytesEmitted += other.bytesEmitted;
+        allocatedBytes += other.allocatedBytes;
+        files += other.files;
+    }
+
+    public String source() {
+        return source;
+    }
+
+    public long scanNanos() {
+        return scanNanos;
+    }
+
+    public long emitNanos() {
+        return emitNanos;
+    }
+
+    public long parseNanos() {
+        return Math.max(0, totalNanos - scanNanos - emitNanos);
+    }
+
+    public long totalNanos() {
+        return totalNanos;
+    }
+
+    public long tokens(TokenType type) {
+        return tokens[type.ordinal()];
+    }
+
+    public long tokenCount() {
+        long n = 0;
+        for (long t : tokens) {
+            n += t;
+        }
+        return n;
+    }
+
+    public long nodes(NodeKind kind) {
+        return nodes[kind.ordinal()];
+    }
+
+    public long nodeCount() {
+        long n = 0;
+        for (long t : nodes) {
+            n += t;
+        }
+        return n;
+    }
+
+    public long parseErrors() {
+        return parseErrors;
+    }
+
+    public long bytesEmitted() {
+        return bytesEmitted;
+    }
+
+    public long allocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public String toJson() {
+        var sb = new StringBuilder();
+        appendJson(sb, "");
+        return sb.toString();
+    }
+
+    // {"files": [...], "total": {...}}
+    public static String toJson(List<CompileMetrics> files) {
+        var total = new CompileMetrics(null);
+        var sb = new StringBuilder("{\n  \"files\": [");
+        for (int i = 0; i < files.size(); i++) {
+            sb.append(i == 0 ? "\n    " : ",\n    ");
+            files.get(i).appendJson(sb, "    ");
+            total.add(files.get(i));
+        }
+        sb.append(files.isEmpty() ? "],\n  \"total\": " : "\n  ],\n  \"total\": ");
+        total.appendJson(sb, "  ");
+        return sb.append("\n}\n").toString();
+    }
+
+    private void appendJson(StringBuilder sb, String indent) {
+        var in = indent + "  ";
+        sb.append("{\n");
+        if (source != null) {
+            sb.append(in).append("\"source\": ").append(quote(source)).append(",\n");
+        } else {
+            sb.append(in).append("\"files\": ").append(files).append(",\n");
+        }
+        sb.append(in).append("\"totalNanos\": ").append(totalNanos).append(",\n");
+        sb.append(in).append("\"scanNanos\": ").append(scanNanos).append(",\n");
+        sb.append(in).append("\"parseNanos\": ").append(parseNanos()).append(",\n");
+        sb.append(in).append("\"emitNanos\": ").append(emitNanos).append(",\n");
+        sb.append(in).append("\"tokenCount\": ").append(tokenCount()).append(",\n");
+        sb.append(in).append("\"tokens\": {");
+        var first = true;
+        for (int i = 0; i < tokens.length; i++) {
+            if (tokens[i] != 0) {
+                sb.append(first ? "" : ", ").append(quote(TOKEN_TYPES[i].name())).append(": ").append(tokens[i]);
+                first = false;
+            }
+        }
+        sb.append("},\n");
+        sb.append(in).append("\"astNodeCount\": ").append(nodeCount()).append(",\n");
+        sb.append(in).append("\"astNodes\": {");
+        first = true;
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i] != 0) {
+                sb.append(first ? "" : ", ").append(quote(NODE_KINDS[i].tag)).append(": ").append(nodes[i]);
+                first = false;
+            }
+        }
+        sb.append("},\n");
+        sb.append(in).append("\"parseErrors\": ").append(parseErrors).append(",\n");
+        sb.append(in).append("\"bytesEmitted\": ").append(bytesEmitted).append(",\n");
+        sb.append(in).append("\"allocatedBytes\": ").append(allocatedBytes).append('\n');
+        sb.append(indent).append('}');
+    }
+
+    private static String quote(String s) {
+        var sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
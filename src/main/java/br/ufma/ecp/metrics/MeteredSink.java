@@ -0,0 +1,54 @@
+package br.ufma.ecp.metrics;
+
+import br.ufma.ecp.output.OutputSink;
+
+// soma o tempo gasto dentro do destino da saida (codificacao e escrita). Os writes do Parser sao
+// juntados em pedacos e so a entrega de cada pedaco e o flush sao medidos: dois nanoTime por
+// simbolo escrito custariam mais que a propria escrita
+public class MeteredSink implements OutputSink {
+
+    private static final int CHUNK = 8192;
+
+    private final OutputSink target;
+    private final CompileMetrics metrics;
+    private final StringBuilder chunk = new StringBuilder(CHUNK);
+
+    public MeteredSink(OutputSink target, CompileMetrics metrics) {
+        this.target = target;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void write(char c) {
+        chunk.append(c);
+        if (chunk.length() >= CHUNK) {
+            emit();
+        }
+    }
+
+    @Override
+    public void write(String s) {
+        chunk.append(s);
+        if (chunk.length() >= CHUNK) {
+            emit();
+        }
+    }
+
+    @Override
+    public void flush() {
+        long start = System.nanoTime();
+        if (chunk.length() > 0) {
+            target.write(chunk.toString());
+            chunk.setLength(0);
+        }
+        target.flush();
+        metrics.emitNanos += System.nanoTime() - start;
+    }
+
+    private void emit() {
+        long start = System.nanoTime();
+        target.write(chunk.toString());
+        chunk.setLength(0);
+        metrics.emitNanos += System.nanoTime() - start;
+    }
+}
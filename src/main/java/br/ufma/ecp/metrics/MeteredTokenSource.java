@@ -0,0 +1,26 @@
+package br.ufma.ecp.metrics;
+
+import br.ufma.ecp.token.Token;
+import br.ufma.ecp.token.TokenSource;
+
+// conta os tokens por tipo e soma o tempo gasto para produzi-los. Sobre um TokenPipeline
+// o tempo medido e o que o Parser fica esperando pela thread do scanner
+public class MeteredTokenSource implements TokenSource {
+
+    private final TokenSource source;
+    private final CompileMetrics metrics;
+
+    public MeteredTokenSource(TokenSource source, CompileMetrics metrics) {
+        this.source = source;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Token nextToken() {
+        long start = System.nanoTime();
+        var token = source.nextToken();
+        metrics.scanNanos += System.nanoTime() - start;
+        metrics.tokens[token.type.ordinal()]++;
+        return token;
+    }
+}
@@ -0,0 +1,13 @@
+package br.ufma.ecp.output;
+
+// destino da saida do compilador (XML, VM): em memoria ou direto num stream
+public interface OutputSink {
+
+    void write(char c);
+
+    void write(String s);
+
+    default void flush() {
+    }
+
+}
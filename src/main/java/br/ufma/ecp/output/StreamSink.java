@@ -0,0 +1,114 @@
+package br.ufma.ecp.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+// codifica em UTF-8 num buffer reutilizavel e so escreve no destino quando ele enche
+public class StreamSink implements OutputSink {
+
+    private final OutputStream stream;
+    private final WritableByteChannel channel;
+    private final byte[] buffer;
+    private final ByteBuffer channelBuffer;
+    private int count;
+    private long written;
+
+    public StreamSink(OutputStream stream) {
+        this(stream, null, 8192);
+    }
+
+    public StreamSink(WritableByteChannel channel) {
+        this(null, channel, 8192);
+    }
+
+    private StreamSink(OutputStream stream, WritableByteChannel channel, int size) {
+        this.stream = stream;
+        this.channel = channel;
+        this.buffer = new byte[size];
+        this.channelBuffer = ByteBuffer.wrap(buffer);
+    }
+
+    @Override
+    public void write(char c) {
+        if (c < 0x80) {
+            put((byte) c);
+        } else {
+            writeCodePoint(c);
+        }
+    }
+
+    @Override
+    public void write(String s) {
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                put((byte) c);
+            } else if (Character.isHighSurrogate(c) && i + 1 < n) {
+                writeCodePoint(s.codePointAt(i));
+                i++;
+            } else {
+                writeCodePoint(c);
+            }
+        }
+    }
+
+    private void writeCodePoint(int cp) {
+        if (cp < 0x800) {
+            put((byte) (0xC0 | (cp >> 6)));
+            put((byte) (0x80 | (cp & 0x3F)));
+        } else if (cp < 0x10000) {
+            put((byte) (0xE0 | (cp >> 12)));
+            put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+            put((byte) (0x80 | (cp & 0x3F)));
+        } else {
+            put((byte) (0xF0 | (cp >> 18)));
+            put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+            put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+            put((byte) (0x80 | (cp & 0x3F)));
+        }
+    }
+
+    private void put(byte b) {
+        if (count == buffer.length) {
+            drain();
+        }
+        buffer[count++] = b;
+    }
+
+    // bytes ja entregues ao destino mais os que estao no buffer
+    public long bytesWritten() {
+        return written + count;
+    }
+
+    private void drain() {
+        try {
+            if (stream != null) {
+                stream.write(buffer, 0, count);
+            } else {
+                channelBuffer.clear().limit(count);
+                while (channelBuffer.hasRemaining()) {
+                    channel.write(channelBuffer);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        written += count;
+        count = 0;
+    }
+
+    @Override
+    public void flush() {
+        drain();
+        if (stream != null) {
+            try {
+                stream.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package br.ufma.ecp.output;
+
+public class StringSink implements OutputSink {
+
+    private final StringBuilder buffer = new StringBuilder();
+
+    @Override
+    public void write(char c) {
+        buffer.append(c);
+    }
+
+    @Override
+    public void write(String s) {
+        buffer.append(s);
+    }
+
+    public int length() {
+        return buffer.length();
+    }
+
+    @Override
+    public String toString() {
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,126 @@
+package br.ufma.ecp.pipeline;
+
+import br.ufma.ecp.output.OutputSink;
+
+// terceiro estagio do pipeline: o Parser enche blocos de texto e uma thread de escrita
+// os passa para o destino (tipicamente um StreamSink sobre o arquivo de saida).
+// flush() so retorna depois que tudo o que foi escrito chegou ao destino e foi descarregado.
+public class AsyncSink implements OutputSink, AutoCloseable {
+
+    public static final int CHUNK_SIZE = 8192;
+    public static final int CHUNKS = 8;
+
+    // marcador na fila: pede target.flush() na thread de escrita
+    private static final StringBuilder FLUSH = new StringBuilder(0);
+
+    private final OutputSink target;
+    private final SpscRing<StringBuilder> filled = new SpscRing<>(CHUNKS * 2);
+    private final SpscRing<StringBuilder> free = new SpscRing<>(CHUNKS * 2);
+    private final Thread writer;
+    private volatile Throwable failure;
+    private volatile long flushed;
+    private long flushRequests;
+    private StringBuilder chunk = new StringBuilder(CHUNK_SIZE + 64);
+
+    public AsyncSink(OutputSink target) {
+        this.target = target;
+        for (int i = 0; i < CHUNKS; i++) {
+            free.offer(new StringBuilder(CHUNK_SIZE + 64));
+        }
+        writer = new Thread(this::drain, "jack-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void write(char c) {
+        chunk.append(c);
+        if (chunk.length() >= CHUNK_SIZE) {
+            submit();
+        }
+    }
+
+    @Override
+    public void write(String s) {
+        chunk.append(s);
+        if (chunk.length() >= CHUNK_SIZE) {
+            submit();
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (chunk.length() > 0) {
+            submit();
+        }
+        flushRequests++;
+        publish(FLUSH);
+        for (int idle = 0; flushed < flushRequests; idle++) {
+            checkFailure();
+            SpscRing.idle(idle);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (failure == null) {
+                flush();
+            }
+        } finally {
+            filled.close();
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void submit() {
+        publish(chunk);
+        chunk = free.take();
+        if (chunk == null) {
+            checkFailure();
+            throw new IllegalStateException("writer closed");
+        }
+    }
+
+    private void publish(StringBuilder item) {
+        checkFailure();
+        if (!filled.put(item)) {
+            checkFailure();
+            throw new IllegalStateException("writer closed");
+        }
+    }
+
+    private void checkFailure() {
+        var e = failure;
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if (e != null) {
+            throw new IllegalStateException("writer thread failed", e);
+        }
+    }
+
+    private void drain() {
+        try {
+            StringBuilder item;
+            while ((item = filled.take()) != null) {
+                if (item == FLUSH) {
+                    target.flush();
+                    flushed++;
+                } else {
+                    target.write(item.toString());
+                    item.setLength(0);
+                    free.offer(item);
+                }
+            }
+        } catch (Throwable e) {
+            failure = e;
+        } finally {
+            free.close();
+        }
+    }
+}
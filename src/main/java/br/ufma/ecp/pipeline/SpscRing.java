@@ -0,0 +1,105 @@
+package br.ufma.ecp.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// fila circular sem lock para exatamente um produtor e um consumidor.
+// head/tail so crescem; cada lado so escreve o seu indice (com release) e le o do outro.
+public final class SpscRing<T> {
+
+    private final Object[] slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private volatile boolean closed;
+
+    // o lado que le o indice do outro guarda o ultimo valor visto para nao tocar a cache line dele a toa
+    private long cachedHead;
+    private long cachedTail;
+
+    public SpscRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        slots = new Object[size];
+        mask = size - 1;
+    }
+
+    // produtor; false se a fila estiver cheia
+    public boolean offer(T item) {
+        long t = tail.get();
+        if (t - cachedHead == slots.length) {
+            cachedHead = head.get();
+            if (t - cachedHead == slots.length) {
+                return false;
+            }
+        }
+        slots[(int) t & mask] = item;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    // produtor; espera espaco, false se a fila foi fechada
+    public boolean put(T item) {
+        for (int idle = 0; !offer(item); idle++) {
+            if (closed) {
+                return false;
+            }
+            idle(idle);
+        }
+        return true;
+    }
+
+    // consumidor; null se estiver vazia
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        long h = head.get();
+        if (h == cachedTail) {
+            cachedTail = tail.get();
+            if (h == cachedTail) {
+                return null;
+            }
+        }
+        int index = (int) h & mask;
+        T item = (T) slots[index];
+        slots[index] = null;
+        head.lazySet(h + 1);
+        return item;
+    }
+
+    // consumidor; espera um item, null quando a fila foi fechada e ja esvaziou
+    public T take() {
+        for (int idle = 0; ; idle++) {
+            T item = poll();
+            if (item != null) {
+                return item;
+            }
+            if (closed) {
+                // o produtor pode ter publicado logo antes de fechar
+                return poll();
+            }
+            idle(idle);
+        }
+    }
+
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    public void close() {
+        closed = true;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    // gira um pouco, depois cede a CPU, depois dorme: nao queima um nucleo esperando o outro lado
+    static void idle(int round) {
+        if (round < 64) {
+            Thread.onSpinWait();
+        } else if (round < 128) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(20_000);
+        }
+    }
+}
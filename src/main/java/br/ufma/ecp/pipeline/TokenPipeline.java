@@ -0,0 +1,96 @@
+package br.ufma.ecp.pipeline;
+
+import java.nio.ByteBuffer;
+
+import br.ufma.ecp.Scanner;
+import br.ufma.ecp.token.NamePool;
+import br.ufma.ecp.token.Token;
+import br.ufma.ecp.token.TokenBuffer;
+import br.ufma.ecp.token.TokenSource;
+import br.ufma.ecp.token.TokenType;
+
+// Scanner em uma thread propria enchendo lotes de tokens (TokenBuffer) que o Parser consome
+// por esta TokenSource. Os lotes voltam vazios por uma segunda fila, entao o regime
+// estavel nao aloca nada alem dos Token que o Parser pede.
+public class TokenPipeline implements TokenSource, AutoCloseable {
+
+    public static final int BATCH_SIZE = 2048;
+    public static final int BATCHES = 8;
+
+    private final SpscRing<TokenBuffer> filled = new SpscRing<>(BATCHES);
+    private final SpscRing<TokenBuffer> free = new SpscRing<>(BATCHES);
+    private final Thread producer;
+    private volatile Throwable failure;
+
+    private TokenBuffer batch;
+    private int index;
+    private Token eof;
+
+    public TokenPipeline(ByteBuffer input) {
+        // mesma fatia que o Scanner le; o pool de nomes so e usado na thread do consumidor (TokenBuffer.token)
+        var source = input.slice();
+        var names = new NamePool();
+        for (int i = 0; i < BATCHES; i++) {
+            free.offer(new TokenBuffer(source, BATCH_SIZE, names));
+        }
+        // ate a copia da entrada que o Scanner faz fica fora da thread do Parser
+        producer = new Thread(() -> produce(source), "jack-scanner");
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    private void produce(ByteBuffer source) {
+        try {
+            var scanner = new Scanner(source);
+            var more = true;
+            while (more) {
+                var buffer = free.take();
+                if (buffer == null) {
+                    return; // consumidor desistiu (close)
+                }
+                buffer.clear();
+                more = scanner.fill(buffer, BATCH_SIZE);
+                if (!filled.put(buffer)) {
+                    return;
+                }
+            }
+        } catch (Throwable e) {
+            failure = e;
+        } finally {
+            filled.close();
+        }
+    }
+
+    @Override
+    public Token nextToken() {
+        if (eof != null) {
+            return eof;
+        }
+        if (batch == null || index == batch.size()) {
+            if (batch != null) {
+                free.offer(batch);
+            }
+            batch = filled.take();
+            index = 0;
+            if (batch == null) {
+                throw new IllegalStateException("scanner thread failed", failure);
+            }
+        }
+        var token = batch.token(index++);
+        if (token.type == TokenType.EOF) {
+            eof = token;
+        }
+        return token;
+    }
+
+    @Override
+    public void close() {
+        free.close();
+        filled.close();
+        try {
+            producer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package br.ufma.ecp.semantic;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import br.ufma.ecp.ClassSignature;
+import br.ufma.ecp.SymbolTable;
+
+// entrada do indice global: assinaturas das subrotinas e variaveis de classe (static e field)
+public record ClassSymbols(ClassSignature signature, Map<String, SymbolTable.Symbol> variables) {
+
+    public static ClassSymbols of(ClassSignature signature, List<SymbolTable.Symbol> variables) {
+        var byName = new HashMap<String, SymbolTable.Symbol>();
+        for (var v : variables) {
+            byName.put(v.name(), v);
+        }
+        return new ClassSymbols(signature, Map.copyOf(byName));
+    }
+
+    // classes do OS e as restauradas do cache: so as subrotinas sao conhecidas
+    public static ClassSymbols of(ClassSignature signature) {
+        return new ClassSymbols(signature, Map.of());
+    }
+
+    public String name() {
+        return signature.name();
+    }
+
+    public ClassSignature.SubroutineSignature subroutine(String name) {
+        return signature.find(name);
+    }
+
+    public SymbolTable.Symbol variable(String name) {
+        return variables.get(name);
+    }
+}
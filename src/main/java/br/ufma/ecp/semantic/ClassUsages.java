@@ -0,0 +1,68 @@
+package br.ufma.ecp.semantic;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// o que uma classe usa das outras (e de si mesma) e so pode ser conferido com o programa inteiro:
+// o Parser preenche durante o parse (ver Parser.collectUsages) e o SemanticChecker confere depois
+public class ClassUsages {
+
+    // como a subrotina foi chamada: f(), obj.f() ou Classe.f()
+    public enum Via {
+        SELF, OBJECT, CLASS
+    }
+
+    // args nao conta o objeto implicito; argumentTypes tem null onde o tipo so sai em tempo de execucao
+    public record CallSite(int line, boolean fromFunction, Via via, String className, String subroutine,
+            int args, List<String> argumentTypes) {
+
+        public String name() {
+            return className + "." + subroutine;
+        }
+    }
+
+    // tipo de classe usado numa declaracao (campo, variavel, parametro ou retorno)
+    public record TypeUse(int line, String type) {
+    }
+
+    // so os usos suspeitos: variavel que o escopo local nao conhece, ou campo/this dentro de function
+    public record VariableUse(int line, String name, boolean fromFunction) {
+    }
+
+    private String className;
+    private final List<CallSite> calls = new ArrayList<>();
+    private final List<TypeUse> types = new ArrayList<>();
+    private final List<VariableUse> variables = new ArrayList<>();
+
+    public void setClassName(String className) {
+        this.className = className;
+    }
+
+    public String className() {
+        return className;
+    }
+
+    public void call(CallSite call) {
+        calls.add(call);
+    }
+
+    public void type(int line, String type) {
+        types.add(new TypeUse(line, type));
+    }
+
+    public void variable(int line, String name, boolean fromFunction) {
+        variables.add(new VariableUse(line, name, fromFunction));
+    }
+
+    public List<CallSite> calls() {
+        return calls;
+    }
+
+    public List<TypeUse> types() {
+        return types;
+    }
+
+    public List<VariableUse> variables() {
+        return variables;
+    }
+}
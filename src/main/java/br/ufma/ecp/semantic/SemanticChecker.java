@@ -0,0 +1,110 @@
+package br.ufma.ecp.semantic;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import br.ufma.ecp.Diagnostic;
+import br.ufma.ecp.SymbolTable;
+import br.ufma.ecp.semantic.ClassUsages.CallSite;
+import br.ufma.ecp.semantic.ClassUsages.Via;
+
+// fase 2: confere os usos de uma classe contra o indice do programa inteiro.
+// so le o indice, entao varias classes podem ser conferidas ao mesmo tempo
+public class SemanticChecker {
+
+    private static final Set<String> PRIMITIVES = Set.of("int", "char", "boolean", "void");
+
+    private final SymbolIndex index;
+
+    public SemanticChecker(SymbolIndex index) {
+        this.index = index;
+    }
+
+    public List<Diagnostic> check(ClassUsages usages) {
+        var diagnostics = new ArrayList<Diagnostic>();
+        for (var use : usages.types()) {
+            if (index.lookup(use.type()) == null) {
+                diagnostics.add(new Diagnostic(use.line(), use.type(), "unknown type " + use.type()));
+            }
+        }
+        var self = index.lookup(usages.className());
+        for (var use : usages.variables()) {
+            checkVariable(use, self, diagnostics);
+        }
+        for (var call : usages.calls()) {
+            checkCall(call, diagnostics);
+        }
+        diagnostics.sort(Comparator.comparingInt(Diagnostic::line));
+        return diagnostics;
+    }
+
+    private static void checkVariable(ClassUsages.VariableUse use, ClassSymbols self, List<Diagnostic> diagnostics) {
+        if (use.name().equals("this")) {
+            if (use.fromFunction()) {
+                diagnostics.add(new Diagnostic(use.line(), "this", "this cannot be used in a function"));
+            }
+            return;
+        }
+        var symbol = self == null ? null : self.variable(use.name());
+        if (symbol == null) {
+            diagnostics.add(new Diagnostic(use.line(), use.name(), "undefined variable " + use.name()));
+        } else if (symbol.kind() == SymbolTable.Kind.FIELD && use.fromFunction()) {
+            diagnostics.add(new Diagnostic(use.line(), use.name(),
+                    "field " + use.name() + " cannot be used in a function"));
+        }
+    }
+
+    private void checkCall(CallSite call, List<Diagnostic> diagnostics) {
+        var where = call.name();
+        if (call.via() == Via.OBJECT && PRIMITIVES.contains(call.className())) {
+            diagnostics.add(new Diagnostic(call.line(), where, call.className() + " is not a class"));
+            return;
+        }
+        var target = index.lookup(call.className());
+        if (target == null) {
+            // obj.f() com tipo desconhecido ja foi reportado na declaracao da variavel
+            if (call.via() == Via.CLASS) {
+                diagnostics.add(new Diagnostic(call.line(), where, "unknown class " + call.className()));
+            }
+            return;
+        }
+        var sub = target.subroutine(call.subroutine());
+        if (sub == null) {
+            diagnostics.add(new Diagnostic(call.line(), where, "undefined subroutine " + where));
+            return;
+        }
+        var method = sub.kind().equals("method");
+        if (method && call.via() == Via.CLASS) {
+            diagnostics.add(new Diagnostic(call.line(), where, "method " + where + " called as a function"));
+        } else if (!method && call.via() != Via.CLASS) {
+            diagnostics.add(new Diagnostic(call.line(), where, sub.kind() + " " + where + " called as a method"));
+        } else if (method && call.via() == Via.SELF && call.fromFunction()) {
+            diagnostics.add(new Diagnostic(call.line(), where, "method " + where + " called from a function"));
+        }
+        var params = sub.parameterTypes();
+        if (params.size() != call.args()) {
+            diagnostics.add(new Diagnostic(call.line(), where,
+                    where + " expects " + params.size() + " argument(s) but got " + call.args()));
+            return;
+        }
+        for (int i = 0; i < params.size(); i++) {
+            var actual = call.argumentTypes().get(i);
+            if (!assignable(actual, params.get(i))) {
+                diagnostics.add(new Diagnostic(call.line(), where, "argument " + (i + 1) + " of " + where
+                        + " expects " + params.get(i) + " but got " + actual));
+            }
+        }
+    }
+
+    // Jack quase nao tem tipos: int, char e boolean se misturam, Array aceita (e vira) qualquer coisa
+    // e null serve para tudo. So objeto de uma classe no lugar de outra (ou de primitivo) e erro
+    static boolean assignable(String actual, String expected) {
+        if (actual == null || actual.equals(expected) || actual.equals("null")
+                || actual.equals("Array") || expected.equals("Array")) {
+            return true;
+        }
+        return PRIMITIVES.contains(actual) && PRIMITIVES.contains(expected);
+    }
+}
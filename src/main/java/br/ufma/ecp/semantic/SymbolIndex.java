@@ -0,0 +1,54 @@
+package br.ufma.ecp.semantic;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import br.ufma.ecp.ClassSignature;
+
+// indice global de classes do programa, preenchido em paralelo (um parse por thread) na fase 1
+// e so lido na fase 2; ja nasce com a API do Jack OS
+public class SymbolIndex {
+
+    // mesmo formato do CompileCache (ClassSignature.toString), uma classe por linha
+    static final String OS_API = """
+        Math|function void init();function int abs(int);function int multiply(int,int);function int divide(int,int);\
+        function int min(int,int);function int max(int,int);function int sqrt(int)
+        String|constructor String new(int);method void dispose();method int length();method char charAt(int);\
+        method void setCharAt(int,char);method String appendChar(char);method void eraseLastChar();\
+        method int intValue();method void setInt(int);function char backSpace();function char doubleQuote();\
+        function char newLine()
+        Array|function Array new(int);method void dispose()
+        Output|function void init();function void moveCursor(int,int);function void printChar(char);\
+        function void printString(String);function void printInt(int);function void println();\
+        function void backSpace()
+        Screen|function void init();function void clearScreen();function void setColor(boolean);\
+        function void drawPixel(int,int);function void drawLine(int,int,int,int);\
+        function void drawRectangle(int,int,int,int);function void drawCircle(int,int,int)
+        Keyboard|function void init();function char keyPressed();function char readChar();\
+        function String readLine(String);function int readInt(String)
+        Memory|function void init();function int peek(int);function void poke(int,int);function Array alloc(int);\
+        function void deAlloc(Array)
+        Sys|function void init();function void halt();function void error(int);function void wait(int)
+        """;
+
+    private final ConcurrentHashMap<String, ClassSymbols> classes = new ConcurrentHashMap<>();
+
+    public SymbolIndex() {
+        for (var line : OS_API.split("\n")) {
+            add(ClassSymbols.of(ClassSignature.parse(line)));
+        }
+    }
+
+    // uma classe do programa com o nome de uma do OS (Math.jack, por exemplo) substitui a do OS
+    public void add(ClassSymbols symbols) {
+        classes.put(symbols.name(), symbols);
+    }
+
+    // null para classe desconhecida
+    public ClassSymbols lookup(String className) {
+        return classes.get(className);
+    }
+
+    public int size() {
+        return classes.size();
+    }
+}
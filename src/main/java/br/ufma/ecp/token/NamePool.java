@@ -0,0 +1,118 @@
+package br.ufma.ecp.token;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// tabela de nomes (open addressing): o mesmo identificador sempre devolve a mesma String,
+// e a busca compara os bytes da fonte sem criar String. Nao e thread-safe.
+public class NamePool {
+
+    private String[] names;
+    private int[] hashes;
+    private int count;
+
+    public NamePool() {
+        this(256);
+    }
+
+    public NamePool(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+        names = new String[size];
+        hashes = new int[size];
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public String intern(ByteBuffer source, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + source.get(i);
+        }
+        int mask = names.length - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            String name = names[i];
+            if (name == null) {
+                byte[] bytes = new byte[to - from];
+                source.get(from, bytes);
+                name = new String(bytes, StandardCharsets.ISO_8859_1);
+                names[i] = name;
+                hashes[i] = h;
+                if (++count * 2 > names.length) {
+                    grow();
+                }
+                return name;
+            }
+            if (hashes[i] == h && sameName(name, source, from, to)) {
+                return name;
+            }
+        }
+    }
+
+    // mesma funcao de hash da versao com ByteBuffer: os dois caminhos podem dividir o pool
+    public String intern(byte[] source, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + source[i];
+        }
+        int mask = names.length - 1;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            String name = names[i];
+            if (name == null) {
+                name = new String(source, from, to - from, StandardCharsets.ISO_8859_1);
+                names[i] = name;
+                hashes[i] = h;
+                if (++count * 2 > names.length) {
+                    grow();
+                }
+                return name;
+            }
+            if (hashes[i] == h && sameName(name, source, from, to)) {
+                return name;
+            }
+        }
+    }
+
+    private static boolean sameName(String name, byte[] source, int from, int to) {
+        if (name.length() != to - from) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != source[from + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameName(String name, ByteBuffer source, int from, int to) {
+        if (name.length() != to - from) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != source.get(from + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void grow() {
+        String[] oldNames = names;
+        int[] oldHashes = hashes;
+        names = new String[oldNames.length * 2];
+        hashes = new int[oldNames.length * 2];
+        int mask = names.length - 1;
+        for (int j = 0; j < oldNames.length; j++) {
+            if (oldNames[j] != null) {
+                int i = oldHashes[j] & mask;
+                while (names[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                names[i] = oldNames[j];
+                hashes[i] = oldHashes[j];
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package br.ufma.ecp.token;
 
-import br.ufma.ecp.token.TokenType;
+import br.ufma.ecp.output.OutputSink;
+import br.ufma.ecp.output.StringSink;
 
 public class Token {
 
@@ -14,37 +15,63 @@ public class Token {
         this.line = line;
     }
 
+    // grafia fixa de palavras reservadas e simbolos; para os demais, o proprio lexema
     public String value () {
-        return type.value;
+        return type.value != null ? type.value : lexeme;
     }
 
-    public String toString() {
-        String categoria = type.toString().toLowerCase();
-        String valor = lexeme;
-        if (TokenType.isSymbol(lexeme)) {
-            categoria = "symbol";
-            if (valor.equals(">")) {
-                valor = "&gt;" ;
-            } else if (valor.equals("<")) {
-                valor = "&lt;" ;
-            } else if (valor.equals("\"")) {
-                valor = "&quot;" ;
-            } else if (valor.equals("&")) {
-                valor = "&amp;" ;
-            }
+    // escreve o elemento XML do token direto no destino, sem montar Strings intermediarias
+    public void writeXml(OutputSink out) {
+        writeXml(out, type, lexeme);
+    }
 
-        } else if (categoria.equals("number")) {
+    public static void writeXml(OutputSink out, TokenType type, String lexeme) {
+        boolean symbol = TokenType.isSymbol(lexeme);
+        String categoria;
+        if (symbol) {
+            categoria = "symbol";
+        } else if (type == TokenType.NUMBER) {
             categoria = "integerConstant";
-        } else if (categoria.equals("ident")) {
+        } else if (type == TokenType.IDENT) {
             categoria = "identifier";
-        } else if (categoria.equals("string")) {
+        } else if (type == TokenType.STRING) {
             categoria = "stringConstant";
         } else {
-          categoria = "keyword";
+            categoria = "keyword";
         }
-        return "<" + categoria + "> " + valor  + " </" + categoria + ">";
-  
 
+        out.write('<');
+        out.write(categoria);
+        out.write("> ");
+        if (symbol && lexeme.length() == 1) {
+            switch (lexeme.charAt(0)) {
+                case '>':
+                    out.write("&gt;");
+                    break;
+                case '<':
+                    out.write("&lt;");
+                    break;
+                case '"':
+                    out.write("&quot;");
+                    break;
+                case '&':
+                    out.write("&amp;");
+                    break;
+                default:
+                    out.write(lexeme);
+            }
+        } else {
+            out.write(lexeme);
+        }
+        out.write(" </");
+        out.write(categoria);
+        out.write('>');
+    }
+
+    public String toString() {
+        var out = new StringSink();
+        writeXml(out);
+        return out.toString();
     }
     
-}
\ No newline at end of file
+}
@@ -0,0 +1,121 @@
+package br.ufma.ecp.token;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// tokens em colunas de int: tipo, inicio e fim na fonte e linha.
+// O lexema so vira String quando alguem pede (lexeme/token).
+public class TokenBuffer {
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final ByteBuffer source;
+    private final NamePool names;
+    private byte[] types;
+    private int[] starts;
+    private int[] ends;
+    private int[] lines;
+    private int size;
+
+    public TokenBuffer(ByteBuffer source) {
+        this(source, 256, new NamePool());
+    }
+
+    public TokenBuffer(ByteBuffer source, int capacity, NamePool names) {
+        this.source = source;
+        this.names = names;
+        capacity = Math.max(capacity, 16);
+        types = new byte[capacity];
+        starts = new int[capacity];
+        ends = new int[capacity];
+        lines = new int[capacity];
+    }
+
+    public void add(TokenType type, int start, int end, int line) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+        }
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        ends[size] = end;
+        lines[size] = line;
+        size++;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public ByteBuffer source() {
+        return source;
+    }
+
+    public TokenType type(int i) {
+        return TYPES[types[i]];
+    }
+
+    public int typeOrdinal(int i) {
+        return types[i];
+    }
+
+    public int start(int i) {
+        return starts[i];
+    }
+
+    public int end(int i) {
+        return ends[i];
+    }
+
+    public int line(int i) {
+        return lines[i];
+    }
+
+    public String lexeme(int i) {
+        TokenType type = type(i);
+        if (type.value != null) {
+            return type.value;
+        }
+        if (type == TokenType.IDENT) {
+            return names.intern(source, starts[i], ends[i]);
+        }
+        int from = starts[i], to = ends[i];
+        if (source.hasArray()) {
+            return new String(source.array(), source.arrayOffset() + from, to - from, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[to - from];
+        source.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public Token token(int i) {
+        return new Token(type(i), lexeme(i), lines[i]);
+    }
+
+    // percorre o buffer a partir de from; depois do ultimo token repete o EOF
+    public TokenSource reader(int from) {
+        return new TokenSource() {
+            private int next = from;
+
+            @Override
+            public Token nextToken() {
+                if (next >= size) {
+                    return new Token(TokenType.EOF, TokenType.EOF.value, size > 0 ? lines[size - 1] : 1);
+                }
+                return token(next++);
+            }
+        };
+    }
+
+    public TokenSource reader() {
+        return reader(0);
+    }
+}
@@ -0,0 +1,7 @@
+package br.ufma.ecp.token;
+
+public interface TokenSource {
+
+    Token nextToken();
+
+}
@@ -5,40 +5,40 @@ import java.util.List;
 import java.util.Map;
 
 public enum TokenType {
-    PLUS,MINUS,
+    PLUS("+"),MINUS("-"),
 
      // Literals.
      NUMBER,
      STRING,
 
 
-     IDENT, EQ, SEMICOLON,
+     IDENT, EQ("="), SEMICOLON(";"),
 
 
      PRINT,
 
 
     // keywords
-    WHILE, CLASS,CONSTRUCTOR,FUNCTION,
-    METHOD,FIELD,STATIC,VAR,INT,
-    CHAR,BOOLEAN,VOID,TRUE,FALSE,
-    NULL,THIS,LET,DO,IF,ELSE, RETURN,
+    WHILE("while"), CLASS("class"),CONSTRUCTOR("constructor"),FUNCTION("function"),
+    METHOD("method"),FIELD("field"),STATIC("static"),VAR("var"),INT("int"),
+    CHAR("char"),BOOLEAN("boolean"),VOID("void"),TRUE("true"),FALSE("false"),
+    NULL("null"),THIS("this"),LET("let"),DO("do"),IF("if"),ELSE("else"), RETURN("return"),
 
 
      //simbolos
-      LPAREN,RPAREN,
-         LBRACE, RBRACE,
-         LBRACKET,RBRACKET,
+      LPAREN("("),RPAREN(")"),
+         LBRACE("{"), RBRACE("}"),
+         LBRACKET("["),RBRACKET("]"),
 
-     COMMA, DOT,
+     COMMA(","), DOT("."),
 
-     ASTERISK, SLASH,
+     ASTERISK("*"), SLASH("/"),
 
-     AND, OR, NOT,
+     AND("&"), OR("|"), NOT("~"),
 
-     LT, GT, ILLEGAL,
+     LT("<"), GT(">"), ILLEGAL,
      
-     EOF;
+     EOF("EOF");
 
  
      // keywords
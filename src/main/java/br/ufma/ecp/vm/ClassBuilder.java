@@ -0,0 +1,157 @@
+package br.ufma.ecp.vm;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// escreve o minimo de um .class (versao 49, sem StackMapTable): constant pool, metodos
+// estaticos com atributo Code e nada mais. Usado pelo JvmBackend.
+final class ClassBuilder {
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    // bytes com escrita big-endian, como o formato pede
+    static final class ByteVector {
+        private byte[] data = new byte[256];
+        private int length;
+
+        ByteVector u1(int value) {
+            ensure(1);
+            data[length++] = (byte) value;
+            return this;
+        }
+
+        ByteVector u2(int value) {
+            ensure(2);
+            data[length++] = (byte) (value >>> 8);
+            data[length++] = (byte) value;
+            return this;
+        }
+
+        ByteVector u4(int value) {
+            return u2(value >>> 16).u2(value);
+        }
+
+        ByteVector bytes(byte[] bytes, int from, int count) {
+            ensure(count);
+            System.arraycopy(bytes, from, data, length, count);
+            length += count;
+            return this;
+        }
+
+        ByteVector bytes(ByteVector other) {
+            return bytes(other.data, 0, other.length);
+        }
+
+        // sobrescreve um u2 ja escrito (deslocamento de desvio resolvido depois)
+        void patch(int at, int value) {
+            data[at] = (byte) (value >>> 8);
+            data[at + 1] = (byte) value;
+        }
+
+        int length() {
+            return length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(data, length);
+        }
+
+        private void ensure(int n) {
+            if (length + n > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + n));
+            }
+        }
+    }
+
+    private final ByteVector pool = new ByteVector();
+    private final Map<String, Integer> constants = new HashMap<>();
+    private int poolCount = 1;
+    private final ByteVector methods = new ByteVector();
+    private int methodCount;
+    private final int thisClass;
+    private final int superClass;
+
+    ClassBuilder(String internalName) {
+        thisClass = classRef(internalName);
+        superClass = classRef("java/lang/Object");
+    }
+
+    int utf8(String value) {
+        var key = "U" + value;
+        var index = constants.get(key);
+        if (index == null) {
+            // nomes do Jack sao ASCII, onde UTF-8 e "modified UTF-8" coincidem
+            var bytes = value.getBytes(StandardCharsets.UTF_8);
+            pool.u1(1).u2(bytes.length).bytes(bytes, 0, bytes.length);
+            index = add(key);
+        }
+        return index;
+    }
+
+    int classRef(String internalName) {
+        var key = "C" + internalName;
+        var index = constants.get(key);
+        if (index == null) {
+            int name = utf8(internalName);
+            pool.u1(7).u2(name);
+            index = add(key);
+        }
+        return index;
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        var key = "M" + owner + "." + name + descriptor;
+        var index = constants.get(key);
+        if (index == null) {
+            int ownerIndex = classRef(owner);
+            int nameAndType = nameAndType(name, descriptor);
+            pool.u1(10).u2(ownerIndex).u2(nameAndType);
+            index = add(key);
+        }
+        return index;
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        var key = "N" + name + ":" + descriptor;
+        var index = constants.get(key);
+        if (index == null) {
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            pool.u1(12).u2(nameIndex).u2(descriptorIndex);
+            index = add(key);
+        }
+        return index;
+    }
+
+    private int add(String key) {
+        constants.put(key, poolCount);
+        return poolCount++;
+    }
+
+    void addMethod(int access, String name, String descriptor, int maxStack, int maxLocals, ByteVector code) {
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int codeAttribute = utf8("Code");
+        methods.u2(access).u2(nameIndex).u2(descriptorIndex).u2(1);
+        methods.u2(codeAttribute).u4(12 + code.length());
+        methods.u2(maxStack).u2(maxLocals).u4(code.length()).bytes(code);
+        methods.u2(0).u2(0); // sem tabela de excecoes nem atributos
+        methodCount++;
+    }
+
+    byte[] toByteArray() {
+        var out = new ByteVector();
+        out.u4(0xCAFEBABE).u2(0).u2(49);
+        out.u2(poolCount).bytes(pool);
+        out.u2(ACC_PUBLIC | ACC_FINAL | ACC_SUPER).u2(thisClass).u2(superClass);
+        out.u2(0).u2(0); // interfaces, campos
+        out.u2(methodCount).bytes(methods);
+        out.u2(0);
+        return out.toByteArray();
+    }
+}
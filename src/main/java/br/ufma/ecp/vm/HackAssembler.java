@@ -0,0 +1,137 @@
+package br.ufma.ecp.vm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// assembler do Hack em duas passadas: labels primeiro, depois as instrucoes; variaveis
+// (como os static Classe.i do HackBackend) ganham enderecos a partir de RAM[16]
+public class HackAssembler {
+
+    private static final Map<String, Integer> PREDEFINED = new HashMap<>();
+    private static final Map<String, Integer> COMP = new HashMap<>();
+
+    static {
+        PREDEFINED.put("SP", 0);
+        PREDEFINED.put("LCL", 1);
+        PREDEFINED.put("ARG", 2);
+        PREDEFINED.put("THIS", 3);
+        PREDEFINED.put("THAT", 4);
+        for (int i = 0; i < 16; i++) {
+            PREDEFINED.put("R" + i, i);
+        }
+        PREDEFINED.put("SCREEN", 16384);
+        PREDEFINED.put("KBD", 24576);
+
+        // bits zx nx zy ny f no; com M no lugar de A o bit a liga
+        String[][] table = {
+            { "0", "101010" }, { "1", "111111" }, { "-1", "111010" }, { "D", "001100" },
+            { "A", "110000" }, { "!D", "001101" }, { "!A", "110001" }, { "-D", "001111" },
+            { "-A", "110011" }, { "D+1", "011111" }, { "A+1", "110111" }, { "D-1", "001110" },
+            { "A-1", "110010" }, { "D+A", "000010" }, { "A+D", "000010" }, { "D-A", "010011" },
+            { "A-D", "000111" }, { "D&A", "000000" }, { "A&D", "000000" }, { "D|A", "010101" },
+            { "A|D", "010101" },
+        };
+        for (var entry : table) {
+            int bits = Integer.parseInt(entry[1], 2);
+            COMP.put(entry[0], bits);
+            if (entry[0].contains("A")) {
+                COMP.put(entry[0].replace('A', 'M'), bits | 0b1000000);
+            }
+        }
+    }
+
+    private static final String[] JUMPS = { "", "JGT", "JEQ", "JGE", "JLT", "JNE", "JLE", "JMP" };
+
+    public static short[] assemble(String asm) {
+        var lines = new ArrayList<String>();
+        var symbols = new HashMap<>(PREDEFINED);
+        for (var raw : asm.split("\n")) {
+            var line = strip(raw);
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.startsWith("(")) {
+                if (!line.endsWith(")")) {
+                    throw new IllegalArgumentException("bad label " + raw);
+                }
+                var name = line.substring(1, line.length() - 1);
+                if (symbols.put(name, lines.size()) != null) {
+                    throw new IllegalArgumentException("duplicate label " + name);
+                }
+            } else {
+                lines.add(line);
+            }
+        }
+        if (lines.size() > 32768) {
+            throw new IllegalArgumentException("program too large for the ROM: " + lines.size());
+        }
+        var rom = new short[lines.size()];
+        int variable = 16;
+        for (int pc = 0; pc < rom.length; pc++) {
+            var line = lines.get(pc);
+            if (line.startsWith("@")) {
+                var value = line.substring(1);
+                int address;
+                if (Character.isDigit(value.charAt(0))) {
+                    address = Integer.parseInt(value);
+                    if (address > 32767) {
+                        throw new IllegalArgumentException("constant out of range: " + line);
+                    }
+                } else {
+                    var known = symbols.get(value);
+                    if (known == null) {
+                        known = variable++;
+                        symbols.put(value, known);
+                    }
+                    address = known;
+                }
+                rom[pc] = (short) address;
+            } else {
+                rom[pc] = (short) compute(line);
+            }
+        }
+        return rom;
+    }
+
+    // dest=comp;jump
+    private static int compute(String line) {
+        int eq = line.indexOf('=');
+        int semi = line.indexOf(';');
+        var dest = eq >= 0 ? line.substring(0, eq) : "";
+        var comp = line.substring(eq + 1, semi >= 0 ? semi : line.length());
+        var jump = semi >= 0 ? line.substring(semi + 1) : "";
+        var bits = COMP.get(comp);
+        if (bits == null) {
+            throw new IllegalArgumentException("bad computation " + line);
+        }
+        int d = 0;
+        for (char c : dest.toCharArray()) {
+            d |= c == 'A' ? 4 : c == 'D' ? 2 : c == 'M' ? 1 : -1;
+        }
+        int j = List.of(JUMPS).indexOf(jump);
+        if (d < 0 || j < 0) {
+            throw new IllegalArgumentException("bad instruction " + line);
+        }
+        return 0b111 << 13 | bits << 6 | d << 3 | j;
+    }
+
+    private static String strip(String line) {
+        int comment = line.indexOf("//");
+        if (comment >= 0) {
+            line = line.substring(0, comment);
+        }
+        return line.replace(" ", "").replace("\t", "").trim();
+    }
+
+    // formato .hack: uma instrucao de 16 bits por linha
+    public static String toHack(short[] rom) {
+        var sb = new StringBuilder(rom.length * 17);
+        for (short word : rom) {
+            var bits = Integer.toBinaryString(word & 0xFFFF);
+            sb.append("0".repeat(16 - bits.length())).append(bits).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,416 @@
+package br.ufma.ecp.vm;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// traduz codigo VM direto para assembly do Hack (ver HackAssembler para o binario).
+// Diferente do VMTranslator do curso, o topo da pilha fica em D sempre que possivel: "cached"
+// diz, em tempo de traducao, se o valor do topo esta em D (e ainda nao na RAM). Assim push x; pop y
+// vira D=x; y=D, e push x; add vira D=D+x, sem passar pelo SP. Labels, goto e call exigem o topo
+// na RAM (a pilha do compilador esta vazia nesses pontos, entao quase nunca custa nada).
+// call e return pulam para trampolins compartilhados (VM$CALL, VM$RETURN); o valor de retorno
+// volta em D. O programa precisa estar completo: o OS entra como os .vm do nand2tetris.
+public class HackBackend {
+
+    // R13-R15 sao de trabalho: nArgs e destino no call, frame e retorno no return
+    private static final String CALL = "VM$CALL", RETURN = "VM$RETURN", HALT = "VM$HALT";
+
+    // indices ate aqui sao alcancados com A=M+1; A=A+1... sem usar D
+    private static final int MAX_WALK = 3;
+
+    private final List<VMInstruction> program = new ArrayList<>();
+    private StringBuilder out;
+    private boolean cached;
+    private String function;
+    private int labels;
+
+    public HackBackend load(String vmCode) {
+        return load(VMInstruction.parseAll(vmCode));
+    }
+
+    public HackBackend load(List<VMInstruction> instructions) {
+        program.addAll(instructions);
+        return this;
+    }
+
+    // bootstrap (SP = 256; chama Sys.init, ou Main.main, cujo retorno fica em RAM[256]), funcoes e trampolins
+    public String translate() {
+        var functions = new HashSet<String>();
+        for (var instruction : program) {
+            if (instruction.op() == VMInstruction.Op.FUNCTION) {
+                functions.add(instruction.arg());
+            }
+        }
+        var entry = functions.contains("Sys.init") ? "Sys.init" : "Main.main";
+        if (!functions.contains(entry)) {
+            throw new IllegalArgumentException("undefined function " + entry);
+        }
+        checkCalls(functions);
+
+        out = new StringBuilder();
+        function = "";
+        cached = false;
+        labels = 0;
+        emit("@256", "D=A", "@SP", "M=D");
+        call(entry, 0);
+        spill();
+        label(HALT);
+        emit("@" + HALT, "0;JMP");
+
+        for (int i = 0; i < program.size(); i++) {
+            i += translate(i);
+        }
+        trampolines();
+        return out.toString();
+    }
+
+    private void checkCalls(Set<String> functions) {
+        for (var instruction : program) {
+            if (instruction.op() == VMInstruction.Op.CALL && !functions.contains(instruction.arg())) {
+                throw new IllegalArgumentException("undefined function " + instruction.arg()
+                        + " (o OS precisa ser carregado como codigo VM)");
+            }
+        }
+    }
+
+    private void emit(String... instructions) {
+        for (var instruction : instructions) {
+            out.append(instruction).append('\n');
+        }
+    }
+
+    private void label(String name) {
+        out.append('(').append(name).append(")\n");
+    }
+
+    private VMInstruction next(int i) {
+        return i + 1 < program.size() ? program.get(i + 1) : null;
+    }
+
+    private static boolean is(VMInstruction instruction, VMInstruction.Op op) {
+        return instruction != null && instruction.op() == op;
+    }
+
+    // topo de D para a RAM
+    private void spill() {
+        if (cached) {
+            emit("@SP", "AM=M+1", "A=A-1", "M=D");
+            cached = false;
+        }
+    }
+
+    // topo da RAM para D
+    private void fill() {
+        if (!cached) {
+            emit("@SP", "AM=M-1", "D=M");
+            cached = true;
+        }
+    }
+
+    // traduz program[i]; devolve quantas instrucoes seguintes foram consumidas junto
+    private int translate(int i) {
+        var instruction = program.get(i);
+        var next = next(i);
+        switch (instruction.op()) {
+            case PUSH:
+                if (next != null && binary(next.op()) && fusable(instruction)) {
+                    // x op y com y constante ou na memoria: x em D, y em A ou M
+                    fill();
+                    operand(instruction, next.op());
+                    return comparison(next.op()) ? 1 + compare(next.op(), i + 1) : 1;
+                }
+                push(instruction.arg(), instruction.index());
+                return 0;
+            case POP:
+                pop(instruction.arg(), instruction.index());
+                return 0;
+            case ADD:
+            case SUB:
+            case AND:
+            case OR:
+                fill();
+                // y em D, x em M
+                var op = instruction.op() == VMInstruction.Op.SUB ? "D=M-D" : arithmetic(instruction.op(), "M");
+                emit("@SP", "AM=M-1", op);
+                return 0;
+            case EQ:
+            case GT:
+            case LT:
+                fill();
+                emit("@SP", "AM=M-1", "D=M-D");
+                return compare(instruction.op(), i);
+            case NEG:
+            case NOT:
+                if (instruction.op() == VMInstruction.Op.NOT && is(next, VMInstruction.Op.IF_GOTO)) {
+                    // !x != 0 exatamente quando x != -1 (x nao precisa ser booleano)
+                    fill();
+                    emit("D=D+1", "@" + function + "$" + next.arg(), "D;JNE");
+                    cached = false;
+                    return 1;
+                }
+                var c = instruction.op() == VMInstruction.Op.NEG ? "-" : "!";
+                if (cached) {
+                    emit("D=" + c + "D");
+                } else {
+                    emit("@SP", "A=M-1", "M=" + c + "M");
+                }
+                return 0;
+            case LABEL:
+                spill();
+                label(function + "$" + instruction.arg());
+                return 0;
+            case GOTO:
+                spill();
+                emit("@" + function + "$" + instruction.arg(), "0;JMP");
+                return 0;
+            case IF_GOTO:
+                fill();
+                emit("@" + function + "$" + instruction.arg(), "D;JNE");
+                cached = false;
+                return 0;
+            case FUNCTION:
+                function = instruction.arg();
+                cached = false;
+                label(function);
+                locals(instruction.index());
+                return 0;
+            case CALL:
+                spill();
+                call(instruction.arg(), instruction.index());
+                return 0;
+            default:
+                fill();
+                emit("@" + RETURN, "0;JMP");
+                cached = false;
+                return 0;
+        }
+    }
+
+    private static boolean binary(VMInstruction.Op op) {
+        switch (op) {
+            case ADD:
+            case SUB:
+            case AND:
+            case OR:
+            case EQ:
+            case GT:
+            case LT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean comparison(VMInstruction.Op op) {
+        return op == VMInstruction.Op.EQ || op == VMInstruction.Op.GT || op == VMInstruction.Op.LT;
+    }
+
+    private boolean fusable(VMInstruction push) {
+        return push.arg().equals("constant") || direct(push.arg(), push.index()) != null
+                || base(push.arg()) != null && push.index() <= MAX_WALK;
+    }
+
+    // D = D op y, com y vindo de push; comparacoes deixam D = x - y para compare
+    private void operand(VMInstruction push, VMInstruction.Op op) {
+        if (push.arg().equals("constant")) {
+            int value = constant(push.index());
+            if (value == 1 && (op == VMInstruction.Op.ADD || op == VMInstruction.Op.SUB)) {
+                emit(op == VMInstruction.Op.ADD ? "D=D+1" : "D=D-1");
+            } else if (value == 0 && op != VMInstruction.Op.AND) {
+                // x + 0, x - 0, x | 0: D ja e o resultado
+            } else {
+                emit("@" + value, arithmetic(op, "A"));
+            }
+        } else {
+            address(push.arg(), push.index());
+            emit(arithmetic(op, "M"));
+        }
+    }
+
+    // D = D op y com y em A ou M; sub e comparacoes viram D - y
+    private static String arithmetic(VMInstruction.Op op, String y) {
+        switch (op) {
+            case ADD:
+                return "D=D+" + y;
+            case AND:
+                return "D=D&" + y;
+            case OR:
+                return "D=D|" + y;
+            default:
+                return "D=D-" + y;
+        }
+    }
+
+    // D = x - y; desvia direto quando o proximo comando e if-goto (ou not; if-goto). Como no
+    // VMTranslator, x - y pode estourar 16 bits para operandos de sinais opostos e muito grandes
+    private int compare(VMInstruction.Op op, int i) {
+        var jump = op == VMInstruction.Op.EQ ? "JEQ" : op == VMInstruction.Op.GT ? "JGT" : "JLT";
+        var next = next(i);
+        if (is(next, VMInstruction.Op.IF_GOTO)) {
+            emit("@" + function + "$" + next.arg(), "D;" + jump);
+            cached = false;
+            return 1;
+        }
+        if (is(next, VMInstruction.Op.NOT) && is(next(i + 1), VMInstruction.Op.IF_GOTO)) {
+            var negated = op == VMInstruction.Op.EQ ? "JNE" : op == VMInstruction.Op.GT ? "JLE" : "JGE";
+            emit("@" + function + "$" + next(i + 1).arg(), "D;" + negated);
+            cached = false;
+            return 2;
+        }
+        var done = function + "$cmp." + labels++;
+        emit("@" + done + ".t", "D;" + jump, "D=0", "@" + done, "0;JMP");
+        label(done + ".t");
+        emit("D=-1");
+        label(done);
+        cached = true;
+        return 0;
+    }
+
+    private static int constant(int value) {
+        if (value < 0 || value > 32767) {
+            throw new IllegalArgumentException("constant out of range: " + value);
+        }
+        return value;
+    }
+
+    private void push(String segment, int index) {
+        spill();
+        if (segment.equals("constant")) {
+            int value = constant(index);
+            if (value <= 1) {
+                emit("D=" + value);
+            } else {
+                emit("@" + value, "D=A");
+            }
+        } else {
+            address(segment, index);
+            emit("D=M");
+        }
+        cached = true;
+    }
+
+    private void pop(String segment, int index) {
+        if (segment.equals("constant")) {
+            throw new IllegalArgumentException("cannot pop to constant in " + function);
+        }
+        var base = base(segment);
+        if (base != null && index > MAX_WALK) {
+            // endereco calculado em D: o valor espera em R13
+            fill();
+            emit("@R13", "M=D", "@" + index, "D=A", "@" + base, "D=D+M", "@R14", "M=D",
+                    "@R13", "D=M", "@R14", "A=M", "M=D");
+        } else {
+            fill();
+            address(segment, index);
+            emit("M=D");
+        }
+        cached = false;
+    }
+
+    // A = endereco de segment[index]; so usa D para indices grandes de local/argument/this/that
+    private void address(String segment, int index) {
+        var direct = direct(segment, index);
+        if (direct != null) {
+            emit("@" + direct);
+            return;
+        }
+        var base = base(segment);
+        if (base == null) {
+            throw new IllegalArgumentException("unknown segment " + segment);
+        }
+        if (index > MAX_WALK) {
+            emit("@" + index, "D=A", "@" + base, "A=D+M");
+            return;
+        }
+        emit("@" + base, index == 0 ? "A=M" : "A=M+1");
+        for (int k = 1; k < index; k++) {
+            emit("A=A+1");
+        }
+    }
+
+    private String direct(String segment, int index) {
+        switch (segment) {
+            case "static":
+                return VMInterpreter.className(function) + "." + index;
+            case "temp":
+                if (index > 7) {
+                    throw new IllegalArgumentException("temp " + index + " out of range");
+                }
+                return "R" + (VMInterpreter.TEMP + index);
+            case "pointer":
+                if (index > 1) {
+                    throw new IllegalArgumentException("pointer " + index + " out of range");
+                }
+                return index == 0 ? "THIS" : "THAT";
+            default:
+                return null;
+        }
+    }
+
+    private static String base(String segment) {
+        switch (segment) {
+            case "local":
+                return "LCL";
+            case "argument":
+                return "ARG";
+            case "this":
+                return "THIS";
+            case "that":
+                return "THAT";
+            default:
+                return null;
+        }
+    }
+
+    // zera os locais e avanca o SP uma vez so
+    private void locals(int count) {
+        if (count == 0) {
+            return;
+        }
+        if (count == 1) {
+            emit("@SP", "AM=M+1", "A=A-1", "M=0");
+            return;
+        }
+        emit("@SP", "A=M", "M=0");
+        for (int k = 1; k < count; k++) {
+            emit("A=A+1", "M=0");
+        }
+        emit("D=A+1", "@SP", "M=D");
+    }
+
+    // R13 = nArgs, R14 = destino, D = retorno; a volta chega com o valor de retorno em D
+    private void call(String target, int args) {
+        if (args <= 1) {
+            emit("@R13", "M=" + args);
+        } else {
+            emit("@" + args, "D=A", "@R13", "M=D");
+        }
+        var ret = function + "$ret." + labels++;
+        emit("@" + target, "D=A", "@R14", "M=D", "@" + ret, "D=A", "@" + CALL, "0;JMP");
+        label(ret);
+        cached = true;
+    }
+
+    private void trampolines() {
+        // empilha retorno, LCL, ARG, THIS, THAT; ARG = SP - 5 - nArgs; LCL = SP
+        label(CALL);
+        emit("@SP", "AM=M+1", "A=A-1", "M=D");
+        for (var saved : new String[] { "LCL", "ARG", "THIS", "THAT" }) {
+            emit("@" + saved, "D=M", "@SP", "AM=M+1", "A=A-1", "M=D");
+        }
+        emit("@SP", "D=M", "@LCL", "M=D", "@R13", "D=D-M", "@5", "D=D-A", "@ARG", "M=D",
+                "@R14", "A=M", "0;JMP");
+
+        // D = valor; o retorno sai do quadro antes de ARG[0] ser sobrescrito (sem argumentos
+        // ARG[0] e o proprio endereco de retorno), e o valor volta em D com SP = ARG
+        label(RETURN);
+        emit("@R15", "M=D", "@LCL", "D=M", "@R13", "M=D", "@5", "A=D-A", "D=M", "@R14", "M=D",
+                "@ARG", "D=M", "@SP", "M=D");
+        for (var saved : new String[] { "THAT", "THIS", "ARG", "LCL" }) {
+            emit("@R13", "AM=M-1", "D=M", "@" + saved, "M=D");
+        }
+        emit("@R15", "D=M", "@R14", "A=M", "0;JMP");
+    }
+}
@@ -0,0 +1,309 @@
+package br.ufma.ecp.vm;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// versao em Java do sistema operacional do Jack, para o VMInterpreter.
+// Output vai para um buffer (output()), Screen nao desenha nada e Keyboard le de uma fila
+// de teclas (pressKeys); os codigos de erro sao os mesmos do OS original (Sys.error).
+public class JackOS {
+
+    public enum Builtin {
+        MATH_INIT("Math.init"), MATH_ABS("Math.abs"), MATH_MULTIPLY("Math.multiply"),
+        MATH_DIVIDE("Math.divide"), MATH_MIN("Math.min"), MATH_MAX("Math.max"), MATH_SQRT("Math.sqrt"),
+        MEMORY_INIT("Memory.init"), MEMORY_PEEK("Memory.peek"), MEMORY_POKE("Memory.poke"),
+        MEMORY_ALLOC("Memory.alloc"), MEMORY_DEALLOC("Memory.deAlloc"),
+        ARRAY_NEW("Array.new"), ARRAY_DISPOSE("Array.dispose"),
+        STRING_NEW("String.new"), STRING_DISPOSE("String.dispose"), STRING_LENGTH("String.length"),
+        STRING_CHAR_AT("String.charAt"), STRING_SET_CHAR_AT("String.setCharAt"),
+        STRING_APPEND_CHAR("String.appendChar"), STRING_ERASE_LAST_CHAR("String.eraseLastChar"),
+        STRING_INT_VALUE("String.intValue"), STRING_SET_INT("String.setInt"),
+        STRING_BACKSPACE("String.backSpace"), STRING_DOUBLE_QUOTE("String.doubleQuote"),
+        STRING_NEWLINE("String.newLine"),
+        OUTPUT_INIT("Output.init"), OUTPUT_MOVE_CURSOR("Output.moveCursor"), OUTPUT_PRINT_CHAR("Output.printChar"),
+        OUTPUT_PRINT_STRING("Output.printString"), OUTPUT_PRINT_INT("Output.printInt"),
+        OUTPUT_PRINTLN("Output.println"), OUTPUT_BACKSPACE("Output.backSpace"),
+        SCREEN_INIT("Screen.init"), SCREEN_CLEAR("Screen.clearScreen"), SCREEN_SET_COLOR("Screen.setColor"),
+        SCREEN_DRAW_PIXEL("Screen.drawPixel"), SCREEN_DRAW_LINE("Screen.drawLine"),
+        SCREEN_DRAW_RECTANGLE("Screen.drawRectangle"), SCREEN_DRAW_CIRCLE("Screen.drawCircle"),
+        KEYBOARD_INIT("Keyboard.init"), KEYBOARD_KEY_PRESSED("Keyboard.keyPressed"),
+        KEYBOARD_READ_CHAR("Keyboard.readChar"), KEYBOARD_READ_LINE("Keyboard.readLine"),
+        KEYBOARD_READ_INT("Keyboard.readInt"),
+        SYS_INIT("Sys.init"), SYS_HALT("Sys.halt"), SYS_ERROR("Sys.error"), SYS_WAIT("Sys.wait");
+
+        public final String value;
+
+        Builtin(String value) {
+            this.value = value;
+        }
+
+        private static final Map<String, Builtin> byName = new HashMap<>();
+
+        static {
+            for (Builtin b : values()) {
+                byName.put(b.value, b);
+            }
+        }
+
+        // null quando o nome nao e uma funcao do OS
+        public static Builtin of(String name) {
+            return byName.get(name);
+        }
+    }
+
+    static final int HEAP = 2048;
+    static final int HEAP_END = 16384;
+
+    // layout de um String no heap: [capacidade, tamanho, caracteres...]
+    private static final int MAX_LENGTH = 0;
+    private static final int LENGTH = 1;
+    private static final int CHARS = 2;
+
+    private final StringBuilder output = new StringBuilder();
+    private final ArrayDeque<Integer> keys = new ArrayDeque<>();
+    private final Map<Integer, Integer> blockSizes = new HashMap<>();
+    private final Map<Integer, ArrayDeque<Integer>> freeBlocks = new HashMap<>();
+    private int heapTop = HEAP;
+    private boolean halted;
+
+    public String output() {
+        return output.toString();
+    }
+
+    // cada chamada de Keyboard.keyPressed consome uma tecla; fila vazia = nenhuma tecla
+    public void pressKeys(int... codes) {
+        for (int code : codes) {
+            keys.add(code);
+        }
+    }
+
+    public boolean halted() {
+        return halted;
+    }
+
+    // a fila de teclas fica: e a entrada preparada antes de VMInterpreter.run
+    public void reset() {
+        output.setLength(0);
+        blockSizes.clear();
+        freeBlocks.clear();
+        heapTop = HEAP;
+        halted = false;
+    }
+
+    // os argumentos estao em ram[args .. args + nArgs); o retorno ja vem truncado em 16 bits
+    int call(Builtin function, int[] ram, int args) {
+        switch (function) {
+            case MATH_ABS:
+                return (short) Math.abs(ram[args]);
+            case MATH_MULTIPLY:
+                return (short) (ram[args] * ram[args + 1]);
+            case MATH_DIVIDE:
+                if (ram[args + 1] == 0) {
+                    return error(3);
+                }
+                return (short) (ram[args] / ram[args + 1]);
+            case MATH_MIN:
+                return Math.min(ram[args], ram[args + 1]);
+            case MATH_MAX:
+                return Math.max(ram[args], ram[args + 1]);
+            case MATH_SQRT:
+                if (ram[args] < 0) {
+                    return error(4);
+                }
+                return (int) Math.sqrt(ram[args]);
+            case MEMORY_PEEK:
+                return ram[ram[args]];
+            case MEMORY_POKE:
+                ram[ram[args]] = ram[args + 1];
+                return 0;
+            case MEMORY_ALLOC:
+                return alloc(ram, ram[args], 5);
+            case MEMORY_DEALLOC:
+            case ARRAY_DISPOSE:
+            case STRING_DISPOSE:
+                free(ram[args]);
+                return 0;
+            case ARRAY_NEW:
+                return alloc(ram, ram[args], 2);
+            case STRING_NEW:
+                return newString(ram, ram[args]);
+            case STRING_LENGTH:
+                return ram[ram[args] + LENGTH];
+            case STRING_CHAR_AT: {
+                int s = ram[args], i = ram[args + 1];
+                if (i < 0 || i >= ram[s + LENGTH]) {
+                    return error(15);
+                }
+                return ram[s + CHARS + i];
+            }
+            case STRING_SET_CHAR_AT: {
+                int s = ram[args], i = ram[args + 1];
+                if (i < 0 || i >= ram[s + LENGTH]) {
+                    return error(16);
+                }
+                ram[s + CHARS + i] = ram[args + 2];
+                return 0;
+            }
+            case STRING_APPEND_CHAR: {
+                int s = ram[args];
+                if (ram[s + LENGTH] >= ram[s + MAX_LENGTH]) {
+                    return error(17);
+                }
+                ram[s + CHARS + ram[s + LENGTH]++] = ram[args + 1];
+                return s;
+            }
+            case STRING_ERASE_LAST_CHAR: {
+                int s = ram[args];
+                if (ram[s + LENGTH] == 0) {
+                    return error(18);
+                }
+                ram[s + LENGTH]--;
+                return 0;
+            }
+            case STRING_INT_VALUE:
+                return intValue(ram, ram[args]);
+            case STRING_SET_INT: {
+                int s = ram[args];
+                var digits = Integer.toString(ram[args + 1]);
+                if (digits.length() > ram[s + MAX_LENGTH]) {
+                    return error(19);
+                }
+                for (int i = 0; i < digits.length(); i++) {
+                    ram[s + CHARS + i] = digits.charAt(i);
+                }
+                ram[s + LENGTH] = digits.length();
+                return 0;
+            }
+            case STRING_BACKSPACE:
+                return 129;
+            case STRING_DOUBLE_QUOTE:
+                return 34;
+            case STRING_NEWLINE:
+                return 128;
+            case OUTPUT_PRINT_CHAR:
+                printChar(ram[args]);
+                return 0;
+            case OUTPUT_PRINT_STRING: {
+                int s = ram[args];
+                for (int i = 0; i < ram[s + LENGTH]; i++) {
+                    printChar(ram[s + CHARS + i]);
+                }
+                return 0;
+            }
+            case OUTPUT_PRINT_INT:
+                output.append(ram[args]);
+                return 0;
+            case OUTPUT_PRINTLN:
+                output.append('\n');
+                return 0;
+            case OUTPUT_BACKSPACE:
+                printChar(129);
+                return 0;
+            case KEYBOARD_KEY_PRESSED:
+            case KEYBOARD_READ_CHAR:
+                return keys.isEmpty() ? 0 : keys.poll();
+            case KEYBOARD_READ_LINE:
+                return readLine(ram, ram[args]);
+            case KEYBOARD_READ_INT:
+                return intValue(ram, readLine(ram, ram[args]));
+            case SYS_HALT:
+                halted = true;
+                return 0;
+            case SYS_ERROR:
+                return error(ram[args]);
+            default:
+                // init, Screen e Sys.wait: nada a fazer sem tela nem relogio
+                return 0;
+        }
+    }
+
+    private int error(int code) {
+        output.append("ERR").append(code);
+        halted = true;
+        return 0;
+    }
+
+    private void printChar(int c) {
+        if (c == 128) {
+            output.append('\n');
+        } else if (c == 129) {
+            if (output.length() > 0) {
+                output.setLength(output.length() - 1);
+            }
+        } else {
+            output.append((char) c);
+        }
+    }
+
+    // blocos liberados sao reaproveitados por tamanho exato; o resto cresce a partir de heapTop
+    private int alloc(int[] ram, int size, int errorCode) {
+        if (size <= 0) {
+            return error(errorCode);
+        }
+        var free = freeBlocks.get(size);
+        int block;
+        if (free != null && !free.isEmpty()) {
+            block = free.poll();
+        } else {
+            if (heapTop + size > HEAP_END) {
+                return error(6);
+            }
+            block = heapTop;
+            heapTop += size;
+        }
+        blockSizes.put(block, size);
+        Arrays.fill(ram, block, block + size, 0);
+        return block;
+    }
+
+    private void free(int block) {
+        var size = blockSizes.remove(block);
+        if (size != null) {
+            freeBlocks.computeIfAbsent(size, k -> new ArrayDeque<>()).add(block);
+        }
+    }
+
+    private int newString(int[] ram, int maxLength) {
+        if (maxLength < 0) {
+            return error(14);
+        }
+        int s = alloc(ram, CHARS + Math.max(maxLength, 1), 14);
+        if (!halted) {
+            ram[s + MAX_LENGTH] = maxLength;
+        }
+        return s;
+    }
+
+    private int intValue(int[] ram, int s) {
+        int value = 0, i = 0, length = ram[s + LENGTH];
+        var negative = length > 0 && ram[s + CHARS] == '-';
+        if (negative) {
+            i++;
+        }
+        for (; i < length && ram[s + CHARS + i] >= '0' && ram[s + CHARS + i] <= '9'; i++) {
+            value = value * 10 + ram[s + CHARS + i] - '0';
+        }
+        return (short) (negative ? -value : value);
+    }
+
+    // mostra o prompt e monta um String com as teclas da fila ate o newLine (128)
+    private int readLine(int[] ram, int prompt) {
+        for (int i = 0; i < ram[prompt + LENGTH]; i++) {
+            printChar(ram[prompt + CHARS + i]);
+        }
+        var line = new StringBuilder();
+        while (!keys.isEmpty() && keys.peek() != 128) {
+            line.append((char) (int) keys.poll());
+        }
+        keys.poll();
+        output.append(line).append('\n');
+        int s = newString(ram, Math.max(line.length(), 1));
+        for (int i = 0; i < line.length(); i++) {
+            ram[s + CHARS + i] = line.charAt(i);
+        }
+        ram[s + LENGTH] = line.length();
+        return s;
+    }
+}
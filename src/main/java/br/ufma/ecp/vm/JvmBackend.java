@@ -0,0 +1,456 @@
+package br.ufma.ecp.vm;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import br.ufma.ecp.vm.ClassBuilder.ByteVector;
+
+// traduz o codigo VM para bytecode: cada funcao vira um metodo estatico int Classe$funcao(int..., JvmRuntime)
+// de uma hidden class, e quem otimiza e o JIT do HotSpot em vez de um laco de despacho.
+// A pilha da VM vira a pilha de operandos da JVM; argument, local, pointer 0/1 viram locais Java;
+// this/that/temp/static continuam na RAM (int[]) para manter o layout de memoria do Hack.
+// call vira invokestatic direto, e as funcoes do OS passam pelo JackOS como no VMInterpreter.
+// Requer pilha vazia (ou de mesma altura) nos labels, como gera o compilador.
+public class JvmBackend {
+
+    private static final String CLASS_NAME = "br/ufma/ecp/vm/JackProgram";
+    private static final String RUNTIME = "br/ufma/ecp/vm/JvmRuntime";
+    private static final int MAX_OS_ARGS = 4;
+
+    private final JackOS os;
+    private final int[] ram = new int[VMInterpreter.RAM_SIZE];
+    private final List<VMInstruction> program = new ArrayList<>();
+    private Map<String, Integer> arities;
+    private MethodHandles.Lookup compiled;
+    private int result;
+
+    public JvmBackend() {
+        this(new JackOS());
+    }
+
+    public JvmBackend(JackOS os) {
+        this.os = os;
+    }
+
+    public JackOS os() {
+        return os;
+    }
+
+    public int[] ram() {
+        return ram;
+    }
+
+    public int result() {
+        return result;
+    }
+
+    public JvmBackend load(String vmCode) {
+        return load(VMInstruction.parseAll(vmCode));
+    }
+
+    public JvmBackend load(List<VMInstruction> instructions) {
+        program.addAll(instructions);
+        compiled = null;
+        return this;
+    }
+
+    // gera e define a classe com todas as funcoes carregadas (uma vez, antes da primeira execucao)
+    public Class<?> compile() {
+        if (compiled == null) {
+            try {
+                compiled = MethodHandles.lookup().defineHiddenClass(translate(), true);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return compiled.lookupClass();
+    }
+
+    public int run() {
+        compile();
+        return run(arities.containsKey("Sys.init") ? "Sys.init" : "Main.main");
+    }
+
+    // executa entry (argumentos zerados) ate o retorno, Sys.halt ou erro do OS
+    public int run(String entry) {
+        compile();
+        var arity = arities.get(entry);
+        if (arity == null) {
+            throw new IllegalArgumentException("undefined function " + entry);
+        }
+        Arrays.fill(ram, 0);
+        os.reset();
+        var args = new ArrayList<Object>();
+        for (int i = 0; i < arity; i++) {
+            args.add(0);
+        }
+        args.add(new JvmRuntime(ram, os));
+        try {
+            var handle = compiled.findStatic(compiled.lookupClass(), methodName(entry), methodType(arity));
+            result = (int) handle.invokeWithArguments(args);
+        } catch (JvmRuntime.Halt e) {
+            result = 0;
+        } catch (StackOverflowError e) {
+            throw new IllegalStateException("stack overflow", e);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalStateException("invalid memory access", e);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+        return result;
+    }
+
+    private static String methodName(String function) {
+        return function.replace('.', '$');
+    }
+
+    private static String descriptor(int arity) {
+        return "(" + "I".repeat(arity) + "L" + RUNTIME + ";)I";
+    }
+
+    private static MethodType methodType(int arity) {
+        var params = new Class<?>[arity + 1];
+        Arrays.fill(params, int.class);
+        params[arity] = JvmRuntime.class;
+        return MethodType.methodType(int.class, params);
+    }
+
+    private byte[] translate() {
+        // a VM nao declara quantos argumentos uma funcao tem: vale o maior entre o que o corpo
+        // usa e o que as chamadas passam (chamadas com menos argumentos completam com 0)
+        arities = new LinkedHashMap<>();
+        var calls = new HashMap<String, Integer>();
+        String function = null;
+        for (var instruction : program) {
+            switch (instruction.op()) {
+                case FUNCTION:
+                    function = instruction.arg();
+                    arities.putIfAbsent(function, 0);
+                    break;
+                case PUSH:
+                case POP:
+                    if (function == null) {
+                        throw new IllegalArgumentException("code outside a function: " + instruction);
+                    }
+                    if (instruction.arg().equals("argument")) {
+                        arities.merge(function, instruction.index() + 1, Math::max);
+                    }
+                    break;
+                case CALL:
+                    calls.merge(instruction.arg(), instruction.index(), Math::max);
+                    break;
+                default:
+                    if (function == null) {
+                        throw new IllegalArgumentException("code outside a function: " + instruction);
+                    }
+            }
+        }
+        for (var call : calls.entrySet()) {
+            if (arities.containsKey(call.getKey())) {
+                arities.merge(call.getKey(), call.getValue(), Math::max);
+            } else if (JackOS.Builtin.of(call.getKey()) == null) {
+                throw new IllegalArgumentException("undefined function " + call.getKey());
+            } else if (call.getValue() > MAX_OS_ARGS) {
+                throw new IllegalArgumentException("too many arguments for " + call.getKey());
+            }
+        }
+
+        var statics = VMInterpreter.staticBases(program);
+        var builder = new ClassBuilder(CLASS_NAME);
+        int start = 0;
+        for (int i = 1; i <= program.size(); i++) {
+            if (i == program.size() || program.get(i).op() == VMInstruction.Op.FUNCTION) {
+                new FunctionTranslator(builder, statics, program.subList(start, i)).translate();
+                start = i;
+            }
+        }
+        return builder.toByteArray();
+    }
+
+    // bytecode de uma funcao; slots: argumentos, runtime, ram, THIS, THAT, auxiliar, locais
+    private final class FunctionTranslator {
+        private static final int ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11, ILOAD = 0x15, ALOAD = 0x19,
+                ISTORE = 0x36, ASTORE = 0x3a, IALOAD = 0x2e, IASTORE = 0x4f, IADD = 0x60, ISUB = 0x64,
+                INEG = 0x74, IAND = 0x7e, IOR = 0x80, IXOR = 0x82, I2S = 0x93, IFNE = 0x9a, GOTO = 0xa7,
+                IRETURN = 0xac, INVOKESTATIC = 0xb8, WIDE = 0xc4;
+
+        private record Fixup(int at, String label) {
+        }
+
+        private final ClassBuilder builder;
+        private final Map<String, Integer> statics;
+        private final List<VMInstruction> body;
+        private final String name;
+        private final int runtime, ramSlot, thisSlot, thatSlot, scratch, locals;
+        private final ByteVector code = new ByteVector();
+        private final Map<String, Integer> labels = new HashMap<>();
+        private final Map<String, Integer> depths = new HashMap<>();
+        private final List<Fixup> fixups = new ArrayList<>();
+        private int depth, maxDepth;
+
+        FunctionTranslator(ClassBuilder builder, Map<String, Integer> statics, List<VMInstruction> body) {
+            this.builder = builder;
+            this.statics = statics;
+            this.body = body;
+            this.name = body.get(0).arg();
+            runtime = arities.get(name);
+            ramSlot = runtime + 1;
+            thisSlot = runtime + 2;
+            thatSlot = runtime + 3;
+            scratch = runtime + 4;
+            locals = runtime + 5;
+        }
+
+        void translate() {
+            int nLocals = body.get(0).index();
+            load(ALOAD, runtime);
+            invoke(RUNTIME, "ram", "(L" + RUNTIME + ";)[I");
+            store(ASTORE, ramSlot);
+            for (int slot = thisSlot; slot < locals + nLocals; slot++) {
+                if (slot != scratch) {
+                    code.u1(ICONST_0);
+                    store(ISTORE, slot);
+                }
+            }
+
+            var fallsThrough = true;
+            for (var instruction : body.subList(1, body.size())) {
+                if (instruction.op() == VMInstruction.Op.LABEL) {
+                    var label = instruction.arg();
+                    depth = fallsThrough ? depth : depths.getOrDefault(label, 0);
+                    mergeDepth(label);
+                    labels.put(label, code.length());
+                    fallsThrough = true;
+                    continue;
+                }
+                translate(instruction);
+                if (depth < 0) {
+                    throw new IllegalArgumentException("stack underflow in " + name + " at " + instruction);
+                }
+                maxDepth = Math.max(maxDepth, depth);
+                fallsThrough = instruction.op() != VMInstruction.Op.GOTO
+                        && instruction.op() != VMInstruction.Op.RETURN;
+            }
+            if (fallsThrough) {
+                code.u1(ICONST_0);
+                code.u1(IRETURN);
+            }
+
+            for (var fixup : fixups) {
+                var target = labels.get(fixup.label());
+                if (target == null) {
+                    throw new IllegalArgumentException("undefined label " + fixup.label() + " in " + name);
+                }
+                int offset = target - fixup.at();
+                if (offset != (short) offset) {
+                    throw new IllegalArgumentException("function too large: " + name);
+                }
+                code.patch(fixup.at() + 1, offset);
+            }
+            if (code.length() > 65535) {
+                throw new IllegalArgumentException("function too large: " + name);
+            }
+            // folga para os valores transitorios de this/that/static e das chamadas ao OS
+            builder.addMethod(ClassBuilder.ACC_PUBLIC | ClassBuilder.ACC_STATIC, methodName(name),
+                    descriptor(runtime), maxDepth + MAX_OS_ARGS + 2, locals + nLocals, code);
+        }
+
+        private void translate(VMInstruction instruction) {
+            switch (instruction.op()) {
+                case PUSH:
+                    push(instruction.arg(), instruction.index());
+                    depth++;
+                    break;
+                case POP:
+                    pop(instruction.arg(), instruction.index());
+                    depth--;
+                    break;
+                case ADD:
+                    code.u1(IADD).u1(I2S);
+                    depth--;
+                    break;
+                case SUB:
+                    code.u1(ISUB).u1(I2S);
+                    depth--;
+                    break;
+                case NEG:
+                    code.u1(INEG).u1(I2S);
+                    break;
+                case AND:
+                    code.u1(IAND);
+                    depth--;
+                    break;
+                case OR:
+                    code.u1(IOR);
+                    depth--;
+                    break;
+                case NOT:
+                    constant(-1);
+                    code.u1(IXOR);
+                    break;
+                case EQ:
+                case GT:
+                case LT:
+                    invoke(RUNTIME, instruction.op().value, "(II)I");
+                    depth--;
+                    break;
+                case GOTO:
+                    mergeDepth(instruction.arg());
+                    branch(GOTO, instruction.arg());
+                    break;
+                case IF_GOTO:
+                    depth--;
+                    mergeDepth(instruction.arg());
+                    branch(IFNE, instruction.arg());
+                    break;
+                case CALL:
+                    call(instruction.arg(), instruction.index());
+                    break;
+                case RETURN:
+                    code.u1(IRETURN);
+                    depth = 0;
+                    break;
+                default:
+                    throw new IllegalArgumentException("unexpected " + instruction + " in " + name);
+            }
+        }
+
+        private void push(String segment, int index) {
+            switch (segment) {
+                case "constant":
+                    constant(index);
+                    break;
+                case "argument":
+                    load(ILOAD, index);
+                    break;
+                case "local":
+                    load(ILOAD, locals + index);
+                    break;
+                case "pointer":
+                    load(ILOAD, index == 0 ? thisSlot : thatSlot);
+                    break;
+                default:
+                    address(segment, index);
+                    code.u1(IALOAD);
+            }
+        }
+
+        private void pop(String segment, int index) {
+            switch (segment) {
+                case "argument":
+                    store(ISTORE, index);
+                    break;
+                case "local":
+                    store(ISTORE, locals + index);
+                    break;
+                case "pointer":
+                    store(ISTORE, index == 0 ? thisSlot : thatSlot);
+                    break;
+                case "constant":
+                    throw new IllegalArgumentException("cannot pop to constant in " + name);
+                default:
+                    store(ISTORE, scratch);
+                    address(segment, index);
+                    load(ILOAD, scratch);
+                    code.u1(IASTORE);
+            }
+        }
+
+        // empilha ram e o endereco de this/that/temp/static
+        private void address(String segment, int index) {
+            load(ALOAD, ramSlot);
+            switch (segment) {
+                case "this":
+                case "that":
+                    load(ILOAD, segment.equals("this") ? thisSlot : thatSlot);
+                    if (index != 0) {
+                        constant(index);
+                        code.u1(IADD);
+                    }
+                    break;
+                case "temp":
+                    constant(VMInterpreter.TEMP + index);
+                    break;
+                case "static":
+                    constant(statics.get(VMInterpreter.className(name)) + index);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown segment " + segment);
+            }
+        }
+
+        private void call(String function, int nArgs) {
+            var arity = arities.get(function);
+            if (arity != null) {
+                for (int i = nArgs; i < arity; i++) {
+                    constant(0);
+                }
+                load(ALOAD, runtime);
+                invoke(CLASS_NAME, methodName(function), descriptor(arity));
+            } else {
+                var builtin = JackOS.Builtin.of(function);
+                load(ALOAD, runtime);
+                constant(builtin.ordinal());
+                invoke(RUNTIME, "call" + nArgs, descriptor(nArgs).replace(";)I", ";I)I"));
+            }
+            depth += 1 - nArgs;
+        }
+
+        private void mergeDepth(String label) {
+            var known = depths.putIfAbsent(label, depth);
+            if (known != null && known != depth) {
+                throw new IllegalArgumentException("inconsistent stack at label " + label + " in " + name);
+            }
+        }
+
+        private void branch(int opcode, String label) {
+            fixups.add(new Fixup(code.length(), label));
+            code.u1(opcode).u2(0);
+        }
+
+        private void constant(int value) {
+            if (value >= -1 && value <= 5) {
+                code.u1(ICONST_0 + value);
+            } else if (value == (byte) value) {
+                code.u1(BIPUSH).u1(value);
+            } else if (value == (short) value) {
+                code.u1(SIPUSH).u2(value);
+            } else {
+                throw new IllegalArgumentException("constant out of range: " + value);
+            }
+        }
+
+        // iload/aload, com as formas curtas _0.._3 e wide para slots > 255
+        private void load(int opcode, int slot) {
+            int shortForm = opcode == ILOAD ? 0x1a : 0x2a;
+            emitSlot(opcode, shortForm, slot);
+        }
+
+        private void store(int opcode, int slot) {
+            int shortForm = opcode == ISTORE ? 0x3b : 0x4b;
+            emitSlot(opcode, shortForm, slot);
+        }
+
+        private void emitSlot(int opcode, int shortForm, int slot) {
+            if (slot <= 3) {
+                code.u1(shortForm + slot);
+            } else if (slot <= 255) {
+                code.u1(opcode).u1(slot);
+            } else {
+                code.u1(WIDE).u1(opcode).u2(slot);
+            }
+        }
+
+        private void invoke(String owner, String method, String descriptor) {
+            code.u1(INVOKESTATIC).u2(builder.methodRef(owner, method, descriptor));
+        }
+    }
+}
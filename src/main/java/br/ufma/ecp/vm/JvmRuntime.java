@@ -0,0 +1,83 @@
+package br.ufma.ecp.vm;
+
+// estado e rotinas de apoio chamados pelo codigo gerado pelo JvmBackend (invokestatic).
+// O ultimo argumento de toda funcao gerada e o JvmRuntime da execucao.
+final class JvmRuntime {
+
+    // Sys.halt ou erro do OS: desfaz a pilha Java ate o JvmBackend.run
+    static final class Halt extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Halt() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final Halt HALT = new Halt();
+    private static final JackOS.Builtin[] BUILTINS = JackOS.Builtin.values();
+
+    // argumentos das chamadas ao OS vao para a area da pilha, que o codigo gerado nao usa
+    private static final int ARGS = VMInterpreter.STACK;
+
+    final int[] ram;
+    final JackOS os;
+
+    JvmRuntime(int[] ram, JackOS os) {
+        this.ram = ram;
+        this.os = os;
+    }
+
+    static int[] ram(JvmRuntime rt) {
+        return rt.ram;
+    }
+
+    static int eq(int a, int b) {
+        return a == b ? -1 : 0;
+    }
+
+    static int gt(int a, int b) {
+        return a > b ? -1 : 0;
+    }
+
+    static int lt(int a, int b) {
+        return a < b ? -1 : 0;
+    }
+
+    static int call0(JvmRuntime rt, int id) {
+        return rt.call(id);
+    }
+
+    static int call1(int a, JvmRuntime rt, int id) {
+        rt.ram[ARGS] = a;
+        return rt.call(id);
+    }
+
+    static int call2(int a, int b, JvmRuntime rt, int id) {
+        rt.ram[ARGS] = a;
+        rt.ram[ARGS + 1] = b;
+        return rt.call(id);
+    }
+
+    static int call3(int a, int b, int c, JvmRuntime rt, int id) {
+        rt.ram[ARGS] = a;
+        rt.ram[ARGS + 1] = b;
+        rt.ram[ARGS + 2] = c;
+        return rt.call(id);
+    }
+
+    static int call4(int a, int b, int c, int d, JvmRuntime rt, int id) {
+        rt.ram[ARGS] = a;
+        rt.ram[ARGS + 1] = b;
+        rt.ram[ARGS + 2] = c;
+        rt.ram[ARGS + 3] = d;
+        return rt.call(id);
+    }
+
+    private int call(int id) {
+        int value = os.call(BUILTINS[id], ram, ARGS);
+        if (os.halted()) {
+            throw HALT;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,246 @@
+package br.ufma.ecp.vm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import br.ufma.ecp.vm.VMInstruction.Op;
+
+// otimizador peephole sobre o codigo VM de uma funcao. Cada regra olha a janela que
+// comeca em i e reescreve a lista no lugar; as regras rodam ate nenhuma mudar nada.
+public class PeepholeOptimizer {
+
+    // rewrite devolve true se alterou o codigo a partir de i
+    public record Rule(String name, Rewrite rewrite) {
+    }
+
+    public interface Rewrite {
+        boolean apply(List<VMInstruction> code, int i);
+    }
+
+    private static boolean matches(List<VMInstruction> code, int i, Op... ops) {
+        if (i + ops.length > code.size()) {
+            return false;
+        }
+        for (int k = 0; k < ops.length; k++) {
+            if (code.get(i + k).op() != ops[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void replace(List<VMInstruction> code, int i, int length, VMInstruction... with) {
+        code.subList(i, i + length).clear();
+        code.addAll(i, List.of(with));
+    }
+
+    // push X i; pop X i
+    public static final Rule PUSH_POP_SAME = new Rule("push-pop", (code, i) -> {
+        if (matches(code, i, Op.PUSH, Op.POP)) {
+            var push = code.get(i);
+            var pop = code.get(i + 1);
+            if (push.arg().equals(pop.arg()) && push.index() == pop.index() && !push.arg().equals("constant")) {
+                replace(code, i, 2);
+                return true;
+            }
+        }
+        return false;
+    });
+
+    // not; not  e  neg; neg (cadeias de ~ e - unarios do parseTerm)
+    public static final Rule DOUBLE_NEGATION = new Rule("double-negation", (code, i) -> {
+        if (matches(code, i, Op.NOT, Op.NOT) || matches(code, i, Op.NEG, Op.NEG)) {
+            replace(code, i, 2);
+            return true;
+        }
+        return false;
+    });
+
+    // push constant 0; neg
+    public static final Rule NEGATE_ZERO = new Rule("negate-zero", (code, i) -> {
+        if (matches(code, i, Op.PUSH, Op.NEG) && code.get(i).isPushConstant(0)) {
+            replace(code, i, 2, code.get(i));
+            return true;
+        }
+        return false;
+    });
+
+    // condicao constante: push constant 0; if-goto L some, push constant 0; not; if-goto L vira goto L
+    public static final Rule CONSTANT_BRANCH = new Rule("constant-branch", (code, i) -> {
+        if (matches(code, i, Op.PUSH, Op.IF_GOTO) && code.get(i).isPushConstant(0)) {
+            replace(code, i, 2);
+            return true;
+        }
+        if (matches(code, i, Op.PUSH, Op.NOT, Op.IF_GOTO) && code.get(i).isPushConstant(0)) {
+            replace(code, i, 3, new VMInstruction(Op.GOTO, code.get(i + 2).arg(), 0));
+            return true;
+        }
+        return false;
+    });
+
+    // if-goto L1; goto L2; label L1 (o padrao do parseIf) vira not; if-goto L2; label L1.
+    // So vale se a condicao e 0 ou -1: para o Jack qualquer valor diferente de 0 e verdadeiro,
+    // e not 5 (-6) tambem desviaria
+    public static final Rule INVERT_BRANCH = new Rule("invert-branch", (code, i) -> {
+        if (matches(code, i, Op.IF_GOTO, Op.GOTO, Op.LABEL) && code.get(i).arg().equals(code.get(i + 2).arg())
+                && isBoolean(code, i - 1)) {
+            replace(code, i, 2, VMInstruction.of(Op.NOT), new VMInstruction(Op.IF_GOTO, code.get(i + 1).arg(), 0));
+            return true;
+        }
+        return false;
+    });
+
+    // o valor deixado pelo comando end e sempre 0 ou -1: comparacao, constante 0 ou not/and/or
+    // sobre valores assim
+    private static boolean isBoolean(List<VMInstruction> code, int end) {
+        if (end < 0) {
+            return false;
+        }
+        var instruction = code.get(end);
+        switch (instruction.op()) {
+            case EQ:
+            case GT:
+            case LT:
+                return true;
+            case PUSH:
+                return instruction.isPushConstant(0);
+            case NOT:
+                return isBoolean(code, end - 1);
+            case AND:
+            case OR:
+                int right = operandStart(code, end - 1);
+                return right > 0 && isBoolean(code, end - 1) && isBoolean(code, right - 1);
+            default:
+                return false;
+        }
+    }
+
+    // primeiro comando da expressao que termina em end (e deixa um valor na pilha); -1 se ela
+    // atravessa um label ou desvio
+    private static int operandStart(List<VMInstruction> code, int end) {
+        int needed = 1;
+        for (int k = end; k >= 0; k--) {
+            var instruction = code.get(k);
+            switch (instruction.op()) {
+                case PUSH:
+                    needed--;
+                    break;
+                case POP:
+                    needed++;
+                    break;
+                case ADD:
+                case SUB:
+                case EQ:
+                case GT:
+                case LT:
+                case AND:
+                case OR:
+                    needed++;
+                    break;
+                case NEG:
+                case NOT:
+                    break;
+                case CALL:
+                    needed += instruction.index() - 1;
+                    break;
+                default:
+                    return -1;
+            }
+            if (needed == 0) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    // goto L; label L  e  if-goto L; label L
+    public static final Rule JUMP_TO_NEXT = new Rule("jump-to-next", (code, i) -> {
+        if (matches(code, i, Op.GOTO, Op.LABEL) && code.get(i).arg().equals(code.get(i + 1).arg())) {
+            replace(code, i, 1);
+            return true;
+        }
+        if (matches(code, i, Op.IF_GOTO, Op.LABEL) && code.get(i).arg().equals(code.get(i + 1).arg())) {
+            // a condicao ainda precisa sair da pilha
+            replace(code, i, 1, VMInstruction.pop("temp", 0));
+            return true;
+        }
+        return false;
+    });
+
+    // codigo depois de goto/return ate o proximo label nunca executa
+    public static final Rule DEAD_CODE = new Rule("dead-code", (code, i) -> {
+        var op = code.get(i).op();
+        if ((op == Op.GOTO || op == Op.RETURN) && i + 1 < code.size()) {
+            int end = i + 1;
+            while (end < code.size() && code.get(end).op() != Op.LABEL && code.get(end).op() != Op.FUNCTION) {
+                end++;
+            }
+            if (end > i + 1) {
+                code.subList(i + 1, end).clear();
+                return true;
+            }
+        }
+        return false;
+    });
+
+    // label que ninguem referencia dentro da funcao
+    public static final Rule UNUSED_LABEL = new Rule("unused-label", (code, i) -> {
+        var label = code.get(i);
+        if (label.op() != Op.LABEL) {
+            return false;
+        }
+        for (var instruction : code) {
+            if ((instruction.op() == Op.GOTO || instruction.op() == Op.IF_GOTO) && instruction.arg().equals(label.arg())) {
+                return false;
+            }
+        }
+        code.remove(i);
+        return true;
+    });
+
+    public static List<Rule> defaultRules() {
+        return List.of(PUSH_POP_SAME, DOUBLE_NEGATION, NEGATE_ZERO, CONSTANT_BRANCH, INVERT_BRANCH,
+                JUMP_TO_NEXT, DEAD_CODE, UNUSED_LABEL);
+    }
+
+    private final List<Rule> rules;
+
+    public PeepholeOptimizer() {
+        this(defaultRules());
+    }
+
+    public PeepholeOptimizer(List<Rule> rules) {
+        this.rules = List.copyOf(rules);
+    }
+
+    // so as regras da tabela padrao com os nomes dados
+    public static PeepholeOptimizer withRules(String... names) {
+        var selected = new ArrayList<Rule>();
+        for (var rule : defaultRules()) {
+            if (List.of(names).contains(rule.name())) {
+                selected.add(rule);
+            }
+        }
+        return new PeepholeOptimizer(selected);
+    }
+
+    public List<Rule> rules() {
+        return rules;
+    }
+
+    public List<VMInstruction> optimize(List<VMInstruction> code) {
+        var result = new ArrayList<>(code);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < result.size(); i++) {
+                for (var rule : rules) {
+                    if (i < result.size() && rule.rewrite().apply(result, i)) {
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
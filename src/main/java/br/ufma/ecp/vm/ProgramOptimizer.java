@@ -0,0 +1,233 @@
+package br.ufma.ecp.vm;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import br.ufma.ecp.vm.VMInstruction.Op;
+
+// otimizacao sobre o codigo VM do programa inteiro: grafo de chamadas a partir de Sys.init e
+// Main.main, subrotinas folha pequenas expandidas no lugar do call e remocao de tudo que nao e
+// alcancavel (inclusive funcoes do OS carregadas como .vm). Chamadas para funcoes que nao foram
+// carregadas (o OS embutido do VMInterpreter, por exemplo) ficam como estao.
+public class ProgramOptimizer {
+
+    // corpos (sem o "function") de ate tantos comandos podem ser expandidos
+    public static final int MAX_INLINE = 12;
+
+    // argumentos, locais e o THIS/THAT salvo da funcao expandida vivem em temp 1..7;
+    // temp 0 continua livre para o proprio corpo (let a[i] = ...), como numa chamada de verdade
+    private static final int FIRST_SLOT = 1, LAST_SLOT = 7;
+
+    private final Map<String, List<VMInstruction>> functions = new LinkedHashMap<>();
+    private final int maxInline;
+    private final List<String> removed = new ArrayList<>();
+    private int inlined;
+
+    public ProgramOptimizer() {
+        this(MAX_INLINE);
+    }
+
+    public ProgramOptimizer(int maxInline) {
+        this.maxInline = maxInline;
+    }
+
+    public ProgramOptimizer load(String vmCode) {
+        return load(VMInstruction.parseAll(vmCode));
+    }
+
+    public ProgramOptimizer load(List<VMInstruction> instructions) {
+        List<VMInstruction> body = null;
+        for (var instruction : instructions) {
+            if (instruction.op() == Op.FUNCTION) {
+                body = new ArrayList<>();
+                if (functions.put(instruction.arg(), body) != null) {
+                    throw new IllegalArgumentException("duplicate function " + instruction.arg());
+                }
+            } else if (body == null) {
+                throw new IllegalArgumentException("VM command outside a function: " + instruction);
+            }
+            body.add(instruction);
+        }
+        return this;
+    }
+
+    public boolean hasEntry() {
+        return !entries().isEmpty();
+    }
+
+    // funcoes que sairam do programa na ultima chamada a optimize
+    public List<String> removed() {
+        return removed;
+    }
+
+    // chamadas substituidas pelo corpo da funcao
+    public int inlinedCalls() {
+        return inlined;
+    }
+
+    // codigo de cada classe (na ordem em que foram carregadas) so com as funcoes alcancaveis;
+    // classes sem nenhuma funcao alcancavel nao aparecem
+    public Map<String, List<VMInstruction>> optimize() {
+        var entries = entries();
+        if (entries.isEmpty()) {
+            throw new IllegalArgumentException("undefined function Main.main");
+        }
+        // expandir uma folha em f pode tornar f uma folha pequena tambem
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (var name : reachable(entries)) {
+                var expanded = inline(name, functions.get(name));
+                if (expanded != null) {
+                    functions.put(name, expanded);
+                    changed = true;
+                }
+            }
+        }
+
+        var reachable = reachable(entries);
+        removed.clear();
+        var classes = new LinkedHashMap<String, List<VMInstruction>>();
+        for (var e : functions.entrySet()) {
+            if (reachable.contains(e.getKey())) {
+                classes.computeIfAbsent(VMInterpreter.className(e.getKey()), k -> new ArrayList<>()).addAll(e.getValue());
+            } else {
+                removed.add(e.getKey());
+            }
+        }
+        return classes;
+    }
+
+    private List<String> entries() {
+        var entries = new ArrayList<String>();
+        for (var entry : List.of("Sys.init", "Main.main")) {
+            if (functions.containsKey(entry)) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    private Set<String> reachable(List<String> entries) {
+        var seen = new LinkedHashSet<String>(entries);
+        var work = new ArrayDeque<String>(entries);
+        while (!work.isEmpty()) {
+            for (var instruction : functions.get(work.pop())) {
+                if (instruction.op() == Op.CALL && functions.containsKey(instruction.arg())
+                        && seen.add(instruction.arg())) {
+                    work.push(instruction.arg());
+                }
+            }
+        }
+        return seen;
+    }
+
+    // null se nenhuma chamada de caller foi expandida
+    private List<VMInstruction> inline(String caller, List<VMInstruction> body) {
+        List<VMInstruction> result = null;
+        for (int i = 0; i < body.size(); i++) {
+            var instruction = body.get(i);
+            var callee = instruction.op() == Op.CALL ? functions.get(instruction.arg()) : null;
+            if (callee != null && !instruction.arg().equals(caller)
+                    && inlinable(caller, callee, instruction.index(), body)) {
+                if (result == null) {
+                    result = new ArrayList<>(body.subList(0, i));
+                }
+                expand(callee, instruction.index(), body, result);
+            } else if (result != null) {
+                result.add(instruction);
+            }
+        }
+        return result;
+    }
+
+    private boolean inlinable(String caller, List<VMInstruction> callee, int nArgs, List<VMInstruction> callerBody) {
+        if (callee.size() - 1 > maxInline || callee.get(callee.size() - 1).op() != Op.RETURN) {
+            return false;
+        }
+        var sameClass = VMInterpreter.className(caller).equals(VMInterpreter.className(callee.get(0).arg()));
+        for (var instruction : callee) {
+            if (instruction.op() == Op.CALL) {
+                return false;
+            }
+            var segment = instruction.op() == Op.PUSH || instruction.op() == Op.POP ? instruction.arg() : "";
+            // static e do arquivo: o codigo VM de outra classe nao tem como enderecar
+            if (segment.equals("static") && !sameClass
+                    || segment.equals("temp") && instruction.index() >= FIRST_SLOT
+                    || segment.equals("argument") && instruction.index() >= nArgs) {
+                return false;
+            }
+        }
+        return FIRST_SLOT + nArgs + callee.get(0).index() + saved(callee, callerBody).size() - 1 <= LAST_SLOT;
+    }
+
+    // pointer 0/1 que o corpo expandido troca e que o chamador ainda usa depois (o call salvaria)
+    private static List<Integer> saved(List<VMInstruction> callee, List<VMInstruction> callerBody) {
+        var saved = new ArrayList<Integer>();
+        for (int p = 0; p <= 1; p++) {
+            var segment = p == 0 ? "this" : "that";
+            int index = p;
+            if (callee.contains(VMInstruction.pop("pointer", p)) && callerBody.stream().anyMatch(
+                    c -> (c.op() == Op.PUSH || c.op() == Op.POP) && (c.arg().equals(segment)
+                            || c.arg().equals("pointer") && c.index() == index))) {
+                saved.add(p);
+            }
+        }
+        return saved;
+    }
+
+    private void expand(List<VMInstruction> callee, int nArgs, List<VMInstruction> callerBody, List<VMInstruction> out) {
+        int locals = callee.get(0).index();
+        var saved = saved(callee, callerBody);
+        int save = FIRST_SLOT + nArgs + locals;
+        var prefix = "INLINE" + inlined++ + "_";
+        var end = prefix + "END";
+
+        for (int a = nArgs - 1; a >= 0; a--) {
+            out.add(VMInstruction.pop("temp", FIRST_SLOT + a));
+        }
+        for (int l = 0; l < locals; l++) {
+            out.add(VMInstruction.push("constant", 0));
+            out.add(VMInstruction.pop("temp", FIRST_SLOT + nArgs + l));
+        }
+        for (int s = 0; s < saved.size(); s++) {
+            out.add(VMInstruction.push("pointer", saved.get(s)));
+            out.add(VMInstruction.pop("temp", save + s));
+        }
+        boolean jumpsToEnd = false;
+        for (int i = 1; i < callee.size(); i++) {
+            var instruction = callee.get(i);
+            var op = instruction.op();
+            if ((op == Op.PUSH || op == Op.POP) && instruction.arg().equals("argument")) {
+                instruction = new VMInstruction(op, "temp", FIRST_SLOT + instruction.index());
+            } else if ((op == Op.PUSH || op == Op.POP) && instruction.arg().equals("local")) {
+                instruction = new VMInstruction(op, "temp", FIRST_SLOT + nArgs + instruction.index());
+            } else if (op == Op.LABEL || op == Op.GOTO || op == Op.IF_GOTO) {
+                instruction = new VMInstruction(op, prefix + instruction.arg(), 0);
+            } else if (op == Op.RETURN) {
+                // o valor de retorno ja esta no topo da pilha, como depois do call
+                if (i == callee.size() - 1) {
+                    instruction = null;
+                } else {
+                    instruction = new VMInstruction(Op.GOTO, end, 0);
+                    jumpsToEnd = true;
+                }
+            }
+            if (instruction != null) {
+                out.add(instruction);
+            }
+        }
+        if (jumpsToEnd) {
+            out.add(new VMInstruction(Op.LABEL, end, 0));
+        }
+        for (int s = 0; s < saved.size(); s++) {
+            out.add(VMInstruction.push("temp", save + s));
+            out.add(VMInstruction.pop("pointer", saved.get(s)));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package br.ufma.ecp.vm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// um comando da linguagem VM ja decodificado.
+// push/pop: arg = segmento, index = indice; label/goto/if-goto: arg = rotulo;
+// function/call: arg = nome, index = locais/argumentos
+public record VMInstruction(Op op, String arg, int index) {
+
+    public enum Op {
+        PUSH("push"), POP("pop"),
+        ADD("add"), SUB("sub"), NEG("neg"), EQ("eq"), GT("gt"), LT("lt"), AND("and"), OR("or"), NOT("not"),
+        LABEL("label"), GOTO("goto"), IF_GOTO("if-goto"),
+        FUNCTION("function"), CALL("call"), RETURN("return");
+
+        public final String value;
+
+        Op(String value) {
+            this.value = value;
+        }
+
+        public boolean isArithmetic() {
+            return ordinal() >= ADD.ordinal() && ordinal() <= NOT.ordinal();
+        }
+
+        public static Op of(String value) {
+            for (Op op : values()) {
+                if (op.value.equals(value)) {
+                    return op;
+                }
+            }
+            throw new IllegalArgumentException("unknown VM command " + value);
+        }
+    }
+
+    public static VMInstruction of(Op op) {
+        return new VMInstruction(op, null, 0);
+    }
+
+    public static VMInstruction push(String segment, int index) {
+        return new VMInstruction(Op.PUSH, segment, index);
+    }
+
+    public static VMInstruction pop(String segment, int index) {
+        return new VMInstruction(Op.POP, segment, index);
+    }
+
+    public boolean is(Op op, String arg) {
+        return this.op == op && arg.equals(this.arg);
+    }
+
+    public boolean isPushConstant(int value) {
+        return op == Op.PUSH && arg.equals("constant") && index == value;
+    }
+
+    // aceita a saida deste compilador e .vm escritos a mao (comentarios // e linhas vazias)
+    public static VMInstruction parse(String line) {
+        int comment = line.indexOf("//");
+        if (comment >= 0) {
+            line = line.substring(0, comment);
+        }
+        line = line.trim();
+        if (line.isEmpty()) {
+            return null;
+        }
+        var parts = line.split("\\s+");
+        var op = Op.of(parts[0]);
+        switch (op) {
+            case PUSH:
+            case POP:
+            case FUNCTION:
+            case CALL:
+                return new VMInstruction(op, parts[1], Integer.parseInt(parts[2]));
+            case LABEL:
+            case GOTO:
+            case IF_GOTO:
+                return new VMInstruction(op, parts[1], 0);
+            default:
+                return of(op);
+        }
+    }
+
+    public static List<VMInstruction> parseAll(String code) {
+        var instructions = new ArrayList<VMInstruction>();
+        for (var line : code.split("\n")) {
+            var instruction = parse(line);
+            if (instruction != null) {
+                instructions.add(instruction);
+            }
+        }
+        return instructions;
+    }
+
+    @Override
+    public String toString() {
+        switch (op) {
+            case PUSH:
+            case POP:
+            case FUNCTION:
+            case CALL:
+                return op.value + " " + arg + " " + index;
+            case LABEL:
+            case GOTO:
+            case IF_GOTO:
+                return op.value + " " + arg;
+            default:
+                return op.value;
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package br.ufma.ecp.vm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// executa codigo VM sem o VMEmulator: as instrucoes sao decodificadas uma vez em um int[]
+// (3 ints por instrucao) e rodam sobre a RAM do Hack em um int[], com o OS em Java (JackOS).
+// Funcoes definidas no codigo carregado tem precedencia sobre as do OS.
+public class VMInterpreter {
+
+    // mapa de memoria do Hack
+    public static final int SP = 0, LCL = 1, ARG = 2, THIS = 3, THAT = 4, TEMP = 5, STATIC = 16;
+    public static final int STACK = 256;
+    public static final int RAM_SIZE = 32768;
+
+    // opcodes decodificados; pointer, temp e static viram enderecos absolutos (PUSH_RAM/POP_RAM)
+    private static final int PUSH_CONSTANT = 0, PUSH_LOCAL = 1, PUSH_ARGUMENT = 2, PUSH_THIS = 3,
+            PUSH_THAT = 4, PUSH_RAM = 5, POP_LOCAL = 6, POP_ARGUMENT = 7, POP_THIS = 8, POP_THAT = 9,
+            POP_RAM = 10, ADD = 11, SUB = 12, NEG = 13, EQ = 14, GT = 15, LT = 16, AND = 17, OR = 18,
+            NOT = 19, GOTO = 20, IF_GOTO = 21, CALL = 22, CALL_OS = 23, FUNCTION = 24, RETURN = 25;
+
+    private static final JackOS.Builtin[] BUILTINS = JackOS.Builtin.values();
+
+    private final JackOS os;
+    private final int[] ram = new int[RAM_SIZE];
+    private final List<VMInstruction> program = new ArrayList<>();
+    private int[] code;
+    private Map<String, Integer> functions;
+    private boolean finished;
+    private int result;
+
+    public VMInterpreter() {
+        this(new JackOS());
+    }
+
+    public VMInterpreter(JackOS os) {
+        this.os = os;
+    }
+
+    public JackOS os() {
+        return os;
+    }
+
+    public int[] ram() {
+        return ram;
+    }
+
+    // um arquivo .vm por chamada (ou varios concatenados)
+    public VMInterpreter load(String vmCode) {
+        return load(VMInstruction.parseAll(vmCode));
+    }
+
+    public VMInterpreter load(List<VMInstruction> instructions) {
+        program.addAll(instructions);
+        code = null;
+        return this;
+    }
+
+    // terminou com return da funcao de entrada ou Sys.halt (e nao por maxSteps)
+    public boolean finished() {
+        return finished;
+    }
+
+    // valor devolvido pela funcao de entrada
+    public int result() {
+        return result;
+    }
+
+    // Sys.init quando o programa define um, senao Main.main
+    public long run(long maxSteps) {
+        link();
+        return run(functions.containsKey("Sys.init") ? "Sys.init" : "Main.main", maxSteps);
+    }
+
+    // chama entry sem argumentos com a pilha vazia e executa ate o retorno ou maxSteps instrucoes;
+    // devolve quantas instrucoes foram executadas
+    public long run(String entry, long maxSteps) {
+        link();
+        var start = functions.get(entry);
+        if (start == null) {
+            throw new IllegalArgumentException("undefined function " + entry);
+        }
+        finished = false;
+        os.reset();
+        Arrays.fill(ram, 0);
+
+        // quadro de chamada falso: o endereco de retorno -1 encerra a execucao
+        int sp = STACK;
+        ram[sp++] = -1;
+        for (int i = LCL; i <= THAT; i++) {
+            ram[sp++] = 0;
+        }
+        ram[ARG] = STACK;
+        ram[LCL] = sp;
+        return execute(start, sp, maxSteps);
+    }
+
+    private long execute(int pc, int sp, long maxSteps) {
+        final int[] code = this.code;
+        final int[] ram = this.ram;
+        long steps = 0;
+        try {
+            while (steps < maxSteps) {
+                steps++;
+                final int a = code[pc + 1];
+                switch (code[pc]) {
+                    case PUSH_CONSTANT:
+                        ram[sp++] = a;
+                        break;
+                    case PUSH_LOCAL:
+                        ram[sp++] = ram[ram[LCL] + a];
+                        break;
+                    case PUSH_ARGUMENT:
+                        ram[sp++] = ram[ram[ARG] + a];
+                        break;
+                    case PUSH_THIS:
+                        ram[sp++] = ram[ram[THIS] + a];
+                        break;
+                    case PUSH_THAT:
+                        ram[sp++] = ram[ram[THAT] + a];
+                        break;
+                    case PUSH_RAM:
+                        ram[sp++] = ram[a];
+                        break;
+                    case POP_LOCAL:
+                        ram[ram[LCL] + a] = ram[--sp];
+                        break;
+                    case POP_ARGUMENT:
+                        ram[ram[ARG] + a] = ram[--sp];
+                        break;
+                    case POP_THIS:
+                        ram[ram[THIS] + a] = ram[--sp];
+                        break;
+                    case POP_THAT:
+                        ram[ram[THAT] + a] = ram[--sp];
+                        break;
+                    case POP_RAM:
+                        ram[a] = ram[--sp];
+                        break;
+                    case ADD:
+                        sp--;
+                        ram[sp - 1] = (short) (ram[sp - 1] + ram[sp]);
+                        break;
+                    case SUB:
+                        sp--;
+                        ram[sp - 1] = (short) (ram[sp - 1] - ram[sp]);
+                        break;
+                    case NEG:
+                        ram[sp - 1] = (short) -ram[sp - 1];
+                        break;
+                    case EQ:
+                        sp--;
+                        ram[sp - 1] = ram[sp - 1] == ram[sp] ? -1 : 0;
+                        break;
+                    case GT:
+                        sp--;
+                        ram[sp - 1] = ram[sp - 1] > ram[sp] ? -1 : 0;
+                        break;
+                    case LT:
+                        sp--;
+                        ram[sp - 1] = ram[sp - 1] < ram[sp] ? -1 : 0;
+                        break;
+                    case AND:
+                        sp--;
+                        ram[sp - 1] &= ram[sp];
+                        break;
+                    case OR:
+                        sp--;
+                        ram[sp - 1] |= ram[sp];
+                        break;
+                    case NOT:
+                        ram[sp - 1] = ~ram[sp - 1];
+                        break;
+                    case GOTO:
+                        pc = a;
+                        continue;
+                    case IF_GOTO:
+                        if (ram[--sp] != 0) {
+                            pc = a;
+                            continue;
+                        }
+                        break;
+                    case CALL: {
+                        ram[sp] = pc + 3;
+                        ram[sp + 1] = ram[LCL];
+                        ram[sp + 2] = ram[ARG];
+                        ram[sp + 3] = ram[THIS];
+                        ram[sp + 4] = ram[THAT];
+                        ram[ARG] = sp - code[pc + 2];
+                        sp += 5;
+                        ram[LCL] = sp;
+                        pc = a;
+                        continue;
+                    }
+                    case CALL_OS: {
+                        ram[SP] = sp;
+                        int args = sp - code[pc + 2];
+                        ram[args] = os.call(BUILTINS[a], ram, args);
+                        sp = args + 1;
+                        if (os.halted()) {
+                            return stop(sp, steps, ram[args]);
+                        }
+                        break;
+                    }
+                    case FUNCTION:
+                        if (sp + a >= JackOS.HEAP) {
+                            throw new IllegalStateException("stack overflow");
+                        }
+                        for (int i = 0; i < a; i++) {
+                            ram[sp++] = 0;
+                        }
+                        break;
+                    case RETURN: {
+                        int frame = ram[LCL];
+                        int ret = ram[frame - 5];
+                        int value = ram[sp - 1];
+                        ram[ram[ARG]] = value;
+                        sp = ram[ARG] + 1;
+                        ram[THAT] = ram[frame - 1];
+                        ram[THIS] = ram[frame - 2];
+                        ram[ARG] = ram[frame - 3];
+                        ram[LCL] = ram[frame - 4];
+                        if (ret < 0) {
+                            return stop(sp, steps, value);
+                        }
+                        pc = ret;
+                        continue;
+                    }
+                    default:
+                        throw new IllegalStateException("bad opcode " + code[pc]);
+                }
+                pc += 3;
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalStateException("invalid memory access at instruction " + pc / 3, e);
+        }
+        ram[SP] = sp;
+        return steps;
+    }
+
+    private long stop(int sp, long steps, int value) {
+        ram[SP] = sp;
+        finished = true;
+        result = value;
+        return steps;
+    }
+
+    // resolve labels (locais a cada funcao), chamadas e enderecos de static antes da primeira execucao
+    private void link() {
+        if (code != null) {
+            return;
+        }
+        functions = new HashMap<>();
+        var labels = new HashMap<String, Integer>();
+        String function = "";
+        int pc = 0;
+        for (var instruction : program) {
+            if (instruction.op() == VMInstruction.Op.FUNCTION) {
+                function = instruction.arg();
+                functions.put(function, pc);
+            } else if (instruction.op() == VMInstruction.Op.LABEL) {
+                labels.put(function + "$" + instruction.arg(), pc);
+                continue;
+            }
+            pc += 3;
+        }
+        var staticBase = staticBases(program);
+
+        code = new int[pc];
+        pc = 0;
+        for (var instruction : program) {
+            var op = instruction.op();
+            if (op == VMInstruction.Op.LABEL) {
+                continue;
+            }
+            if (op == VMInstruction.Op.FUNCTION) {
+                function = instruction.arg();
+            }
+            int opcode, a = instruction.index(), b = 0;
+            switch (op) {
+                case PUSH:
+                case POP: {
+                    var push = op == VMInstruction.Op.PUSH;
+                    switch (instruction.arg()) {
+                        case "constant":
+                            opcode = PUSH_CONSTANT;
+                            break;
+                        case "local":
+                            opcode = push ? PUSH_LOCAL : POP_LOCAL;
+                            break;
+                        case "argument":
+                            opcode = push ? PUSH_ARGUMENT : POP_ARGUMENT;
+                            break;
+                        case "this":
+                            opcode = push ? PUSH_THIS : POP_THIS;
+                            break;
+                        case "that":
+                            opcode = push ? PUSH_THAT : POP_THAT;
+                            break;
+                        case "pointer":
+                            opcode = push ? PUSH_RAM : POP_RAM;
+                            a = THIS + a;
+                            break;
+                        case "temp":
+                            opcode = push ? PUSH_RAM : POP_RAM;
+                            a = TEMP + a;
+                            break;
+                        case "static":
+                            opcode = push ? PUSH_RAM : POP_RAM;
+                            a = staticBase.get(className(function)) + a;
+                            break;
+                        default:
+                            throw new IllegalArgumentException("unknown segment " + instruction.arg());
+                    }
+                    if (!push && opcode == PUSH_CONSTANT) {
+                        throw new IllegalArgumentException("cannot pop to constant in " + function);
+                    }
+                    break;
+                }
+                case ADD:
+                    opcode = ADD;
+                    break;
+                case SUB:
+                    opcode = SUB;
+                    break;
+                case NEG:
+                    opcode = NEG;
+                    break;
+                case EQ:
+                    opcode = EQ;
+                    break;
+                case GT:
+                    opcode = GT;
+                    break;
+                case LT:
+                    opcode = LT;
+                    break;
+                case AND:
+                    opcode = AND;
+                    break;
+                case OR:
+                    opcode = OR;
+                    break;
+                case NOT:
+                    opcode = NOT;
+                    break;
+                case GOTO:
+                case IF_GOTO: {
+                    var target = labels.get(function + "$" + instruction.arg());
+                    if (target == null) {
+                        throw new IllegalArgumentException("undefined label " + instruction.arg() + " in " + function);
+                    }
+                    opcode = op == VMInstruction.Op.GOTO ? GOTO : IF_GOTO;
+                    a = target;
+                    break;
+                }
+                case CALL: {
+                    b = instruction.index();
+                    var target = functions.get(instruction.arg());
+                    if (target != null) {
+                        opcode = CALL;
+                        a = target;
+                    } else {
+                        var builtin = JackOS.Builtin.of(instruction.arg());
+                        if (builtin == null) {
+                            throw new IllegalArgumentException("undefined function " + instruction.arg());
+                        }
+                        opcode = CALL_OS;
+                        a = builtin.ordinal();
+                    }
+                    break;
+                }
+                case FUNCTION:
+                    opcode = FUNCTION;
+                    break;
+                default:
+                    opcode = RETURN;
+            }
+            code[pc] = opcode;
+            code[pc + 1] = a;
+            code[pc + 2] = b;
+            pc += 3;
+        }
+    }
+
+    // static de cada classe em sequencia a partir de RAM[16], como o VMEmulator
+    static Map<String, Integer> staticBases(List<VMInstruction> program) {
+        var sizes = new LinkedHashMap<String, Integer>();
+        String function = "";
+        for (var instruction : program) {
+            if (instruction.op() == VMInstruction.Op.FUNCTION) {
+                function = instruction.arg();
+            } else if (instruction.arg() != null && instruction.arg().equals("static")
+                    && (instruction.op() == VMInstruction.Op.PUSH || instruction.op() == VMInstruction.Op.POP)) {
+                sizes.merge(className(function), instruction.index() + 1, Math::max);
+            }
+        }
+        var bases = new HashMap<String, Integer>();
+        int next = STATIC;
+        for (var e : sizes.entrySet()) {
+            bases.put(e.getKey(), next);
+            next += e.getValue();
+        }
+        return bases;
+    }
+
+    static String className(String function) {
+        int dot = function.indexOf('.');
+        return dot >= 0 ? function.substring(0, dot) : function;
+    }
+}
@@ -0,0 +1,139 @@
+package br.ufma.ecp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+public class BatchCompilerTest extends TestSupport {
+
+    @Test
+    public void testCompileResourcesDirectory() throws IOException {
+        Path out = Files.createTempDirectory("jackbatch");
+        var compiler = new BatchCompiler(out, 4);
+        var report = compiler.compile(Paths.get("src/test/resources"));
+        compiler.shutdown();
+
+        assertEquals(6, report.results().size());
+        assertEquals(0, report.failed());
+
+        var result = Files.readString(out.resolve("Square/SquareGame.xml")).replaceAll("\\s+", "");
+        var expectedResult = fromFile("Square/SquareGame.xml").replaceAll("\\s+", "");
+        assertEquals(expectedResult, result);
+    }
+
+    @Test
+    public void testSyntaxErrorIsIsolatedPerFile() throws IOException {
+        Path src = Files.createTempDirectory("jacksrc");
+        Files.writeString(src.resolve("Ok.jack"), "class Ok { }");
+        Files.writeString(src.resolve("Bad.jack"), "class Bad { function }");
+
+        var compiler = new BatchCompiler(src.resolve("out"), 2);
+        var report = compiler.compile(src);
+        compiler.shutdown();
+
+        assertEquals(1, report.succeeded());
+        assertEquals(1, report.failed());
+        assertTrue(Files.exists(src.resolve("out/Ok.xml")));
+        assertTrue(report.summary().contains("Bad.jack"));
+    }
+
+    @Test
+    public void testCompileToVM() throws IOException {
+        Path out = Files.createTempDirectory("jackvm");
+        var compiler = new BatchCompiler(out, 2, BatchCompiler.Target.VM);
+        var report = compiler.compile(Paths.get("src/test/resources/Square"));
+        compiler.shutdown();
+
+        assertEquals(0, report.failed());
+        var vm = Files.readString(out.resolve("Main.vm"));
+        assertTrue(vm.startsWith("function Main.main 1\n"));
+        assertTrue(vm.contains("call SquareGame.new 0\n"));
+        assertTrue(vm.contains("call SquareGame.run 1\n"));
+    }
+
+    private static Set<String> compiledNow(BatchCompiler.Report report) {
+        return report.results().stream()
+                .filter(r -> !r.cached())
+                .map(r -> r.source().getFileName().toString())
+                .collect(Collectors.toSet());
+    }
+
+    @Test
+    public void testCacheRecompilesOnlyChangedFilesAndStaleCallers() throws IOException {
+        Path src = Files.createTempDirectory("jackinc");
+        Path cacheDir = src.resolve(".cache");
+        Files.writeString(src.resolve("A.jack"), "class A { function void main() { do B.f(1); return; } }");
+        Files.writeString(src.resolve("B.jack"), "class B { function int f(int x) { return x; } }");
+        Files.writeString(src.resolve("C.jack"), "class C { function int g() { return 1; } }");
+
+        var compiler = new BatchCompiler(src.resolve("out"), 2, BatchCompiler.Target.VM);
+        compiler.withCache(new CompileCache(cacheDir));
+        assertEquals(Set.of("A.jack", "B.jack", "C.jack"), compiledNow(compiler.compile(src)));
+
+        compiler.withCache(new CompileCache(cacheDir));
+        var report = compiler.compile(src);
+        assertEquals(Set.of(), compiledNow(report));
+        assertEquals(3, report.cached());
+
+        // so o corpo mudou: a assinatura de C continua igual
+        Files.writeString(src.resolve("C.jack"), "class C { function int g() { return 2; } }");
+        assertEquals(Set.of("C.jack"), compiledNow(compiler.compile(src)));
+
+        // B.f ganhou um parametro: A, que chama B.f, tambem e recompilado
+        Files.writeString(src.resolve("B.jack"), "class B { function int f(int x, int y) { return x; } }");
+        assertEquals(Set.of("A.jack", "B.jack"), compiledNow(compiler.compile(src)));
+
+        compiler.shutdown();
+        assertTrue(Files.readString(src.resolve("out/C.vm")).contains("push constant 2"));
+    }
+
+    @Test
+    public void testCacheHitsWithoutCheckAreChecked() throws IOException {
+        Path src = Files.createTempDirectory("jackcheck");
+        Path cacheDir = src.resolve(".cache");
+        Files.writeString(src.resolve("A.jack"), "class A { function void main() { do B.f(1, 2); return; } }");
+        Files.writeString(src.resolve("B.jack"), "class B { function int f(int x) { return x; } }");
+
+        var compiler = new BatchCompiler(src.resolve("out"), 2, BatchCompiler.Target.VM);
+        compiler.withCache(new CompileCache(cacheDir));
+        assertEquals(0, compiler.compile(src).failed());
+
+        // a mesma fonte, agora com -check: A chama B.f com argumentos demais
+        compiler.withCache(new CompileCache(cacheDir));
+        compiler.withSemanticChecks(true);
+        var report = compiler.compile(src);
+        compiler.shutdown();
+        assertEquals(1, report.failed());
+        assertFalse(report.results().stream().anyMatch(r -> !r.success() && r.cached()));
+    }
+
+    @Test
+    public void testWholeProgramRemovesUnreachableCode() throws IOException {
+        Path src = Files.createTempDirectory("jackwpo");
+        Files.writeString(src.resolve("Main.jack"), "class Main { function int main() { return B.f(2) + B.g(); } }");
+        Files.writeString(src.resolve("B.jack"),
+                "class B { function int f(int x) { return x + 1; } function int g() { do Output.printInt(1); return 3; } "
+                        + "function int h() { return 0; } }");
+        Files.writeString(src.resolve("C.jack"), "class C { function int g() { return 1; } }");
+
+        var compiler = new BatchCompiler(src.resolve("out"), 2, BatchCompiler.Target.VM).withWholeProgram(true);
+        var report = compiler.compile(src);
+        compiler.shutdown();
+        assertEquals(3, report.succeeded());
+        assertFalse(Files.exists(src.resolve("out/C.vm")));
+        var main = Files.readString(src.resolve("out/Main.vm"));
+        assertFalse(main.contains("call B.f"));
+        assertTrue(main.contains("call B.g 0\n"));
+        var b = Files.readString(src.resolve("out/B.vm"));
+        assertEquals("function B.g 0\npush constant 1\ncall Output.printInt 1\npop temp 0\npush constant 3\nreturn\n", b);
+    }
+}
@@ -0,0 +1,64 @@
+package br.ufma.ecp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ClassSkeletonTest extends TestSupport {
+
+    @Test
+    public void testSkeletonMatchesFullParse() throws IOException {
+        for (var file : List.of("Square/Main.jack", "Square/Square.jack", "Square/SquareGame.jack")) {
+            var source = fromFile(file);
+            var bytes = source.getBytes(StandardCharsets.UTF_8);
+            var full = new Parser(bytes);
+            full.generateVM();
+            full.parse();
+
+            var skeleton = new ClassSkeleton(bytes);
+            assertEquals(List.of(), skeleton.diagnostics());
+            assertEquals(full.signature(), skeleton.signature());
+            assertEquals(new HashSet<>(full.classVariables()), new HashSet<>(skeleton.classVariables()));
+            assertEquals(full.signature().subroutines().size(), skeleton.bodies().size());
+            for (var body : skeleton.bodies()) {
+                var text = new String(bytes, body.start(), body.end() - body.start(), StandardCharsets.UTF_8);
+                assertTrue(text.startsWith("{") && text.endsWith("}"));
+            }
+            assertTrue(full.XMLOutput().contains(skeleton.body(skeleton.bodies().size() - 1).XMLOutput()));
+            assertEquals(full.VMOutput(), skeleton.vm());
+        }
+    }
+
+    @Test
+    public void testBodyErrorsWaitForTheBody() {
+        var input = """
+            class A {
+              field int x;
+              method int f() {
+                if (x) { while (true) { let x = ; } }
+                return x;
+              }
+              function void g(int a, A b) { return; }
+            }
+            """;
+        var skeleton = new ClassSkeleton(input.getBytes(StandardCharsets.UTF_8));
+        assertEquals(List.of(), skeleton.diagnostics());
+        assertEquals("A|method int f();function void g(int,A)", skeleton.signature().toString());
+        assertEquals(List.of(4), skeleton.allDiagnostics().stream().map(Diagnostic::line).toList());
+        assertEquals("function A.g 0\npush constant 0\nreturn\n", skeleton.body(1).VMOutput());
+    }
+
+    @Test
+    public void testUnterminatedBody() {
+        var skeleton = new ClassSkeleton("class A { function void f() { if (x) { return; }".getBytes(StandardCharsets.UTF_8));
+        assertEquals(1, skeleton.diagnostics().size());
+        assertTrue(skeleton.diagnostics().get(0).message().contains("Expected RBRACE"));
+        assertEquals(0, skeleton.bodies().size());
+    }
+}
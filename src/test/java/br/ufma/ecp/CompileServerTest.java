@@ -0,0 +1,79 @@
+package br.ufma.ecp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class CompileServerTest extends TestSupport {
+
+    private static String request(String target, String name, String source) {
+        return "compile " + target + " " + name + " " + source.getBytes(StandardCharsets.UTF_8).length + "\n" + source;
+    }
+
+    @Test
+    public void testCompileRequests() throws IOException {
+        var square = fromFile("Square/Square.jack");
+        var input = request("vm", "Square.jack", square)
+                + request("xml", "Bad.jack", "class Bad { function void f() { let = 1; return; } }")
+                + "signature Square\n"
+                + "quit\n";
+
+        var output = new ByteArrayOutputStream();
+        var server = new CompileServer();
+        server.serve(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), output);
+
+        var lines = output.toString(StandardCharsets.UTF_8).split("\n");
+        assertTrue(lines[0].startsWith("ok "));
+        assertEquals("function Square.new 0", lines[1]);
+
+        var reply = output.toString(StandardCharsets.UTF_8);
+        assertTrue(reply.contains("error 1\nBad.jack: [line 1] Error at '=': "));
+        assertTrue(reply.contains("Square|constructor Square new(int,int,int);method void dispose()"));
+        assertEquals(10, server.signature("Square").subroutines().size());
+    }
+
+    @Test
+    public void testOutline() throws IOException {
+        var source = "class Ponto { field int x; method int x() { if (x) { return 1; } return x; } }";
+        var input = "outline Ponto.jack " + source.length() + "\n" + source + "signature Ponto\nquit\n";
+
+        var output = new ByteArrayOutputStream();
+        new CompileServer().serve(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), output);
+
+        var reply = output.toString(StandardCharsets.UTF_8);
+        var bodyStart = source.indexOf("{ if");
+        assertTrue(reply.startsWith("ok "));
+        assertTrue(reply.contains("\nPonto|method int x()\nmethod int x() " + bodyStart + " " + (source.length() - 2) + "\n"));
+        assertTrue(reply.endsWith("ok 20\nPonto|method int x()"));
+    }
+
+    @Test
+    public void testBadRequestsKeepServing() throws IOException {
+        var v1 = "class A { function int f() { return 1; } }";
+        var v2 = "class A { function int g(int x) { return x; } }";
+        var input = "compile vm A.jack abc\n"
+                + "outline A.jack -5\n"
+                + request("vm", "A.jack", "class A { function int f() { return 99999999999; } }")
+                + request("vm", "A.jack", v1) + request("vm", "A.jack", v2) + request("vm", "A.jack", v1)
+                + "signature A\nquit\n";
+
+        var output = new ByteArrayOutputStream();
+        var server = new CompileServer();
+        server.warmUp(1);
+        assertNull(server.signature("WarmUp"));
+        server.serve(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), output);
+
+        var reply = output.toString(StandardCharsets.UTF_8);
+        assertTrue(reply.startsWith("error 1\ninvalid length abc\nerror 1\ninvalid length -5\nerror 1\nA.jack: "));
+        // v1 volta do cache de saidas, mas a assinatura tem que ser a dele
+        assertTrue(reply.endsWith("ok 18\nA|function int f()"));
+        assertEquals("A|function int f()", server.signature("A").toString());
+    }
+}
@@ -0,0 +1,91 @@
+package br.ufma.ecp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class IncrementalParserTest extends TestSupport {
+
+    static void assertSameAsFullParse(IncrementalParser document) {
+        var full = new Parser(document.text().getBytes(StandardCharsets.UTF_8));
+        full.generateVM();
+        full.parse();
+        assertEquals(full.XMLOutput(), document.XMLOutput());
+        assertEquals(full.VMOutput(), document.VMOutput());
+        assertEquals(full.diagnostics().toString(), document.diagnostics().toString());
+        assertEquals(full.signature(), document.signature());
+    }
+
+    // substitui a primeira ocorrencia de target depois de after
+    static void replace(IncrementalParser document, String after, String target, String replacement) {
+        var text = document.text();
+        int offset = text.indexOf(target, text.indexOf(after));
+        document.edit(offset, target.length(), replacement);
+        assertSameAsFullParse(document);
+    }
+
+    @Test
+    public void testEditsMatchFullParse() throws IOException {
+        var document = new IncrementalParser(fromFile("Square/Square.jack").getBytes(StandardCharsets.UTF_8));
+        assertSameAsFullParse(document);
+
+        replace(document, "method void incSize()", "x + size", "x + size + 1");
+        assertEquals(1, document.reparsed());
+        // linhas a mais antes de um erro: as linhas dos diagnosticos das declaracoes seguintes mudam
+        replace(document, "method void draw()", "do Screen", "\n\n\ndo Screen");
+        replace(document, "method void moveUp()", "let y = y - 2;", "let y = ;");
+        assertEquals(1, document.diagnostics().size());
+        replace(document, "method void dispose()", "return;", "\n  return;");
+        replace(document, "method void moveUp()", "let y = ;", "let y = y - 2;");
+        assertEquals(1, document.reparsed());
+        assertEquals(0, document.diagnostics().size());
+    }
+
+    @Test
+    public void testClassVariablesReparseSubroutines() throws IOException {
+        var document = new IncrementalParser(fromFile("Square/Square.jack").getBytes(StandardCharsets.UTF_8));
+        // comentario no meio do field: as variaveis nao mudam
+        replace(document, "field int x", "field int x", "field /* pos */ int x");
+        assertEquals(1, document.reparsed());
+        // um field a mais antes de size muda o indice dele em todos os metodos
+        replace(document, "field int x", "int x, y;", "int x, z, y;");
+        assertEquals(1 + document.signature().subroutines().size(), document.reparsed());
+    }
+
+    @Test
+    public void testStructuralEditsFallBack() throws IOException {
+        var document = new IncrementalParser(fromFile("Square/Square.jack").getBytes(StandardCharsets.UTF_8));
+        // chave aberta a mais: o corpo engole o resto da classe
+        replace(document, "method void draw()", "{", "{ {");
+        assertEquals(-1, document.reparsed());
+        replace(document, "method void draw()", "{ {", "{");
+        assertEquals(-1, document.reparsed());
+        // uma declaracao virando duas
+        replace(document, "method void dispose()", "return;\n", "return;\n   }\n   function void f() {\n      return;\n");
+        assertEquals(-1, document.reparsed());
+        replace(document, "function void f()", "return;", "return 1;");
+        assertEquals(1, document.reparsed());
+        replace(document, "class Square", "Square", "Quadrado");
+        assertEquals(-1, document.reparsed());
+    }
+
+    @Test
+    public void testLargeFileReparsesOneDeclaration() {
+        var sb = new StringBuilder("class Big {\n  field int a, b;\n");
+        for (int i = 0; i < 2000; i++) {
+            sb.append("  method int f").append(i).append("(int n) {\n    var int r;\n")
+              .append("    let r = (a * n) + (b - ").append(i).append(");\n    return r;\n  }\n");
+        }
+        var document = new IncrementalParser(sb.append("}\n").toString().getBytes(StandardCharsets.UTF_8));
+        var text = document.text();
+        int offset = text.indexOf("(b - 1000)");
+        document.edit(offset, 0, "// nova linha\n");
+        assertEquals(1, document.reparsed());
+        document.edit(offset + 1, 3, "b + 7");
+        assertEquals(1, document.reparsed());
+        assertSameAsFullParse(document);
+    }
+}
@@ -1,12 +1,16 @@
 package br.ufma.ecp;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 import org.junit.Test;
 
+import br.ufma.ecp.output.StreamSink;
 import br.ufma.ecp.token.Token;
 import br.ufma.ecp.token.TokenType;
 
@@ -145,5 +149,377 @@ public class ParserTest extends TestSupport {
 
     }
 
+    @Test
+    public void testParseSquareFromTokenBuffer() throws IOException {
+        var tokens = new Scanner(mapFile("Square/Square.jack")).tokenize();
+        var parser = new Parser(tokens);
+        parser.parse();
+
+        var expectedResult = fromFile("Square/Square.xml").replaceAll("\\s+", "");
+        var result = parser.XMLOutput().replaceAll("\\s+", "");
+        assertEquals(expectedResult, result);
+    }
+
+    @Test
+    public void testParseStreamsToOutputStream() throws IOException {
+        var input = fromFile("Square/SquareGame.jack").getBytes(StandardCharsets.UTF_8);
+
+        var parser = new Parser(input);
+        parser.parse();
+
+        var stream = new ByteArrayOutputStream();
+        var streamed = new Parser(input);
+        streamed.setOutput(new StreamSink(stream));
+        streamed.parse();
+
+        assertEquals(parser.XMLOutput(), stream.toString(StandardCharsets.UTF_8));
+        assertEquals("", streamed.XMLOutput());
+    }
+
+    private static String compileVM(String input) {
+        var parser = new Parser(input.getBytes(StandardCharsets.UTF_8));
+        parser.setOutput(null);
+        parser.generateVM();
+        parser.parse();
+        return parser.VMOutput();
+    }
+
+    @Test
+    public void testVMFunctionWithLetAndReturn() {
+        var input = """
+            class Main {
+              function int soma(int a, int b) {
+                var int c;
+                let c = a + (b * 2);
+                return -c;
+              }
+            }
+            """;
+        var expectedResult = """
+            function Main.soma 1
+            push argument 0
+            push argument 1
+            push constant 2
+            call Math.multiply 2
+            add
+            pop local 0
+            push local 0
+            neg
+            return
+            """;
+        assertEquals(expectedResult, compileVM(input));
+    }
+
+    @Test
+    public void testVMConstructorMethodAndCalls() {
+        var input = """
+            class Ponto {
+              field int x, y;
+              static Ponto origem;
+              constructor Ponto new(int ax) {
+                let x = ax;
+                return this;
+              }
+              method void mover(Ponto p) {
+                do p.mover(origem);
+                do desenha();
+                do Output.printString("ok");
+                return;
+              }
+            }
+            """;
+        var expectedResult = """
+            function Ponto.new 0
+            push constant 2
+            call Memory.alloc 1
+            pop pointer 0
+            push argument 0
+            pop this 0
+            push pointer 0
+            return
+            function Ponto.mover 0
+            push argument 0
+            pop pointer 0
+            push argument 1
+            push static 0
+            call Ponto.mover 2
+            pop temp 0
+            push pointer 0
+            call Ponto.desenha 1
+            pop temp 0
+            push constant 2
+            call String.new 1
+            push constant 111
+            call String.appendChar 2
+            push constant 107
+            call String.appendChar 2
+            call Output.printString 1
+            pop temp 0
+            push constant 0
+            return
+            """;
+        assertEquals(expectedResult, compileVM(input));
+    }
+
+    @Test
+    public void testVMIfWhileAndArrays() {
+        var input = """
+            class Main {
+              function void main() {
+                var Array a;
+                var int i;
+                while (i < 10) {
+                  let a[i] = a[i] + 1;
+                  if (true) { let i = i + 1; } else { let i = 0; }
+                }
+                return;
+              }
+            }
+            """;
+        var expectedResult = """
+            function Main.main 2
+            label WHILE_EXP0
+            push local 1
+            push constant 10
+            lt
+            not
+            if-goto WHILE_END0
+            push local 0
+            push local 1
+            add
+            push local 0
+            push local 1
+            add
+            pop pointer 1
+            push that 0
+            push constant 1
+            add
+            pop temp 0
+            pop pointer 1
+            push temp 0
+            pop that 0
+            push constant 0
+            not
+            if-goto IF_TRUE0
+            goto IF_FALSE0
+            label IF_TRUE0
+            push local 1
+            push constant 1
+            add
+            pop local 1
+            goto IF_END0
+            label IF_FALSE0
+            push constant 0
+            pop local 1
+            label IF_END0
+            goto WHILE_EXP0
+            label WHILE_END0
+            push constant 0
+            return
+            """;
+        assertEquals(expectedResult, compileVM(input));
+    }
+
+    private static String compileFolded(String input) {
+        var parser = new Parser(input.getBytes(StandardCharsets.UTF_8));
+        parser.setOutput(null);
+        parser.generateVM();
+        parser.setConstantFolding(true);
+        parser.parse();
+        return parser.VMOutput();
+    }
+
+    @Test
+    public void testConstantFolding() {
+        var input = """
+            class Main {
+              function int f(int x) {
+                var int y;
+                let y = (2 + 3) * 4 - ~0;
+                let y = -(1 - 3) + (x * 1) + 0;
+                let y = 0 + (x * 8);
+                let y = Main.g() * 0 + (x & 0);
+                return 100 / 0;
+              }
+            }
+            """;
+        var expectedResult = """
+            function Main.f 1
+            push constant 21
+            pop local 0
+            push constant 2
+            push argument 0
+            add
+            pop local 0
+            push argument 0
+            pop temp 0
+            push temp 0
+            push temp 0
+            add
+            pop temp 0
+            push temp 0
+            push temp 0
+            add
+            pop temp 0
+            push temp 0
+            push temp 0
+            add
+            pop local 0
+            call Main.g 0
+            pop temp 0
+            push constant 0
+            pop local 0
+            push constant 100
+            push constant 0
+            call Math.divide 2
+            return
+            """;
+        assertEquals(expectedResult, compileFolded(input));
+    }
+
+    @Test
+    public void testDeadBranchesAreDropped() {
+        var input = """
+            class Main {
+              function void main() {
+                var int i;
+                if (true) { let i = 1; } else { let i = 2; }
+                if (1 > 2) { let i = 3; }
+                while (false) { let i = 4; }
+                while (~false) { let i = 5; }
+                return;
+              }
+            }
+            """;
+        var expectedResult = """
+            function Main.main 1
+            push constant 1
+            pop local 0
+            label WHILE_EXP1
+            push constant 5
+            pop local 0
+            goto WHILE_EXP1
+            label WHILE_END1
+            push constant 0
+            return
+            """;
+        assertEquals(expectedResult, compileFolded(input));
+    }
+
+    @Test
+    public void testReportsAllSyntaxErrors() {
+        var input = """
+            class Main {
+              field int x
+              function void main() {
+                let x = ;
+                do Output.printInt(1);
+                let = 2;
+                return;
+              }
+              method int ok() { return 1; }
+              method void bad( { return; }
+            }
+            """;
+        var parser = new Parser(input.getBytes(StandardCharsets.UTF_8));
+        parser.parse();
 
-}
\ No newline at end of file
+        var lines = parser.diagnostics().stream().map(Diagnostic::line).toList();
+        assertEquals(List.of(3, 4, 6, 10), lines);
+        assertEquals("ok", parser.signature().subroutines().get(1).name());
+    }
+
+    @Test
+    public void testUnterminatedCommentIsReported() {
+        var parser = new Parser("class A {\n  /* sem fim\n\n  do f();\n".getBytes(StandardCharsets.UTF_8));
+        parser.parse();
+
+        assertEquals(1, parser.diagnostics().size());
+        assertEquals("unterminated comment", parser.diagnostics().get(0).message());
+        // a linha do "/*", nao a ultima do arquivo
+        assertEquals(2, parser.diagnostics().get(0).line());
+    }
+
+    @Test
+    public void testIntegerConstantOutOfRange() {
+        var parser = new Parser("class A { function int f() { return 99999999999 + 32767 + 32768; } }"
+                .getBytes(StandardCharsets.UTF_8));
+        parser.setOutput(null);
+        parser.generateVM();
+        parser.parse();
+
+        assertEquals(List.of("99999999999", "32768"), parser.diagnostics().stream().map(Diagnostic::where).toList());
+        assertTrue(parser.VMOutput().contains("push constant 32767\n"));
+    }
+
+    @Test
+    public void testDeepExpressionsDoNotOverflowTheStack() {
+        int depth = 200_000;
+        var input = "class Main { function int f(Array a) { return "
+                + "(".repeat(depth) + "-~".repeat(depth) + "a[Main.g(1)]" + ")".repeat(depth) + " + 2; } }";
+        var parser = new Parser(input.getBytes(StandardCharsets.UTF_8));
+        parser.setOutput(null);
+        parser.generateVM();
+        parser.parse();
+
+        assertEquals(List.of(), parser.diagnostics());
+        var vm = parser.VMOutput();
+        assertEquals(depth * 2 + 10, vm.split("\n").length);
+        assertTrue(vm.endsWith("neg\npush constant 2\nadd\nreturn\n"));
+    }
+
+    private static String compileWithPrecedence(String input, boolean folding) {
+        var parser = new Parser(input.getBytes(StandardCharsets.UTF_8));
+        parser.generateVM();
+        parser.setConstantFolding(folding);
+        parser.setOperatorPrecedence(true);
+        parser.parse();
+        return parser.VMOutput();
+    }
+
+    @Test
+    public void testOperatorPrecedence() {
+        var input = """
+            class Main {
+              function int f(int x) {
+                return 1 + x * 3 - 8 / 2 < 5 & ~x | (1 + 2) * 3;
+              }
+            }
+            """;
+        // ((1 + (x * 3)) - (8 / 2)) < 5) & ~x) | ((1 + 2) * 3)
+        var expectedResult = """
+            function Main.f 0
+            push constant 1
+            push argument 0
+            push constant 3
+            call Math.multiply 2
+            add
+            push constant 8
+            push constant 2
+            call Math.divide 2
+            sub
+            push constant 5
+            lt
+            push argument 0
+            not
+            and
+            push constant 1
+            push constant 2
+            add
+            push constant 3
+            call Math.multiply 2
+            or
+            return
+            """;
+        assertEquals(expectedResult, compileWithPrecedence(input, false));
+        assertEquals("function Main.f 0\npush constant 9\nreturn\n",
+                compileWithPrecedence("class Main { function int f() { return 3 + 2 * 3 / 1; } }", true));
+        // o XML so reflete a gramatica: igual com e sem precedencia
+        var plain = new Parser(input.getBytes(StandardCharsets.UTF_8));
+        plain.parse();
+        var ordered = new Parser(input.getBytes(StandardCharsets.UTF_8));
+        ordered.setOperatorPrecedence(true);
+        ordered.parse();
+        assertEquals(plain.XMLOutput(), ordered.XMLOutput());
+    }
+}
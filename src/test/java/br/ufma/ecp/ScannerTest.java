@@ -1,12 +1,17 @@
 package br.ufma.ecp;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
+import org.junit.Assume;
 import org.junit.Test;
 
+import br.ufma.ecp.token.NamePool;
 import br.ufma.ecp.token.Token;
 import br.ufma.ecp.token.TokenType;
 
@@ -63,6 +68,146 @@ public class ScannerTest extends TestSupport {
         assertEquals(expectedResult, result.toString());
     }
 
-    
-    
+    @Test
+    public void testScannerWithMappedSquare() throws IOException {
+        var expectedResult =  fromFile("Square/SquareT.xml");
+
+        var scanner = new Scanner(mapFile("Square/Square.jack"));
+        var result = new StringBuilder();
+
+        result.append("<tokens>\r\n");
+
+        for (Token tk = scanner.nextToken(); tk.type !=TokenType.EOF; tk = scanner.nextToken()) {
+            result.append(String.format("%s\r\n",tk.toString()));
+        }
+
+        result.append("</tokens>\r\n");
+        assertEquals(expectedResult, result.toString());
+    }
+
+    @Test
+    public void testScannerWithDirectBuffer() {
+        var bytes = "let x = \"ola\";".getBytes(StandardCharsets.UTF_8);
+        var buffer = ByteBuffer.allocateDirect(bytes.length + 4);
+        buffer.put(new byte[] {'x', 'x', 'x', ' '}).put(bytes).flip();
+        buffer.position(4);
+
+        var scanner = new Scanner(buffer);
+        assertEquals(TokenType.LET, scanner.nextToken().type);
+        assertEquals("x", scanner.nextToken().lexeme);
+        assertEquals(TokenType.EQ, scanner.nextToken().type);
+        assertEquals("ola", scanner.nextToken().lexeme);
+        assertEquals(TokenType.SEMICOLON, scanner.nextToken().type);
+        assertEquals(TokenType.EOF, scanner.nextToken().type);
+    }
+
+    @Test
+    public void testTokenizeMatchesNextToken() throws IOException {
+        var input = fromFile("Square/SquareGame.jack").getBytes(StandardCharsets.UTF_8);
+
+        var tokens = new Scanner(input).tokenize();
+        var scanner = new Scanner(input);
+
+        for (int i = 0; i < tokens.size(); i++) {
+            Token tk = scanner.nextToken();
+            assertEquals(tk.type, tokens.type(i));
+            assertEquals(tk.lexeme, tokens.lexeme(i));
+            assertEquals(tk.line, tokens.line(i));
+        }
+        assertEquals(TokenType.EOF, tokens.type(tokens.size() - 1));
+    }
+
+    @Test
+    public void testKeywords() {
+        String input = "class constructor function method field static var int char boolean void "
+                + "true false null this let do if else while return";
+        Scanner scan = new Scanner(input.getBytes(StandardCharsets.UTF_8));
+        for (Token tk = scan.nextToken(); tk.type != TokenType.EOF; tk = scan.nextToken()) {
+            assertTrue(tk.lexeme, TokenType.isKeyword(tk.type));
+            assertEquals(tk.type.value, tk.lexeme);
+        }
+    }
+
+    @Test
+    public void testKeywordPrefixesAreIdentifiers() {
+        String input = "d iff lets classe clas fields falsy thiss truth constructors Do _if if2";
+        Scanner scan = new Scanner(input.getBytes(StandardCharsets.UTF_8));
+        for (Token tk = scan.nextToken(); tk.type != TokenType.EOF; tk = scan.nextToken()) {
+            assertEquals(tk.lexeme, TokenType.IDENT, tk.type);
+        }
+    }
+
+    @Test
+    public void testIdentifiersAreInterned() {
+        Scanner scan = new Scanner("game game.run(game)".getBytes(StandardCharsets.UTF_8));
+        Token first = scan.nextToken();
+        Token second = scan.nextToken();
+        scan.nextToken();
+        Token run = scan.nextToken();
+        scan.nextToken();
+        Token third = scan.nextToken();
+
+        assertSame(first.lexeme, second.lexeme);
+        assertSame(first.lexeme, third.lexeme);
+        assertEquals("run", run.lexeme);
+    }
+
+    @Test
+    public void testCommentsAndLineNumbers() {
+        String input = "/*****\n * doc\n **/ a // fim de linha\n/**/b/*/ */c\n\n  \"x / y\" / 42@";
+        Scanner scan = new Scanner(input.getBytes(StandardCharsets.UTF_8));
+        String[] lexemes = { "a", "b", "c", "x / y", "/", "42", "@" };
+        int[] lines = { 3, 4, 4, 6, 6, 6, 6 };
+        for (int i = 0; i < lexemes.length; i++) {
+            Token tk = scan.nextToken();
+            assertEquals(lexemes[i], tk.lexeme);
+            assertEquals(tk.lexeme, lines[i], tk.line);
+        }
+        assertEquals(TokenType.ILLEGAL, new Scanner("@".getBytes(StandardCharsets.UTF_8)).nextToken().type);
+        assertEquals(TokenType.EOF, scan.nextToken().type);
+    }
+
+    @Test
+    public void testSmallWindowsMatchWholeInput() throws IOException {
+        String tricky = "class A { let x = 12345; /* " + "*\n".repeat(40) + "*/ let s = \"" + "a".repeat(90)
+                + "\"; // fim\n}\n/ \"sem fim";
+        for (String input : new String[] { fromFile("Square/SquareGame.jack"), tricky, tricky + "/* sem fim\n" }) {
+            var bytes = ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8));
+            var expected = new Scanner(bytes).tokenize();
+            for (var search : new ByteSearch[] { ByteSearch.SCALAR, ByteSearch.select() }) {
+                for (int window : new int[] { 1, 2, 3, 7, 16, 64 }) {
+                    var actual = new Scanner(bytes, new NamePool(), search, window).tokenize();
+                    assertEquals(expected.size(), actual.size());
+                    for (int i = 0; i < expected.size(); i++) {
+                        assertEquals(expected.type(i), actual.type(i));
+                        assertEquals(expected.start(i), actual.start(i));
+                        assertEquals(expected.end(i), actual.end(i));
+                        assertEquals(expected.line(i), actual.line(i));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testVectorSearchMatchesScalar() throws IOException {
+        // a busca vetorial e opcional: sem --add-modules jdk.incubator.vector (na IDE) o teste e ignorado
+        Assume.assumeTrue(ByteSearch.vectorAvailable());
+        String tricky = "class A {" + " ".repeat(100) + "\n\n\t\t/*" + "*\n".repeat(50) + "x*/ let s = \""
+                + "a".repeat(70) + "\"; // " + "c".repeat(80) + "\n" + "\n".repeat(65) + "}/* sem fim\n\n";
+        for (String input : new String[] { fromFile("Square/SquareGame.jack"), fromFile("Square/Square.jack"), tricky }) {
+            var bytes = ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8));
+            var scalar = new Scanner(bytes, new NamePool(), ByteSearch.SCALAR);
+            var vector = new Scanner(bytes, new NamePool(), ByteSearch.vector());
+            Token expected;
+            do {
+                expected = scalar.nextToken();
+                Token actual = vector.nextToken();
+                assertEquals(expected.type, actual.type);
+                assertEquals(expected.lexeme, actual.lexeme);
+                assertEquals(expected.lexeme, expected.line, actual.line);
+            } while (expected.type != TokenType.EOF);
+        }
+    }
+
 }
@@ -1,6 +1,7 @@
 package br.ufma.ecp;
 
 import java.io.IOException;
+import java.nio.MappedByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 
@@ -11,5 +12,9 @@ public class TestSupport {
         return Files.readString(Paths.get("src/test/resources/"+ path));
     }
 
+    public static MappedByteBuffer mapFile(String path) throws IOException {
+        return Sources.map(Paths.get("src/test/resources/"+ path));
+    }
+
     
 }
@@ -0,0 +1,81 @@
+package br.ufma.ecp.ast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import br.ufma.ecp.Parser;
+import br.ufma.ecp.TestSupport;
+import br.ufma.ecp.output.StringSink;
+import br.ufma.ecp.token.TokenType;
+
+public class AstTest extends TestSupport {
+
+    @Test
+    public void testAstPrintsSameXmlAsParser() throws IOException {
+        var ast = new Ast(16);
+        for (String file : new String[] { "Square/Main", "Square/Square", "Square/SquareGame" }) {
+            ast.reset();
+            var parser = new Parser(fromFile(file + ".jack").getBytes(StandardCharsets.UTF_8));
+            parser.buildAst(ast);
+            parser.parse();
+
+            var sink = new StringSink();
+            new AstXmlPrinter(ast, sink).print();
+            assertEquals(parser.XMLOutput(), sink.toString());
+        }
+    }
+
+    @Test
+    public void testAstShape() {
+        var ast = new Ast();
+        var parser = new Parser("class A { field int x; }".getBytes(StandardCharsets.UTF_8));
+        parser.setOutput(null);
+        parser.buildAst(ast);
+        parser.parse();
+
+        int root = ast.root();
+        assertEquals(NodeKind.CLASS, ast.kind(root));
+        assertEquals(5, ast.childCount(root));
+
+        int name = ast.nextSibling(ast.firstChild(root));
+        assertEquals(TokenType.IDENT, ast.tokenType(name));
+        assertEquals("A", ast.text(name));
+
+        int varDec = ast.nextSibling(ast.nextSibling(name));
+        assertEquals(NodeKind.CLASS_VAR_DEC, ast.kind(varDec));
+        assertEquals(root, ast.parent(varDec));
+        assertEquals(4, ast.childCount(varDec));
+    }
+
+    @Test
+    public void testBrokenStatementLeavesNoPartialNode() {
+        var ast = new Ast();
+        var parser = new Parser("class A { function void f() { let x = ; return; } }".getBytes(StandardCharsets.UTF_8));
+        parser.setOutput(null);
+        parser.buildAst(ast);
+        parser.parse();
+        assertEquals(1, parser.diagnostics().size());
+
+        // o let quebrado some da arvore: statements fica so com o return
+        for (int node = 0; node < ast.size(); node++) {
+            assertNotEquals(NodeKind.LET_STATEMENT, ast.kind(node));
+        }
+        int statements = find(ast, NodeKind.STATEMENTS);
+        assertEquals(1, ast.childCount(statements));
+        assertEquals(NodeKind.RETURN_STATEMENT, ast.kind(ast.firstChild(statements)));
+    }
+
+    private static int find(Ast ast, NodeKind kind) {
+        for (int node = 0; node < ast.size(); node++) {
+            if (ast.kind(node) == kind) {
+                return node;
+            }
+        }
+        return Ast.NONE;
+    }
+}
@@ -0,0 +1,101 @@
+package br.ufma.ecp.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+import br.ufma.ecp.BatchCompiler;
+import br.ufma.ecp.Scanner;
+import br.ufma.ecp.ast.NodeKind;
+import br.ufma.ecp.token.TokenType;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+
+public class CompileMetricsTest {
+
+    @Test
+    public void testBatchMetrics() throws IOException {
+        Path out = Files.createTempDirectory("jackmetrics");
+        var compiler = new BatchCompiler(out, 2).withMetrics(true);
+        var report = compiler.compile(Paths.get("src/test/resources/Square"));
+        compiler.shutdown();
+
+        assertEquals(3, report.metrics().size());
+        for (var result : report.results()) {
+            var metrics = result.metrics();
+            var scanner = new Scanner(Files.readAllBytes(result.source()));
+            long tokens = 0;
+            long idents = 0;
+            TokenType type;
+            do {
+                type = scanner.nextToken().type;
+                tokens++;
+                idents += type == TokenType.IDENT ? 1 : 0;
+            } while (type != TokenType.EOF);
+            assertEquals(tokens, metrics.tokenCount());
+            assertEquals(idents, metrics.tokens(TokenType.IDENT));
+            assertEquals(1, metrics.nodes(NodeKind.CLASS));
+            assertEquals(0, metrics.parseErrors());
+            assertEquals(Files.size(result.output()), metrics.bytesEmitted());
+            assertEquals(metrics.totalNanos(), metrics.scanNanos() + metrics.parseNanos() + metrics.emitNanos());
+        }
+
+        var json = report.metricsJson();
+        assertTrue(json.contains("\"source\": \"src/test/resources/Square/Main.jack\""));
+        assertTrue(json.contains("\"files\": 3,"));
+        assertTrue(json.contains("\"astNodes\": {\"class\": 3, "));
+    }
+
+    @Test
+    public void testMetricsOffByDefault() throws IOException {
+        Path out = Files.createTempDirectory("jacknometrics");
+        var compiler = new BatchCompiler(out, 1);
+        var report = compiler.compile(Paths.get("src/test/resources/Square/Main.jack"));
+        compiler.shutdown();
+        assertNull(report.results().get(0).metrics());
+        assertTrue(report.metricsJson().startsWith("{\n  \"files\": [],\n  \"total\": {\n    \"files\": 0,"));
+    }
+
+    @Test
+    public void testParseErrorsAreCounted() throws IOException {
+        Path src = Files.createTempDirectory("jackmetricserr");
+        Files.writeString(src.resolve("Bad.jack"), "class Bad { function void f() { let = 1; do ; return; } }");
+        var compiler = new BatchCompiler(src.resolve("out"), 1).withMetrics(true);
+        var report = compiler.compile(src);
+        compiler.shutdown();
+        assertEquals(2, report.metrics().get(0).parseErrors());
+    }
+
+    @Test
+    public void testJfrEvents() throws IOException {
+        Path out = Files.createTempDirectory("jackjfr");
+        Path dump = out.resolve("compile.jfr");
+        try (var recording = new Recording()) {
+            recording.enable(CompileEvent.class);
+            recording.start();
+            // sem withMetrics: a gravacao sozinha liga as medidas
+            var compiler = new BatchCompiler(out, 1, BatchCompiler.Target.VM);
+            compiler.compile(Paths.get("src/test/resources/Square"));
+            compiler.shutdown();
+            recording.stop();
+            recording.dump(dump);
+        }
+        var events = RecordingFile.readAllEvents(dump).stream()
+                .filter(e -> e.getEventType().getName().equals("br.ufma.ecp.Compile"))
+                .toList();
+        assertEquals(3, events.size());
+        for (var e : events) {
+            assertEquals("VM", e.getString("target"));
+            assertTrue(e.getBoolean("success"));
+            assertTrue(e.getLong("tokens") > 0);
+            assertTrue(e.getLong("bytesEmitted") > 0);
+        }
+    }
+}
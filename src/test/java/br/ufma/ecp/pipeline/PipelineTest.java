@@ -0,0 +1,112 @@
+package br.ufma.ecp.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+import br.ufma.ecp.BatchCompiler;
+import br.ufma.ecp.Parser;
+import br.ufma.ecp.Scanner;
+import br.ufma.ecp.output.StringSink;
+import br.ufma.ecp.token.Token;
+import br.ufma.ecp.token.TokenType;
+
+public class PipelineTest {
+
+    // classe grande o bastante para ocupar varios lotes do TokenPipeline
+    static String bigClass(int functions) {
+        var sb = new StringBuilder("class Grande {\n  field int x;\n");
+        for (int i = 0; i < functions; i++) {
+            sb.append("  /* funcao ").append(i).append(" */\n");
+            sb.append("  function int f").append(i).append("(int a, int b) {\n");
+            sb.append("    var int c; // comentario\n");
+            sb.append("    let c = a * ").append(i).append(" + (b - 1);\n");
+            sb.append("    if (c > 10) { do Output.printString(\"grande\"); } else { let c = -c; }\n");
+            sb.append("    return c;\n  }\n");
+        }
+        return sb.append("}\n").toString();
+    }
+
+    @Test
+    public void testTokensMatchScanner() {
+        var input = bigClass(300).getBytes(StandardCharsets.UTF_8);
+        var scanner = new Scanner(input);
+        try (var pipeline = new TokenPipeline(ByteBuffer.wrap(input))) {
+            Token expected;
+            int count = 0;
+            do {
+                expected = scanner.nextToken();
+                var actual = pipeline.nextToken();
+                assertEquals(expected.type, actual.type);
+                assertEquals(expected.lexeme, actual.lexeme);
+                assertEquals(expected.line, actual.line);
+                count++;
+            } while (expected.type != TokenType.EOF);
+            assertTrue(count > TokenPipeline.BATCH_SIZE * TokenPipeline.BATCHES);
+            // depois do fim continua devolvendo EOF, como o Scanner
+            assertEquals(TokenType.EOF, pipeline.nextToken().type);
+        }
+    }
+
+    @Test
+    public void testPipelinedParseProducesSameXML() {
+        var input = bigClass(200).getBytes(StandardCharsets.UTF_8);
+        var plain = new Parser(input);
+        plain.parse();
+
+        var out = new StringSink();
+        try (var tokens = new TokenPipeline(ByteBuffer.wrap(input)); var sink = new AsyncSink(out)) {
+            var parser = new Parser(tokens);
+            parser.setOutput(sink);
+            parser.parse();
+        }
+        assertEquals(plain.XMLOutput(), out.toString());
+    }
+
+    @Test
+    public void testBatchCompilerPipelinedOutputIsIdentical() throws IOException {
+        Path plainOut = Files.createTempDirectory("jackplain");
+        Path pipedOut = Files.createTempDirectory("jackpiped");
+        for (var target : BatchCompiler.Target.values()) {
+            var plain = new BatchCompiler(plainOut, 2, target);
+            assertEquals(0, plain.compile(Paths.get("src/test/resources/Square")).failed());
+            plain.shutdown();
+            var piped = new BatchCompiler(pipedOut, 2, target).withPipelineThreshold(0);
+            assertEquals(0, piped.compile(Paths.get("src/test/resources/Square")).failed());
+            piped.shutdown();
+        }
+        for (var name : new String[] { "Main", "Square", "SquareGame" }) {
+            for (var ext : new String[] { ".xml", ".vm" }) {
+                assertEquals(Files.readString(plainOut.resolve(name + ext)),
+                        Files.readString(pipedOut.resolve(name + ext)));
+            }
+        }
+    }
+
+    @Test
+    public void testRingKeepsOrderAcrossThreads() throws InterruptedException {
+        var ring = new SpscRing<Integer>(16);
+        var producer = new Thread(() -> {
+            for (int i = 0; i < 100_000; i++) {
+                ring.put(i);
+            }
+            ring.close();
+        });
+        producer.start();
+        int expected = 0;
+        Integer item;
+        while ((item = ring.take()) != null) {
+            assertEquals(expected++, item.intValue());
+        }
+        producer.join();
+        assertEquals(100_000, expected);
+    }
+}
@@ -0,0 +1,150 @@
+package br.ufma.ecp.semantic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import br.ufma.ecp.Diagnostic;
+import br.ufma.ecp.Parser;
+import br.ufma.ecp.TestSupport;
+
+public class SemanticCheckerTest {
+
+    // fase 1 para todas as classes, depois fase 2 para cada uma; devolve os erros de todas
+    static List<String> check(String... classes) {
+        var index = new SymbolIndex();
+        var all = new ArrayList<ClassUsages>();
+        for (var input : classes) {
+            var parser = new Parser(input.getBytes(StandardCharsets.UTF_8));
+            var usages = new ClassUsages();
+            parser.collectUsages(usages);
+            parser.parse();
+            assertFalse(parser.diagnostics().toString(), parser.hasErrors());
+            index.add(ClassSymbols.of(parser.signature(), parser.classVariables()));
+            all.add(usages);
+        }
+        var checker = new SemanticChecker(index);
+        return all.stream().flatMap(u -> checker.check(u).stream()).map(Diagnostic::toString)
+                .collect(Collectors.toList());
+    }
+
+    static final String PONTO = """
+        class Ponto {
+          field int x, y;
+          static int criados;
+          constructor Ponto new(int ax, int ay) {
+            let x = ax;
+            let y = ay;
+            let criados = criados + 1;
+            return this;
+          }
+          method int x() { return x; }
+          method void soma(Ponto outro) {
+            let x = x + outro.x();
+            return;
+          }
+          function int criados() { return criados; }
+        }
+        """;
+
+    @Test
+    public void testValidProgramHasNoErrors() {
+        var main = """
+            class Main {
+              function void main() {
+                var Ponto p;
+                var Array a;
+                let p = Ponto.new(1, 2);
+                do p.soma(Ponto.new(3, 4));
+                do p.soma(null);
+                let a = Array.new(2);
+                let a[0] = p;
+                do p.soma(a[0]);
+                do Output.printInt(p.x() + Ponto.criados());
+                do Output.printString("ok");
+                do Memory.deAlloc(p);
+                return;
+              }
+            }
+            """;
+        assertEquals(List.of(), check(main, PONTO));
+    }
+
+    @Test
+    public void testSquareHasNoErrors() throws IOException {
+        assertEquals(List.of(), check(TestSupport.fromFile("Square/Main.jack"),
+                TestSupport.fromFile("Square/Square.jack"), TestSupport.fromFile("Square/SquareGame.jack")));
+    }
+
+    @Test
+    public void testCallErrors() {
+        var main = """
+            class Main {
+              function void main() {
+                var Ponto p;
+                var int n;
+                let p = Ponto.novo(1, 2);
+                let p = Ponto.new(1);
+                do Ponto.soma(p);
+                do p.criados();
+                do n.soma(p);
+                do Reta.new();
+                do p.soma("texto");
+                do desenha();
+                return;
+              }
+              method void desenha() { return; }
+            }
+            """;
+        var errors = check(main, PONTO);
+        assertEquals(8, errors.size());
+        assertEquals("[line 5] Error at 'Ponto.novo': undefined subroutine Ponto.novo", errors.get(0));
+        assertEquals("[line 6] Error at 'Ponto.new': Ponto.new expects 2 argument(s) but got 1", errors.get(1));
+        assertEquals("[line 7] Error at 'Ponto.soma': method Ponto.soma called as a function", errors.get(2));
+        assertEquals("[line 8] Error at 'Ponto.criados': function Ponto.criados called as a method", errors.get(3));
+        assertEquals("[line 9] Error at 'int.soma': int is not a class", errors.get(4));
+        assertEquals("[line 10] Error at 'Reta.new': unknown class Reta", errors.get(5));
+        assertEquals("[line 11] Error at 'Ponto.soma': argument 1 of Ponto.soma expects Ponto but got String",
+                errors.get(6));
+        assertEquals("[line 12] Error at 'Main.desenha': method Main.desenha called from a function", errors.get(7));
+    }
+
+    @Test
+    public void testTypesAndVariables() {
+        var input = """
+            class Main {
+              field Reta r;
+              field int x;
+              function void main() {
+                let x = 1;
+                do Memory.deAlloc(this);
+                let y = 2;
+                return;
+              }
+            }
+            """;
+        var errors = check(input);
+        assertEquals(List.of(
+                "[line 2] Error at 'Reta': unknown type Reta",
+                "[line 5] Error at 'x': field x cannot be used in a function",
+                "[line 6] Error at 'this': this cannot be used in a function",
+                "[line 7] Error at 'y': undefined variable y"), errors);
+    }
+
+    @Test
+    public void testProgramClassReplacesOs() {
+        var math = "class Math { function int dobro(int x) { return x + x; } }";
+        var main = "class Main { function void main() { do Math.dobro(2); return; } }";
+        assertEquals(List.of(), check(main, math));
+        assertTrue(check("class Main { function void main() { do Math.dobro(2); return; } }").get(0)
+                .contains("undefined subroutine Math.dobro"));
+    }
+}
@@ -0,0 +1,212 @@
+package br.ufma.ecp.vm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HackBackendTest {
+
+    // OS minimo em Jack: o HackBackend so traduz programas completos
+    static final String MATH = """
+        class Math {
+          function int multiply(int x, int y) {
+            var int sum, bit;
+            let sum = 0;
+            let bit = 1;
+            while (~(bit = 0)) {
+              if (~((y & bit) = 0)) {
+                let sum = sum + x;
+              }
+              let x = x + x;
+              let bit = bit + bit;
+            }
+            return sum;
+          }
+          function int divide(int x, int y) {
+            var int q;
+            var boolean neg;
+            let neg = false;
+            if (x < 0) { let x = -x; let neg = ~neg; }
+            if (y < 0) { let y = -y; let neg = ~neg; }
+            let q = 0;
+            while (~(x < y)) {
+              let x = x - y;
+              let q = q + 1;
+            }
+            if (neg) { return -q; }
+            return q;
+          }
+        }
+        """;
+
+    static final String MEMORY = """
+        class Memory {
+          static int free;
+          function int alloc(int size) {
+            var int p;
+            if (free = 0) { let free = 2048; }
+            let p = free;
+            let free = free + size;
+            return p;
+          }
+        }
+        """;
+
+    static final String ARRAY = """
+        class Array {
+          function Array new(int size) { return Memory.alloc(size); }
+        }
+        """;
+
+    static final String MAIN = """
+        class Main {
+          function int main() {
+            var Array a;
+            var int i, sum, big;
+            var Contador c;
+            let a = Array.new(10);
+            let i = 0;
+            while (i < 10) {
+              let a[i] = i * i;
+              let i = i + 1;
+            }
+            let sum = 0;
+            let i = 9;
+            while (~(i < 0)) {
+              let sum = sum + a[i];
+              let i = i - 1;
+            }
+            if ((sum = 285) & (Main.fatorial(7) = 5040)) {
+              let sum = sum + 1;
+            } else {
+              let sum = 0;
+            }
+            let c = Contador.new(2 * 8 + 1);
+            do c.incrementa();
+            do c.incrementa();
+            let big = 200;
+            if (big > (-big)) {
+              let sum = sum | 1024;
+            }
+            return sum + (100 / -7) - Main.fatorial(5) + c.valor() + Contador.total();
+          }
+          function int fatorial(int n) {
+            if (n < 2) {
+              return 1;
+            }
+            return n * Main.fatorial(n - 1);
+          }
+        }
+        """;
+
+    static String[] program(boolean optimize) {
+        return new String[] {
+            VMInterpreterTest.compile(MAIN, optimize), VMInterpreterTest.compile(VMInterpreterTest.CONTADOR, optimize),
+            VMInterpreterTest.compile(MATH, optimize), VMInterpreterTest.compile(MEMORY, optimize),
+            VMInterpreterTest.compile(ARRAY, optimize)
+        };
+    }
+
+    static HackCpu run(String... vmFiles) {
+        var backend = new HackBackend();
+        for (var vm : vmFiles) {
+            backend.load(vm);
+        }
+        var cpu = new HackCpu(HackAssembler.assemble(backend.translate()));
+        cpu.run(10_000_000);
+        return cpu;
+    }
+
+    @Test
+    public void testAssembler() {
+        var asm = """
+            // Add.asm
+            @2
+            D=A
+            @3
+            D=D+A
+            @0
+            M=D
+            (LOOP)
+            @i
+            M=M+1
+            @LOOP
+            0;JMP
+            """;
+        assertEquals("""
+            0000000000000010
+            1110110000010000
+            0000000000000011
+            1110000010010000
+            0000000000000000
+            1110001100001000
+            0000000000010000
+            1111110111001000
+            0000000000000110
+            1110101010000111
+            """, HackAssembler.toHack(HackAssembler.assemble(asm)));
+    }
+
+    @Test
+    public void testRunsLikeInterpreter() {
+        for (var optimize : new boolean[] { false, true }) {
+            var vm = new VMInterpreter();
+            for (var file : program(optimize)) {
+                vm.load(file);
+            }
+            vm.run(1_000_000);
+            assertTrue(vm.finished());
+
+            var cpu = run(program(optimize));
+            assertEquals(vm.result(), cpu.ram[256]);
+            assertEquals(257, cpu.ram[0]);
+        }
+    }
+
+    @Test
+    public void testTopOfStackStaysInD() {
+        var asm = new HackBackend().load("""
+            function Main.main 2
+            push local 0
+            pop local 1
+            push argument 0
+            push constant 1
+            add
+            pop static 3
+            push constant 0
+            return
+            """).translate();
+        var body = asm.substring(asm.indexOf("(Main.main)"), asm.indexOf("(VM$CALL)"));
+        assertEquals(String.join("\n",
+                "(Main.main)", "@SP", "A=M", "M=0", "A=A+1", "M=0", "D=A+1", "@SP", "M=D",
+                "@LCL", "A=M", "D=M",
+                "@LCL", "A=M+1", "M=D",
+                "@ARG", "A=M", "D=M", "D=D+1",
+                "@Main.3", "M=D",
+                "D=0", "@VM$RETURN", "0;JMP", ""), body);
+    }
+
+    @Test
+    public void testComparisonJumpsDirectly() {
+        var asm = new HackBackend().load("""
+            function Main.main 0
+            label WHILE_EXP0
+            push argument 0
+            push constant 10
+            lt
+            not
+            if-goto WHILE_END0
+            goto WHILE_EXP0
+            label WHILE_END0
+            push constant 0
+            return
+            """).translate();
+        assertTrue(asm.contains("@ARG\nA=M\nD=M\n@10\nD=D-A\n@Main.main$WHILE_END0\nD;JGE\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRequiresWholeProgram() {
+        new HackBackend().load(VMInterpreterTest.compile(MAIN, false)).translate();
+    }
+}
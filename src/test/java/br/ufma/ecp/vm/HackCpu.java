@@ -0,0 +1,74 @@
+package br.ufma.ecp.vm;
+
+// CPU do Hack para os testes: executa a ROM gerada pelo HackAssembler, com a ALU
+// descrita pelos bits zx nx zy ny f no (como o CPUEmulator), sem tela nem teclado
+class HackCpu {
+
+    final short[] ram = new short[VMInterpreter.RAM_SIZE];
+    private final short[] rom;
+    private int a;
+    private int d;
+    private int pc;
+
+    HackCpu(short[] rom) {
+        this.rom = rom;
+    }
+
+    // executa ate o laco "@X; 0;JMP" sobre si mesmo (fim do programa) ou maxCycles; devolve os ciclos
+    long run(long maxCycles) {
+        long cycles = 0;
+        while (cycles < maxCycles) {
+            int instruction = rom[pc] & 0xFFFF;
+            cycles++;
+            if ((instruction & 0x8000) == 0) {
+                a = instruction;
+                pc++;
+                continue;
+            }
+            int x = d;
+            int y = (instruction & 0x1000) != 0 ? ram[a] : (short) a;
+            int out = alu(instruction >> 6 & 0x3F, x, y);
+            int jump = instruction & 7;
+            boolean taken = (jump & 4) != 0 && out < 0 || (jump & 2) != 0 && out == 0 || (jump & 1) != 0 && out > 0;
+            if ((instruction & 0x08) != 0) {
+                ram[a] = (short) out;
+            }
+            int target = a;
+            if ((instruction & 0x20) != 0) {
+                a = out & 0xFFFF;
+            }
+            if ((instruction & 0x10) != 0) {
+                d = out;
+            }
+            if (taken) {
+                if (target == pc - 1 && (rom[pc - 1] & 0x8000) == 0 && (rom[pc - 1] & 0xFFFF) == pc - 1) {
+                    return cycles;
+                }
+                pc = target;
+            } else {
+                pc++;
+            }
+        }
+        return cycles;
+    }
+
+    private static int alu(int control, int x, int y) {
+        if ((control & 0x20) != 0) {
+            x = 0;
+        }
+        if ((control & 0x10) != 0) {
+            x = ~x;
+        }
+        if ((control & 0x08) != 0) {
+            y = 0;
+        }
+        if ((control & 0x04) != 0) {
+            y = ~y;
+        }
+        int out = (control & 0x02) != 0 ? x + y : x & y;
+        if ((control & 0x01) != 0) {
+            out = ~out;
+        }
+        return (short) out;
+    }
+}
@@ -0,0 +1,88 @@
+package br.ufma.ecp.vm;
+
+import static br.ufma.ecp.vm.VMInterpreterTest.CONTADOR;
+import static br.ufma.ecp.vm.VMInterpreterTest.FATORIAL;
+import static br.ufma.ecp.vm.VMInterpreterTest.PROGRAM;
+import static br.ufma.ecp.vm.VMInterpreterTest.compile;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import br.ufma.ecp.TestSupport;
+
+public class JvmBackendTest {
+
+    @Test
+    public void testMatchesInterpreter() {
+        var interpreter = new VMInterpreter().load(compile(PROGRAM, false)).load(compile(CONTADOR, false));
+        interpreter.run(1_000_000);
+        var jvm = new JvmBackend().load(compile(PROGRAM, true)).load(compile(CONTADOR, true));
+        jvm.run();
+        assertEquals(interpreter.os().output(), jvm.os().output());
+        // mesmo layout de static na RAM
+        assertEquals(interpreter.ram()[VMInterpreter.STATIC], jvm.ram()[VMInterpreter.STATIC]);
+    }
+
+    @Test
+    public void testFunctionsBecomeStaticMethods() throws ReflectiveOperationException {
+        var jvm = new JvmBackend().load(compile(CONTADOR, false));
+        var cls = jvm.compile();
+        var method = cls.getDeclaredMethod("Contador$incrementa", int.class, JvmRuntime.class);
+        assertEquals(int.class, method.getReturnType());
+    }
+
+    @Test
+    public void testRecursionAndResult() {
+        assertEquals(5040, new JvmBackend().load(FATORIAL).run("Main.main"));
+    }
+
+    @Test
+    public void testSquareGameQuitsOnQ() throws IOException {
+        var interpreter = new VMInterpreter();
+        var jvm = new JvmBackend();
+        for (var file : new String[] { "Main", "Square", "SquareGame" }) {
+            var code = compile(TestSupport.fromFile("Square/" + file + ".jack"), false);
+            interpreter.load(code);
+            jvm.load(code);
+        }
+        // seta para cima, solta, q: sem o q o jogo ficaria no laco
+        interpreter.os().pressKeys(131, 0, 81);
+        jvm.os().pressKeys(131, 0, 81);
+        interpreter.run(1_000_000);
+        assertEquals(0, jvm.run());
+        assertFalse(jvm.os().halted());
+        assertEquals("", jvm.os().output());
+        // SquareGame e o primeiro objeto do heap: a seta para cima ficou como direcao (1)
+        assertEquals(1, jvm.ram()[JackOS.HEAP + 1]);
+        // e o jogo e o quadrado terminam como no interpretador
+        assertArrayEquals(Arrays.copyOfRange(interpreter.ram(), JackOS.HEAP, JackOS.HEAP + 16),
+                Arrays.copyOfRange(jvm.ram(), JackOS.HEAP, JackOS.HEAP + 16));
+    }
+
+    @Test
+    public void testOsErrorsHalt() {
+        var input = """
+            class Main {
+              function void main() {
+                var int zero;
+                do Output.printInt(1 / zero);
+                do Output.printInt(2);
+                return;
+              }
+            }
+            """;
+        var jvm = new JvmBackend().load(compile(input, false));
+        jvm.run();
+        assertEquals("ERR3", jvm.os().output());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsUndefinedFunction() {
+        new JvmBackend().load("function Main.main 0\ncall Main.nada 0\nreturn\n").compile();
+    }
+}
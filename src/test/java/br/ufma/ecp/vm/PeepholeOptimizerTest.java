@@ -0,0 +1,183 @@
+package br.ufma.ecp.vm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Test;
+
+import br.ufma.ecp.Parser;
+
+public class PeepholeOptimizerTest {
+
+    private static String optimize(PeepholeOptimizer optimizer, String code) {
+        var sb = new StringBuilder();
+        for (var instruction : optimizer.optimize(VMInstruction.parseAll(code))) {
+            sb.append(instruction).append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testLocalRules() {
+        var code = """
+            function Main.f 1
+            push local 0
+            pop local 0
+            push argument 0
+            not
+            not
+            neg
+            neg
+            push constant 0
+            neg
+            return
+            """;
+        var expected = """
+            function Main.f 1
+            push argument 0
+            push constant 0
+            return
+            """;
+        assertEquals(expected, optimize(new PeepholeOptimizer(), code));
+    }
+
+    @Test
+    public void testBranchRules() {
+        var code = """
+            function Main.f 0
+            label WHILE_EXP0
+            push constant 0
+            not
+            not
+            if-goto WHILE_END0
+            push argument 0
+            push constant 1
+            eq
+            if-goto IF_TRUE0
+            goto IF_FALSE0
+            label IF_TRUE0
+            push constant 1
+            pop static 0
+            label IF_FALSE0
+            goto WHILE_EXP0
+            push constant 9
+            label WHILE_END0
+            push constant 0
+            return
+            """;
+        var expected = """
+            function Main.f 0
+            label WHILE_EXP0
+            push argument 0
+            push constant 1
+            eq
+            not
+            if-goto IF_FALSE0
+            push constant 1
+            pop static 0
+            label IF_FALSE0
+            goto WHILE_EXP0
+            """;
+        // while (true) sem saida: WHILE_END0 fica sem referencia e o resto e codigo morto
+        assertEquals(expected, optimize(new PeepholeOptimizer(), code));
+    }
+
+    @Test
+    public void testInvertsOnlyBooleanConditions() {
+        // if (x) com x = 5: not 5 e -6, que tambem desviaria
+        var input = """
+            class Main {
+              function int main() {
+                var int x;
+                let x = 5;
+                if (x) { return 1; }
+                if ((x > 1) & ~(x = 2)) { return 3; }
+                return 2;
+              }
+            }
+            """;
+        for (var optimize : new boolean[] { false, true }) {
+            var vm = new VMInterpreter().load(VMInterpreterTest.compile(input, optimize));
+            vm.run(1_000);
+            assertEquals(1, vm.result());
+        }
+        var code = """
+            push argument 0
+            if-goto IF_TRUE0
+            goto IF_FALSE0
+            label IF_TRUE0
+            push argument 0
+            push constant 1
+            gt
+            push argument 0
+            push constant 2
+            eq
+            not
+            and
+            if-goto IF_TRUE1
+            goto IF_FALSE1
+            label IF_TRUE1
+            """;
+        var expected = """
+            push argument 0
+            if-goto IF_TRUE0
+            goto IF_FALSE0
+            label IF_TRUE0
+            push argument 0
+            push constant 1
+            gt
+            push argument 0
+            push constant 2
+            eq
+            not
+            and
+            not
+            if-goto IF_FALSE1
+            label IF_TRUE1
+            """;
+        assertEquals(expected, optimize(PeepholeOptimizer.withRules("invert-branch"), code));
+    }
+
+    @Test
+    public void testRuleTableIsConfigurable() {
+        var code = "not\nnot\npush local 0\npop local 0\n";
+        assertEquals("push local 0\npop local 0\n", optimize(PeepholeOptimizer.withRules("double-negation"), code));
+        assertEquals(code, optimize(new PeepholeOptimizer(List.of()), code));
+    }
+
+    @Test
+    public void testParserRunsOptimizerPerSubroutine() {
+        var input = """
+            class Main {
+              function void main() {
+                var int x;
+                if (~~(x = 1)) { let x = x; }
+                return;
+              }
+              function int f() { return 1; }
+            }
+            """;
+        var parser = new Parser(input.getBytes(StandardCharsets.UTF_8));
+        parser.setOutput(null);
+        parser.generateVM();
+        parser.setOptimizer(new PeepholeOptimizer());
+        parser.parse();
+
+        var expected = """
+            function Main.main 1
+            push local 0
+            push constant 1
+            eq
+            not
+            pop temp 0
+            push constant 0
+            return
+            function Main.f 0
+            push constant 1
+            return
+            """;
+        assertEquals(expected, parser.VMOutput());
+    }
+}
@@ -0,0 +1,142 @@
+package br.ufma.ecp.vm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ProgramOptimizerTest {
+
+    static final String PONTO = """
+        class Ponto {
+          field int x, y;
+          constructor Ponto new(int ax, int ay) {
+            let x = ax;
+            let y = ay;
+            return this;
+          }
+          method int x() { return x; }
+          method int y() { return y; }
+          method int soma(Ponto p) { return Ponto.max(x + p.x(), 0) + y; }
+          function int max(int a, int b) {
+            if (a > b) { return a; }
+            return b;
+          }
+          method void nuncaChamado() { return; }
+        }
+        """;
+
+    static final String MAIN = """
+        class Main {
+          function int main() {
+            var Ponto p, q;
+            var Array a;
+            let p = Ponto.new(3, 4);
+            let q = Ponto.new(10, 20);
+            let a = Array.new(2);
+            let a[Main.um()] = p.soma(q);
+            return a[1] - Contador.total() + Main.quadrado(p.x() + q.y());
+          }
+          function int um() { return 1; }
+          function int quadrado(int n) {
+            var int r;
+            let r = n * n;
+            return r;
+          }
+        }
+        """;
+
+    static List<VMInstruction> flatten(Map<String, List<VMInstruction>> classes) {
+        var program = new ArrayList<VMInstruction>();
+        classes.values().forEach(program::addAll);
+        return program;
+    }
+
+    static VMInterpreter run(List<VMInstruction> program) {
+        var vm = new VMInterpreter().load(program);
+        vm.run(1_000_000);
+        assertTrue(vm.finished());
+        return vm;
+    }
+
+    @Test
+    public void testInlinesAndRemoves() {
+        for (var optimize : new boolean[] { false, true }) {
+            var original = new ArrayList<VMInstruction>();
+            var optimizer = new ProgramOptimizer();
+            for (var source : List.of(MAIN, PONTO, VMInterpreterTest.CONTADOR, HackBackendTest.MATH,
+                    HackBackendTest.MEMORY, HackBackendTest.ARRAY)) {
+                var code = VMInstruction.parseAll(VMInterpreterTest.compile(source, optimize));
+                original.addAll(code);
+                optimizer.load(code);
+            }
+            var classes = optimizer.optimize();
+            var program = flatten(classes);
+
+            assertEquals(List.of("Main", "Ponto", "Contador", "Math", "Memory", "Array"),
+                    List.copyOf(classes.keySet()));
+            assertTrue(optimizer.removed().containsAll(List.of("Ponto.nuncaChamado", "Contador.new",
+                    "Contador.incrementa", "Contador.valor", "Math.divide")));
+            assertFalse(optimizer.removed().contains("Contador.total"));
+            // getters, Main.um e Ponto.max (com return no meio); Contador.total le static de outra classe
+            for (var inlined : List.of("Ponto.x", "Ponto.y", "Main.um", "Ponto.max")) {
+                assertFalse(inlined, program.stream().anyMatch(c -> c.is(VMInstruction.Op.CALL, inlined)));
+            }
+            assertTrue(program.contains(new VMInstruction(VMInstruction.Op.CALL, "Contador.total", 0)));
+            assertTrue(optimizer.inlinedCalls() >= 4);
+
+            var before = new VMInterpreter().load(original);
+            long steps = before.run(1_000_000);
+            var after = new VMInterpreter().load(program);
+            assertTrue(after.run(1_000_000) < steps);
+            assertEquals(before.result(), after.result());
+            assertEquals(before.result(), HackBackendTest.run(program.stream().map(VMInstruction::toString)
+                    .reduce("", (a, b) -> a + b + "\n")).ram[256]);
+        }
+    }
+
+    @Test
+    public void testKeepsCallsToMissingFunctions() {
+        // sem o OS em VM: Output.printInt e String.new continuam no OS embutido do interpretador
+        var optimizer = new ProgramOptimizer()
+                .load(VMInterpreterTest.compile(VMInterpreterTest.PROGRAM, false))
+                .load(VMInterpreterTest.compile(VMInterpreterTest.CONTADOR, false));
+        var vm = run(flatten(optimizer.optimize()));
+        assertEquals("soma=285\n-617\n17", vm.os().output());
+    }
+
+    @Test
+    public void testMethodSavesThis() {
+        var optimizer = new ProgramOptimizer().load("""
+            function Main.main 0
+            push constant 2048
+            pop pointer 0
+            push constant 7
+            pop this 0
+            push constant 4000
+            call Main.get 1
+            push this 0
+            add
+            return
+            function Main.get 0
+            push argument 0
+            pop pointer 0
+            push this 0
+            return
+            """);
+        var program = flatten(optimizer.optimize());
+        assertEquals(1, optimizer.inlinedCalls());
+        assertTrue(program.contains(VMInstruction.push("pointer", 0)));
+        assertEquals(7, run(program).result());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRequiresEntry() {
+        new ProgramOptimizer().load(VMInterpreterTest.compile(PONTO, false)).optimize();
+    }
+}
@@ -0,0 +1,181 @@
+package br.ufma.ecp.vm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import br.ufma.ecp.Parser;
+import br.ufma.ecp.TestSupport;
+
+public class VMInterpreterTest {
+
+    static String compile(String input, boolean optimize) {
+        var parser = new Parser(input.getBytes(StandardCharsets.UTF_8));
+        parser.setOutput(null);
+        parser.generateVM();
+        if (optimize) {
+            parser.setConstantFolding(true);
+            parser.setOptimizer(new PeepholeOptimizer());
+        }
+        parser.parse();
+        return parser.VMOutput();
+    }
+
+    static final String PROGRAM = """
+        class Main {
+          function void main() {
+            var Array a;
+            var int i, sum;
+            var String s;
+            var Contador c;
+            let a = Array.new(10);
+            let i = 0;
+            while (i < 10) {
+              let a[i] = i * i;
+              let i = i + 1;
+            }
+            let i = 0;
+            let sum = 0;
+            while (i < 10) {
+              let sum = sum + a[i];
+              let i = i + 1;
+            }
+            do Output.printString("soma=");
+            do Output.printInt(sum);
+            do Output.println();
+            let s = String.new(6);
+            do s.setInt(-1234);
+            do Output.printInt(s.intValue() / 2);
+            do Output.println();
+            let c = Contador.new(2 * 8 + 1);
+            do c.incrementa();
+            do c.incrementa();
+            do Output.printInt(c.valor() - Contador.total());
+            do a.dispose();
+            return;
+          }
+        }
+        """;
+
+    static final String CONTADOR = """
+        class Contador {
+          field int valor;
+          static int total;
+          constructor Contador new(int inicial) {
+            let valor = inicial;
+            return this;
+          }
+          method void incrementa() {
+            let valor = valor + 1;
+            let total = total + 1;
+            return;
+          }
+          method int valor() {
+            return valor;
+          }
+          function int total() {
+            return total;
+          }
+        }
+        """;
+
+    // codigo VM direto: Main.main devolve 7!
+    static final String FATORIAL = """
+        function Main.fatorial 0
+        push argument 0
+        push constant 2
+        lt
+        if-goto BASE
+        push argument 0
+        push argument 0
+        push constant 1
+        sub
+        call Main.fatorial 1
+        call Math.multiply 2
+        return
+        label BASE
+        push constant 1
+        return
+        function Main.main 0
+        push constant 7
+        call Main.fatorial 1
+        return
+        """;
+
+    @Test
+    public void testRunsCompiledProgram() {
+        var vm = new VMInterpreter().load(compile(PROGRAM, false)).load(compile(CONTADOR, false));
+        vm.run(1_000_000);
+        assertTrue(vm.finished());
+        assertEquals("soma=285\n-617\n17", vm.os().output());
+    }
+
+    @Test
+    public void testOptimizedCodeBehavesTheSame() {
+        var plain = new VMInterpreter().load(compile(PROGRAM, false)).load(compile(CONTADOR, false));
+        var optimized = new VMInterpreter().load(compile(PROGRAM, true)).load(compile(CONTADOR, true));
+        var plainSteps = plain.run(1_000_000);
+        var optimizedSteps = optimized.run(1_000_000);
+        assertEquals(plain.os().output(), optimized.os().output());
+        assertTrue(optimizedSteps < plainSteps);
+    }
+
+    @Test
+    public void testSquareGameQuitsOnQ() throws IOException {
+        var vm = new VMInterpreter();
+        for (var file : new String[] { "Main", "Square", "SquareGame" }) {
+            vm.load(compile(TestSupport.fromFile("Square/" + file + ".jack"), false));
+        }
+        // seta para cima, solta, q
+        vm.os().pressKeys(131, 0, 81);
+        vm.run(1_000_000);
+        assertTrue(vm.finished());
+    }
+
+    @Test
+    public void testOsErrorsHalt() {
+        var input = """
+            class Main {
+              function void main() {
+                var int zero;
+                do Output.printInt(1 / zero);
+                do Output.printInt(2);
+                return;
+              }
+            }
+            """;
+        var vm = new VMInterpreter().load(compile(input, false));
+        vm.run(1000);
+        assertTrue(vm.finished());
+        assertEquals("ERR3", vm.os().output());
+    }
+
+    @Test
+    public void testStepLimit() {
+        var input = """
+            class Main {
+              function int main() {
+                while (true) {
+                }
+                return 0;
+              }
+            }
+            """;
+        var vm = new VMInterpreter().load(compile(input, false));
+        assertEquals(500, vm.run(500));
+        assertFalse(vm.finished());
+    }
+
+    @Test
+    public void testReturnsEntryResult() {
+        var vm = new VMInterpreter().load(FATORIAL);
+        vm.run("Main.main", 10_000);
+        assertTrue(vm.finished());
+        assertEquals(5040, vm.result());
+    }
+}